@@ -135,6 +135,10 @@ public abstract class Task implements Runnable, Callable<Void> {
 	 * @return The state.
 	 */
 	public State getState() { return state; }
+	/**
+	 * @return The exception thrown when the execution failed, or null.
+	 */
+	public Throwable getException() { return exception; }
 
 	/**
 	 * @return The time when execution started.
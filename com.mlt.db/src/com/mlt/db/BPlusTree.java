@@ -0,0 +1,666 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.db;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory B+tree of documents ordered by the fields of an index, each ascending or
+ * descending.
+ * <p>
+ * Keys are stored by column within nodes. Integers, longs, doubles, dates, times and booleans are
+ * encoded as order preserving longs, timestamps as two longs, the epoch second and the nano of
+ * second, thus any timestamp is supported, and decimals and strings are kept as objects.
+ * Documents with a null value in any index field are not indexed. Entries of a non unique index
+ * are made unique appending the primary key fields, so that each document has an exact position,
+ * while entries of a unique index are checked for duplicates on insert.
+ * <p>
+ * Scans accept bounds with fewer values than index fields, compared with the leading fields only,
+ * thus a prefix scan is a scan with the prefix as inclusive lower and upper bound. Bounds are in
+ * index order, that is, the lower bound of a descending field is its greatest value. A number
+ * that is not integral, for an integer or long field, is not found, and as a bound it falls
+ * between two keys, the bound being made inclusive or exclusive of the nearest key accordingly.
+ * <p>
+ * Leaves are unlinked when they become empty but are not merged otherwise. The tree is not safe
+ * for concurrent writes, the table serializes them.
+ * @author Miquel Sas
+ */
+public class BPlusTree {
+
+	/** Maximum number of entries of a leaf and of children of an inner node. */
+	private static final int ORDER = 64;
+
+	/**
+	 * A node, with keys stored by column.
+	 */
+	private abstract static class Node {
+		/** Number of keys. */
+		int count;
+		/** Long columns. */
+		long[][] longs;
+		/** Object columns. */
+		Object[][] objects;
+		Node(int longColumns, int objectColumns) {
+			longs = new long[longColumns][ORDER + 1];
+			objects = new Object[objectColumns][ORDER + 1];
+		}
+	}
+	/**
+	 * A leaf, with the documents of the keys and links to its siblings.
+	 */
+	private static final class Leaf extends Node {
+		Document[] documents = new Document[ORDER + 1];
+		Leaf next;
+		Leaf previous;
+		Leaf(int longColumns, int objectColumns) {
+			super(longColumns, objectColumns);
+		}
+	}
+	/**
+	 * An inner node, keys are the separators of the children, the key at i being less or equal
+	 * than the keys of the child at i + 1 and greater than the keys of the child at i.
+	 */
+	private static final class Inner extends Node {
+		Node[] children = new Node[ORDER + 2];
+		Inner(int longColumns, int objectColumns) {
+			super(longColumns, objectColumns);
+		}
+	}
+	/**
+	 * An encoded key, complete or with the leading columns.
+	 */
+	private static final class Probe {
+		long[] longs;
+		Object[] objects;
+		int size;
+		/** First column whose value falls between two encoded values, -1 if none. */
+		int inexact = -1;
+		/** Whether the value of the inexact column is above (1) or below (-1) the encoded value. */
+		int side;
+		Probe(int longColumns, int objectColumns) {
+			longs = new long[longColumns];
+			objects = new Object[objectColumns];
+		}
+	}
+	/**
+	 * Result of a split, the new right node and its separator.
+	 */
+	private static final class Split {
+		Node right;
+		Probe separator;
+	}
+
+	/** Index. */
+	private Index index;
+	/** Number of index columns. */
+	private int keySize;
+	/** Number of columns, index plus primary key columns if not unique. */
+	private int columns;
+	/** Value indexes of the fields of the columns. */
+	private int[] valueIndexes;
+	/** Types of the columns. */
+	private Type[] types;
+	/** Descending flags of the columns. */
+	private boolean[] descending;
+	/** Per column, a boolean indicating whether it is an object column. */
+	private boolean[] objectColumn;
+	/** Per column, position within the long or object columns, the first of two for timestamps. */
+	private int[] position;
+	/** Number of long columns. */
+	private int longColumns;
+	/** Number of object columns. */
+	private int objectColumns;
+
+	/** Root. */
+	private Node root;
+	/** First leaf. */
+	private Leaf first;
+	/** Number of entries. */
+	private int size;
+
+	/**
+	 * Constructor.
+	 * @param fields     The field map of the documents.
+	 * @param index      The index.
+	 * @param primaryKey The primary key, appended to the entries of a non unique index.
+	 */
+	public BPlusTree(FieldMap fields, Index index, Index primaryKey) {
+		if (index.isEmpty()) throw new IllegalArgumentException("Index without fields");
+		this.index = index;
+		this.keySize = index.size();
+		Order order = new Order();
+		order.addAll(index);
+		if (!index.isUnique()) {
+			if (primaryKey == null) throw new IllegalArgumentException("Primary key required");
+			for (FieldKey key : primaryKey) order.add(key.getField(), true);
+		}
+		columns = order.size();
+		valueIndexes = new int[columns];
+		types = new Type[columns];
+		descending = new boolean[columns];
+		objectColumn = new boolean[columns];
+		position = new int[columns];
+		for (int c = 0; c < columns; c++) {
+			Field field = order.get(c).getField();
+			valueIndexes[c] = fields.getIndex(field.getAlias());
+			if (valueIndexes[c] < 0) {
+				throw new IllegalArgumentException("Invalid field key: " + field.getAlias());
+			}
+			types[c] = field.getType();
+			descending[c] = !order.get(c).isAsc();
+			if (types[c].in(Type.BINARY, Type.DOCUMENT, Type.LIST)) {
+				throw new IllegalArgumentException("Type not supported in an index: " + types[c]);
+			}
+			objectColumn[c] = types[c].in(Type.STRING, Type.DECIMAL);
+			position[c] = objectColumn[c] ? objectColumns++ : longColumns++;
+			if (types[c] == Type.TIMESTAMP) longColumns++;
+		}
+		clear();
+	}
+
+	/**
+	 * Returns the index.
+	 * @return The index.
+	 */
+	public Index getIndex() {
+		return index;
+	}
+	/**
+	 * Returns the number of entries.
+	 * @return The number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		first = new Leaf(longColumns, objectColumns);
+		root = first;
+		size = 0;
+	}
+
+	/**
+	 * Insert the document.
+	 * @param document The document.
+	 * @return A boolean indicating whether the document has been indexed, false if any index
+	 * field is null.
+	 * @throws IllegalArgumentException If the index is unique and the key exists.
+	 */
+	public boolean insert(Document document) {
+		Probe probe = encode(document);
+		if (probe == null) return false;
+		if (index.isUnique() && find(probe) != null) {
+			throw new IllegalArgumentException("Duplicate key in index " + index.getName());
+		}
+		Split split = insert(root, probe, document);
+		if (split != null) {
+			Inner inner = new Inner(longColumns, objectColumns);
+			inner.children[0] = root;
+			inner.children[1] = split.right;
+			setKey(inner, 0, split.separator);
+			inner.count = 1;
+			root = inner;
+		}
+		size++;
+		return true;
+	}
+	/**
+	 * Remove the entry of the document, that must have the values it was inserted with.
+	 * @param document The document.
+	 * @return A boolean indicating whether the entry was found and removed.
+	 */
+	public boolean remove(Document document) {
+		Probe probe = encode(document);
+		if (probe == null) return false;
+		int result = remove(root, probe);
+		if (result == NOT_FOUND) return false;
+		if (result == EMPTY) {
+			/* Every leaf was unlinked. */
+			clear();
+			return true;
+		}
+		while (root instanceof Inner && root.count == 0) root = ((Inner) root).children[0];
+		size--;
+		return true;
+	}
+	/**
+	 * Returns the document of a unique key, or the first document with the key.
+	 * @param key The values of the index fields.
+	 * @return The document or null if not found.
+	 */
+	public Document find(Value... key) {
+		if (key.length != keySize) {
+			throw new IllegalArgumentException("Invalid number of key values");
+		}
+		Probe probe = encode(key);
+		return probe == null || probe.inexact >= 0 ? null : find(probe);
+	}
+	/**
+	 * Returns the first document with the same values of the index fields than the document.
+	 * @param document The document.
+	 * @return The document found or null, also if any index field of the document is null.
+	 */
+	public Document find(Document document) {
+		Probe probe = encode(document);
+		if (probe == null) return null;
+		probe.size = keySize;
+		return find(probe);
+	}
+	/**
+	 * Scan entries between bounds, in index order.
+	 * @param from          The lower bound, leading field values, null for no bound.
+	 * @param fromInclusive A boolean indicating whether the lower bound is inclusive.
+	 * @param to            The upper bound, leading field values, null for no bound.
+	 * @param toInclusive   A boolean indicating whether the upper bound is inclusive.
+	 * @param action        The action performed on the documents.
+	 */
+	public void scan(
+		Value[] from,
+		boolean fromInclusive,
+		Value[] to,
+		boolean toInclusive,
+		Consumer<Document> action) {
+		Probe lower = from == null ? null : encode(from);
+		Probe upper = to == null ? null : encode(to);
+		if ((from != null && lower == null) || (to != null && upper == null)) return;
+		if (lower != null && lower.inexact >= 0) fromInclusive = round(lower, true);
+		if (upper != null && upper.inexact >= 0) toInclusive = round(upper, false);
+		Leaf leaf;
+		int slot;
+		if (lower == null) {
+			leaf = first;
+			slot = 0;
+		} else {
+			leaf = leaf(lower, !fromInclusive);
+			slot = search(leaf, lower, !fromInclusive);
+		}
+		while (leaf != null) {
+			for (; slot < leaf.count; slot++) {
+				if (upper != null) {
+					int compare = compare(leaf, slot, upper);
+					if (compare > 0 || (compare == 0 && !toInclusive)) return;
+				}
+				action.accept(leaf.documents[slot]);
+			}
+			leaf = leaf.next;
+			slot = 0;
+		}
+	}
+	/**
+	 * Scan the entries whose leading fields are equal to the prefix, in index order.
+	 * @param prefix The values of the leading fields.
+	 * @param action The action performed on the documents.
+	 */
+	public void scan(Value[] prefix, Consumer<Document> action) {
+		scan(prefix, true, prefix, true, action);
+	}
+
+	/** Result of a remove, not found. */
+	private static final int NOT_FOUND = 0;
+	/** Result of a remove, removed. */
+	private static final int REMOVED = 1;
+	/** Result of a remove, removed and the node became empty. */
+	private static final int EMPTY = 2;
+
+	/**
+	 * Round a bound whose inexact column falls between two keys to the encoded key, dropping the
+	 * following columns that can no longer decide the comparison.
+	 * @param probe The bound.
+	 * @param lower A boolean indicating whether it is the lower bound.
+	 * @return A boolean indicating whether the rounded bound is inclusive.
+	 */
+	private boolean round(Probe probe, boolean lower) {
+		probe.size = probe.inexact + 1;
+		int side = descending[probe.inexact] ? -probe.side : probe.side;
+		return lower ? side < 0 : side > 0;
+	}
+
+	/**
+	 * @param node     The node.
+	 * @param probe    The complete key.
+	 * @param document The document.
+	 * @return The split of the node or null.
+	 */
+	private Split insert(Node node, Probe probe, Document document) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int slot = search(leaf, probe, false);
+			shift(leaf, slot, 1);
+			System.arraycopy(leaf.documents, slot, leaf.documents, slot + 1, leaf.count - slot);
+			setKey(leaf, slot, probe);
+			leaf.documents[slot] = document;
+			leaf.count++;
+			return leaf.count > ORDER ? split(leaf) : null;
+		}
+		Inner inner = (Inner) node;
+		int child = search(inner, probe, true);
+		Split split = insert(inner.children[child], probe, document);
+		if (split == null) return null;
+		shift(inner, child, 1);
+		System.arraycopy(inner.children, child + 1, inner.children, child + 2, inner.count - child);
+		setKey(inner, child, split.separator);
+		inner.children[child + 1] = split.right;
+		inner.count++;
+		return inner.count + 1 > ORDER ? split(inner) : null;
+	}
+	/**
+	 * @param node  The node.
+	 * @param probe The complete key.
+	 * @return The result, NOT_FOUND, REMOVED or EMPTY.
+	 */
+	private int remove(Node node, Probe probe) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int slot = search(leaf, probe, false);
+			if (slot == leaf.count || compare(leaf, slot, probe) != 0) return NOT_FOUND;
+			shift(leaf, slot + 1, -1);
+			System.arraycopy(leaf.documents, slot + 1, leaf.documents, slot, leaf.count - slot - 1);
+			leaf.count--;
+			leaf.documents[leaf.count] = null;
+			clearKey(leaf, leaf.count);
+			if (leaf.count > 0 || leaf == root) return REMOVED;
+			if (leaf.previous != null) leaf.previous.next = leaf.next;
+			else first = leaf.next;
+			if (leaf.next != null) leaf.next.previous = leaf.previous;
+			return EMPTY;
+		}
+		Inner inner = (Inner) node;
+		int child = search(inner, probe, true);
+		int result = remove(inner.children[child], probe);
+		if (result != EMPTY) return result;
+		/* Remove the empty child and one of its separators. */
+		int separator = child > 0 ? child - 1 : 0;
+		if (inner.count > 0) shift(inner, separator + 1, -1);
+		System.arraycopy(inner.children, child + 1, inner.children, child, inner.count - child);
+		inner.children[inner.count] = null;
+		if (inner.count == 0) return EMPTY;
+		inner.count--;
+		clearKey(inner, inner.count);
+		return REMOVED;
+	}
+	/**
+	 * @param probe The key, complete or of the index fields.
+	 * @return The first document with the key or null.
+	 */
+	private Document find(Probe probe) {
+		Leaf leaf = leaf(probe, false);
+		int slot = search(leaf, probe, false);
+		if (slot == leaf.count) {
+			leaf = leaf.next;
+			slot = 0;
+		}
+		if (leaf == null || compare(leaf, slot, probe) != 0) return null;
+		return leaf.documents[slot];
+	}
+	/**
+	 * Returns the leaf where a scan from the key starts. The first entry may be in the next leaf.
+	 * @param probe  The key.
+	 * @param strict A boolean indicating whether entries must be greater than the key, otherwise
+	 *               greater or equal.
+	 * @return The leaf.
+	 */
+	private Leaf leaf(Probe probe, boolean strict) {
+		Node node = root;
+		while (node instanceof Inner) node = ((Inner) node).children[search(node, probe, strict)];
+		Leaf leaf = (Leaf) node;
+		if (search(leaf, probe, strict) == leaf.count && leaf.next != null) return leaf.next;
+		return leaf;
+	}
+	/**
+	 * Binary search of the first key greater (strict) or greater or equal than the probe.
+	 * @param node   The node.
+	 * @param probe  The probe.
+	 * @param strict A boolean indicating whether the key must be greater.
+	 * @return The slot, or the count of keys if none.
+	 */
+	private int search(Node node, Probe probe, boolean strict) {
+		int low = 0;
+		int high = node.count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int compare = compare(node, middle, probe);
+			if (compare < 0 || (strict && compare == 0)) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+	/**
+	 * Compare the key at a slot with the probe, over the columns of the probe.
+	 * @param node  The node.
+	 * @param slot  The slot.
+	 * @param probe The probe.
+	 * @return The comparison in index order.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compare(Node node, int slot, Probe probe) {
+		for (int c = 0; c < probe.size; c++) {
+			int p = position[c];
+			int compare;
+			if (objectColumn[c]) {
+				compare = ((Comparable<Object>) node.objects[p][slot]).compareTo(probe.objects[p]);
+			} else {
+				compare = Long.compare(node.longs[p][slot], probe.longs[p]);
+				if (compare == 0 && types[c] == Type.TIMESTAMP) {
+					compare = Long.compare(node.longs[p + 1][slot], probe.longs[p + 1]);
+				}
+			}
+			if (compare != 0) return descending[c] ? -compare : compare;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param leaf The full leaf.
+	 * @return The split.
+	 */
+	private Split split(Leaf leaf) {
+		Leaf right = new Leaf(longColumns, objectColumns);
+		int half = leaf.count / 2;
+		right.count = leaf.count - half;
+		move(leaf, half, right, 0, right.count);
+		System.arraycopy(leaf.documents, half, right.documents, 0, right.count);
+		for (int i = half; i < leaf.count; i++) leaf.documents[i] = null;
+		leaf.count = half;
+		right.next = leaf.next;
+		right.previous = leaf;
+		if (leaf.next != null) leaf.next.previous = right;
+		leaf.next = right;
+		Split split = new Split();
+		split.right = right;
+		split.separator = getKey(right, 0);
+		return split;
+	}
+	/**
+	 * @param inner The full inner node.
+	 * @return The split, the middle separator moving up.
+	 */
+	private Split split(Inner inner) {
+		Inner right = new Inner(longColumns, objectColumns);
+		int middle = inner.count / 2;
+		Split split = new Split();
+		split.right = right;
+		split.separator = getKey(inner, middle);
+		right.count = inner.count - middle - 1;
+		move(inner, middle + 1, right, 0, right.count);
+		System.arraycopy(inner.children, middle + 1, right.children, 0, right.count + 1);
+		for (int i = middle + 1; i <= inner.count; i++) inner.children[i] = null;
+		clearKey(inner, middle);
+		inner.count = middle;
+		return split;
+	}
+	/**
+	 * Move keys to another node, clearing object references in the source.
+	 */
+	private void move(Node source, int from, Node target, int to, int length) {
+		for (int p = 0; p < longColumns; p++) {
+			System.arraycopy(source.longs[p], from, target.longs[p], to, length);
+		}
+		for (int p = 0; p < objectColumns; p++) {
+			System.arraycopy(source.objects[p], from, target.objects[p], to, length);
+			for (int i = from; i < from + length; i++) source.objects[p][i] = null;
+		}
+	}
+	/**
+	 * Shift the keys from a slot to the end by a distance, one to open a slot or minus one to
+	 * close the previous slot.
+	 */
+	private void shift(Node node, int from, int distance) {
+		int length = node.count - from;
+		for (int p = 0; p < longColumns; p++) {
+			System.arraycopy(node.longs[p], from, node.longs[p], from + distance, length);
+		}
+		for (int p = 0; p < objectColumns; p++) {
+			System.arraycopy(node.objects[p], from, node.objects[p], from + distance, length);
+		}
+	}
+	/**
+	 * @return The complete key at the slot.
+	 */
+	private Probe getKey(Node node, int slot) {
+		Probe probe = new Probe(longColumns, objectColumns);
+		for (int p = 0; p < longColumns; p++) probe.longs[p] = node.longs[p][slot];
+		for (int p = 0; p < objectColumns; p++) probe.objects[p] = node.objects[p][slot];
+		probe.size = columns;
+		return probe;
+	}
+	/**
+	 * Set the complete key at the slot.
+	 */
+	private void setKey(Node node, int slot, Probe probe) {
+		for (int p = 0; p < longColumns; p++) node.longs[p][slot] = probe.longs[p];
+		for (int p = 0; p < objectColumns; p++) node.objects[p][slot] = probe.objects[p];
+	}
+	/**
+	 * Clear the object references of the slot.
+	 */
+	private void clearKey(Node node, int slot) {
+		for (int p = 0; p < objectColumns; p++) node.objects[p][slot] = null;
+	}
+
+	/**
+	 * @param document The document.
+	 * @return The complete key, or null if any index field is null.
+	 */
+	private Probe encode(Document document) {
+		Probe probe = new Probe(longColumns, objectColumns);
+		for (int c = 0; c < columns; c++) {
+			if (!encode(probe, c, document.getValue(valueIndexes[c]))) return null;
+		}
+		probe.size = columns;
+		return probe;
+	}
+	/**
+	 * @param values The values of the leading fields.
+	 * @return The key of the leading fields, or null if any value is null.
+	 */
+	private Probe encode(Value[] values) {
+		if (values.length > columns) throw new IllegalArgumentException("Too many key values");
+		Probe probe = new Probe(longColumns, objectColumns);
+		for (int c = 0; c < values.length; c++) {
+			if (!encode(probe, c, values[c])) return null;
+		}
+		probe.size = values.length;
+		return probe;
+	}
+	/**
+	 * Encode the value of a column, converted to the type of the field.
+	 * @return A boolean indicating whether the value is not null, nor NaN for integer columns.
+	 */
+	private boolean encode(Probe probe, int column, Value value) {
+		if (value == null || value.isNull()) return false;
+		int p = position[column];
+		switch (types[column]) {
+		case STRING:
+			probe.objects[p] = value.getString();
+			break;
+		case DECIMAL:
+			Number number = value.getNumber();
+			probe.objects[p] = number instanceof BigDecimal ? number : value.getDecimal();
+			break;
+		case INTEGER:
+		case LONG:
+			Number integral = value.getNumber();
+			if (integral instanceof Long || integral instanceof Integer) {
+				probe.longs[p] = integral.longValue();
+				break;
+			}
+			if (integral instanceof Double && ((Double) integral).isNaN()) return false;
+			int side = floor(probe, p, integral);
+			if (side != 0 && probe.inexact < 0) {
+				probe.inexact = column;
+				probe.side = side;
+			}
+			break;
+		case DOUBLE:
+			double real = value.getNumber().doubleValue();
+			/* Order preserving bits, with one zero and one NaN. */
+			long bits = Double.doubleToLongBits(real == 0 ? 0.0 : real);
+			probe.longs[p] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+			break;
+		case DATE:
+			probe.longs[p] = value.getDate().toEpochDay();
+			break;
+		case TIME:
+			probe.longs[p] = value.getTime().toNanoOfDay();
+			break;
+		case TIMESTAMP:
+			LocalDateTime timestamp = value.getTimestamp();
+			probe.longs[p] = timestamp.toEpochSecond(ZoneOffset.UTC);
+			probe.longs[p + 1] = timestamp.getNano();
+			break;
+		default:
+			probe.longs[p] = value.getBoolean() ? 1 : 0;
+			break;
+		}
+		return true;
+	}
+	/**
+	 * Encode a number that may not be integral as its floor within the range of longs.
+	 * @return The side of the number with respect to the encoded value, 1 above, -1 below or 0 if
+	 * equal.
+	 */
+	private int floor(Probe probe, int p, Number number) {
+		double real = number.doubleValue();
+		if (Double.isInfinite(real)) {
+			probe.longs[p] = real > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+			return real > 0 ? 1 : -1;
+		}
+		BigDecimal decimal;
+		if (number instanceof BigDecimal) decimal = (BigDecimal) number;
+		else if (number instanceof BigInteger) decimal = new BigDecimal((BigInteger) number);
+		else decimal = new BigDecimal(real);
+		BigDecimal floor = decimal.setScale(0, RoundingMode.FLOOR);
+		if (floor.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+			probe.longs[p] = Long.MIN_VALUE;
+			return -1;
+		}
+		if (floor.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+			probe.longs[p] = Long.MAX_VALUE;
+			return 1;
+		}
+		probe.longs[p] = floor.longValueExact();
+		return decimal.compareTo(floor) == 0 ? 0 : 1;
+	}
+}
@@ -19,10 +19,13 @@ package com.mlt.db;
 
 import com.mlt.common.collections.Queue;
 import com.mlt.db.criteria.Condition;
+import com.mlt.db.criteria.CriteriaCompiler;
 import com.mlt.db.criteria.Logical;
 import com.mlt.db.criteria.Segment;
 import com.mlt.db.criteria.Token;
 
+import java.util.function.Predicate;
+
 /**
  * A criteria to filter documents.
  *
@@ -169,6 +172,23 @@ public class Criteria {
 		return !segment().isEmpty();
 	}
 
+	/**
+	 * @return The list of tokens, segments separated by logical operators.
+	 */
+	public Queue<Token> getTokens() {
+		return tokens;
+	}
+	/**
+	 * Compile this criteria to a predicate over documents that conform to a schema with the
+	 * argument field map.
+	 *
+	 * @param fields The field map that resolves fields to value indexes.
+	 * @return The predicate.
+	 */
+	public Predicate<Document> compile(FieldMap fields) {
+		return CriteriaCompiler.compile(this, fields);
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString() {
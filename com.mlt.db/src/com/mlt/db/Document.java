@@ -93,6 +93,15 @@ public class Document {
 			return ((HashMap<String, Value>) values).get(key);
 		}
 	}
+	/**
+	 * Returns the value at the index of the field map, for documents that conform to a schema.
+	 * @param index The index of the value, as resolved by the field map.
+	 * @return The corresponding value.
+	 */
+	public Value getValue(int index) {
+		if (schema == null) throw new IllegalStateException("Document does not conform to a schema");
+		return ((Value[]) values)[index];
+	}
 	/**
 	 * Set the value for the given key. No validation is made on the value.
 	 * @param key   The key.
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.db;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory table of documents that conform to a schema.
+ * <p>
+ * The primary key is the first unique index of the schema, whose values can not be null, and
+ * other unique indexes are enforced for keys without null values. Rows are documents created
+ * with <code>Document(Schema, Value[])</code>, that the table takes over, thus documents and
+ * values must not be modified after insert, and updates replace the whole document.
+ * <p>
+ * Each index of the schema, the primary key included, is kept in a B+tree that supports range
+ * and prefix scans in index order. Rows with a null value in any field of an index are not in
+ * that index.
+ * <p>
+ * Writers are serialized and keep the primary map and the index trees consistent, a write that
+ * fails on any tree being rolled back on the trees already modified. Gets by primary key never
+ * block, while gets by a unique index and scans hold the read lock.
+ * @author Miquel Sas
+ */
+public class Table {
+
+	/**
+	 * The values of the fields of an index, with exact equality of numbers, integers and longs
+	 * being compared as longs, doubles as doubles and decimals or mixed types by their exact
+	 * decimal value, and a hash code consistent with it whatever the number types.
+	 */
+	static final class Key {
+		/** Values. */
+		private final Value[] values;
+		/** Hash code. */
+		private final int hash;
+		/**
+		 * @param values The values.
+		 */
+		Key(Value[] values) {
+			this.values = values;
+			int hash = 1;
+			for (Value value : values) hash = 31 * hash + hash(value);
+			this.hash = hash;
+		}
+		/**
+		 * @return A boolean indicating whether any value is null.
+		 */
+		boolean hasNulls() {
+			for (Value value : values) if (value == null || value.isNull()) return true;
+			return false;
+		}
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key key = (Key) obj;
+			if (hash != key.hash || values.length != key.values.length) return false;
+			for (int i = 0; i < values.length; i++) {
+				if (!equals(values[i], key.values[i])) return false;
+			}
+			return true;
+		}
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			StringBuilder b = new StringBuilder();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) b.append(", ");
+				b.append(values[i]);
+			}
+			return b.toString();
+		}
+		/**
+		 * @param a The first value.
+		 * @param b The second value.
+		 * @return A boolean indicating whether the values are equal, numbers exactly.
+		 */
+		private static boolean equals(Value a, Value b) {
+			if (a.isNull() || b.isNull() || !a.isNumber() || !b.isNumber()) return a.equals(b);
+			Number x = a.getNumber();
+			Number y = b.getNumber();
+			if (isIntegral(a) && isIntegral(b)) return x.longValue() == y.longValue();
+			if (a.isDouble() && b.isDouble()) {
+				return Double.compare(x.doubleValue(), y.doubleValue()) == 0;
+			}
+			if (!isFinite(a) || !isFinite(b)) return x.doubleValue() == y.doubleValue();
+			return decimal(a).compareTo(decimal(b)) == 0;
+		}
+		/**
+		 * @param value The value.
+		 * @return The hash code, consistent with the exact equality of numbers of any type: the
+		 *         hash of the long value for integral numbers in the long range, otherwise the
+		 *         hash of the double value.
+		 */
+		private static int hash(Value value) {
+			if (value == null || value.isNull()) return 0;
+			if (!value.isNumber()) return value.hashCode();
+			Number number = value.getNumber();
+			if (isIntegral(value)) return Long.hashCode(number.longValue());
+			if (value.isDecimal()) {
+				BigDecimal decimal = (BigDecimal) number;
+				if (decimal.signum() == 0) return Long.hashCode(0);
+				if (decimal.scale() <= 0 || decimal.stripTrailingZeros().scale() <= 0) {
+					try {
+						return Long.hashCode(decimal.longValueExact());
+					} catch (ArithmeticException exc) {
+						return Double.hashCode(decimal.doubleValue());
+					}
+				}
+				return Double.hashCode(decimal.doubleValue());
+			}
+			double d = number.doubleValue();
+			if (d == Math.rint(d) && d >= -0x1p63 && d < 0x1p63) return Long.hashCode((long) d);
+			return Double.hashCode(d);
+		}
+		/**
+		 * @param value The number value.
+		 * @return A boolean indicating whether the value is an integer or a long.
+		 */
+		private static boolean isIntegral(Value value) {
+			return value.isInteger() || value.isLong();
+		}
+		/**
+		 * @param value The number value.
+		 * @return A boolean indicating whether the value is not an infinite or NaN double.
+		 */
+		private static boolean isFinite(Value value) {
+			return !value.isDouble() || Double.isFinite(value.getNumber().doubleValue());
+		}
+		/**
+		 * @param value The number value, finite.
+		 * @return The exact decimal value.
+		 */
+		private static BigDecimal decimal(Value value) {
+			Number number = value.getNumber();
+			if (value.isDecimal()) return (BigDecimal) number;
+			if (value.isDouble()) return new BigDecimal(number.doubleValue());
+			return BigDecimal.valueOf(number.longValue());
+		}
+	}
+
+	/** Schema. */
+	private Schema schema;
+	/** Primary key index. */
+	private Index primaryKey;
+	/** Value indexes of the primary key fields. */
+	private int[] primaryIndexes;
+	/** Rows by primary key. */
+	private Map<Key, Document> rows = new ConcurrentHashMap<>();
+	/** Trees of the indexes, in the order of the schema. */
+	private List<BPlusTree> trees = new ArrayList<>();
+	/** Lock that serializes writers and guards the trees. */
+	private StampedLock lock = new StampedLock();
+
+	/**
+	 * Constructor.
+	 * @param schema The schema, with at least one unique index that is the primary key.
+	 */
+	public Table(Schema schema) {
+		if (schema == null) throw new NullPointerException();
+		this.schema = schema;
+		for (Index index : schema.indexes()) {
+			if (index.isUnique()) {
+				primaryKey = index;
+				primaryIndexes = indexes(index);
+				break;
+			}
+		}
+		if (primaryKey == null) throw new IllegalArgumentException("Schema without unique index");
+		for (Index index : schema.indexes()) {
+			trees.add(new BPlusTree(schema.fields(), index, primaryKey));
+		}
+	}
+
+	/**
+	 * Returns the schema.
+	 * @return The schema.
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+	/**
+	 * Returns the primary key index.
+	 * @return The primary key index.
+	 */
+	public Index getPrimaryKey() {
+		return primaryKey;
+	}
+	/**
+	 * Returns the number of rows.
+	 * @return The number of rows.
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Insert a document.
+	 * @param document The document, that the table takes over.
+	 * @throws IllegalArgumentException If the document is not valid or the primary key or any
+	 *                                  unique key already exists.
+	 */
+	public void insert(Document document) {
+		validate(document);
+		Key key = key(document, primaryIndexes);
+		if (key.hasNulls()) throw new IllegalArgumentException("Null primary key values");
+		long stamp = lock.writeLock();
+		try {
+			if (rows.containsKey(key)) {
+				throw new IllegalArgumentException("Duplicate primary key: " + key);
+			}
+			checkUnique(document, null);
+			int inserted = 0;
+			try {
+				for (; inserted < trees.size(); inserted++) trees.get(inserted).insert(document);
+			} catch (RuntimeException exc) {
+				for (int i = 0; i < inserted; i++) trees.get(i).remove(document);
+				throw exc;
+			}
+			rows.put(key, document);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+	/**
+	 * Update the row with the primary key of the document, replacing it.
+	 * @param document The new document, that the table takes over.
+	 * @return The replaced document.
+	 * @throws IllegalArgumentException If the document is not valid, the primary key does not
+	 *                                  exist or any unique key exists in another row.
+	 */
+	public Document update(Document document) {
+		validate(document);
+		Key key = key(document, primaryIndexes);
+		if (key.hasNulls()) throw new IllegalArgumentException("Null primary key values");
+		long stamp = lock.writeLock();
+		try {
+			Document previous = rows.get(key);
+			if (previous == null) {
+				throw new IllegalArgumentException("Primary key not found: " + key);
+			}
+			checkUnique(document, key);
+			int removed = 0;
+			int inserted = 0;
+			try {
+				for (; removed < trees.size(); removed++) trees.get(removed).remove(previous);
+				for (; inserted < trees.size(); inserted++) trees.get(inserted).insert(document);
+			} catch (RuntimeException exc) {
+				for (int i = 0; i < inserted; i++) trees.get(i).remove(document);
+				for (int i = 0; i < removed; i++) trees.get(i).insert(previous);
+				throw exc;
+			}
+			rows.put(key, document);
+			return previous;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+	/**
+	 * Delete the row with the primary key.
+	 * @param primaryKey The values of the primary key fields.
+	 * @return The deleted document or null if not found.
+	 */
+	public Document delete(Value... primaryKey) {
+		Key key = key(primaryKey, primaryIndexes.length);
+		long stamp = lock.writeLock();
+		try {
+			Document previous = rows.remove(key);
+			if (previous != null) for (BPlusTree tree : trees) tree.remove(previous);
+			return previous;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns the row with the primary key, without locking.
+	 * @param primaryKey The values of the primary key fields.
+	 * @return The document or null if not found.
+	 */
+	public Document get(Value... primaryKey) {
+		return rows.get(key(primaryKey, primaryIndexes.length));
+	}
+	/**
+	 * Returns the row with the key of a unique index other than the primary key.
+	 * @param index The unique index.
+	 * @param key   The values of the index fields.
+	 * @return The document or null if not found.
+	 */
+	public Document get(Index index, Value... key) {
+		if (index == primaryKey) return get(key);
+		BPlusTree tree = tree(index);
+		if (!index.isUnique()) throw new IllegalArgumentException("Not a unique index");
+		long stamp = lock.readLock();
+		try {
+			return tree.find(key);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the rows between bounds of an index, in index order. Bounds may have fewer values
+	 * than index fields, compared with the leading fields, and are in index order, that is, the
+	 * lower bound of a descending field is its greatest value.
+	 * @param index         The index.
+	 * @param from          The lower bound, null for no bound.
+	 * @param fromInclusive A boolean indicating whether the lower bound is inclusive.
+	 * @param to            The upper bound, null for no bound.
+	 * @param toInclusive   A boolean indicating whether the upper bound is inclusive.
+	 * @return The list of documents.
+	 */
+	public List<Document> scan(
+		Index index,
+		Value[] from,
+		boolean fromInclusive,
+		Value[] to,
+		boolean toInclusive) {
+		BPlusTree tree = tree(index);
+		List<Document> documents = new ArrayList<>();
+		long stamp = lock.readLock();
+		try {
+			tree.scan(from, fromInclusive, to, toInclusive, documents::add);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		return documents;
+	}
+	/**
+	 * Returns the rows whose leading index fields are equal to the prefix, in index order.
+	 * @param index  The index.
+	 * @param prefix The values of the leading fields.
+	 * @return The list of documents.
+	 */
+	public List<Document> scan(Index index, Value... prefix) {
+		return scan(index, prefix, true, prefix, true);
+	}
+
+	/**
+	 * Returns the rows accepted by a predicate, for instance a compiled criteria.
+	 * @param predicate The predicate.
+	 * @return The list of accepted documents, in no particular order.
+	 */
+	public List<Document> select(Predicate<Document> predicate) {
+		List<Document> documents = new ArrayList<>();
+		forEach(document -> {
+			if (predicate.test(document)) documents.add(document);
+		});
+		return documents;
+	}
+	/**
+	 * Perform the action on all rows under the read lock, thus on a consistent state.
+	 * @param action The action, that must not write to the table.
+	 */
+	public void forEach(Consumer<Document> action) {
+		long stamp = lock.readLock();
+		try {
+			rows.values().forEach(action);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Validate the document against the schema of the table.
+	 * @param document The document.
+	 */
+	private void validate(Document document) {
+		if (document.getSchema() != schema && !schema.equals(document.getSchema())) {
+			throw new IllegalArgumentException("Document does not conform to the table schema");
+		}
+		for (Field field : schema.fields().fields()) {
+			Value value = document.getValue(schema.fields().getIndex(field.getAlias()));
+			if (value == null) {
+				throw new IllegalArgumentException("Value not set: " + field.getAlias());
+			}
+			field.validateType(value);
+			if (value.isNull()) {
+				if (field.isRequired()) {
+					throw new IllegalArgumentException("Required value: " + field.getAlias());
+				}
+			} else {
+				field.validate(value);
+			}
+		}
+	}
+	/**
+	 * Check that no other row has any of the unique keys of the document.
+	 * @param document The document.
+	 * @param primary  The primary key of the row being updated, null on insert.
+	 */
+	private void checkUnique(Document document, Key primary) {
+		for (BPlusTree tree : trees) {
+			Index index = tree.getIndex();
+			if (!index.isUnique() || index == primaryKey) continue;
+			Document owner = tree.find(document);
+			if (owner != null && !key(owner, primaryIndexes).equals(primary)) {
+				throw new IllegalArgumentException("Duplicate key in index " + index.getName());
+			}
+		}
+	}
+	/**
+	 * @param index The index.
+	 * @return The tree of the index.
+	 */
+	private BPlusTree tree(Index index) {
+		for (BPlusTree tree : trees) if (tree.getIndex() == index) return tree;
+		throw new IllegalArgumentException("Not an index of the table");
+	}
+	/**
+	 * @param index The index.
+	 * @return The value indexes of the index fields.
+	 */
+	private int[] indexes(Index index) {
+		if (index.isEmpty()) throw new IllegalArgumentException("Index without fields");
+		int[] indexes = new int[index.size()];
+		for (int i = 0; i < index.size(); i++) {
+			String alias = index.get(i).getField().getAlias();
+			indexes[i] = schema.fields().getIndex(alias);
+			if (indexes[i] < 0) throw new IllegalArgumentException("Invalid field key: " + alias);
+		}
+		return indexes;
+	}
+	/**
+	 * @param document The document.
+	 * @param indexes  The value indexes of the fields.
+	 * @return The key.
+	 */
+	private static Key key(Document document, int[] indexes) {
+		Value[] values = new Value[indexes.length];
+		for (int i = 0; i < indexes.length; i++) values[i] = document.getValue(indexes[i]);
+		return new Key(values);
+	}
+	/**
+	 * @param values The values of the key fields.
+	 * @param size   The number of key fields.
+	 * @return The key.
+	 */
+	private static Key key(Value[] values, int size) {
+		if (values.length != size) {
+			throw new IllegalArgumentException("Invalid number of key values");
+		}
+		Key key = new Key(values);
+		if (key.hasNulls()) throw new IllegalArgumentException("Null key values");
+		return key;
+	}
+}
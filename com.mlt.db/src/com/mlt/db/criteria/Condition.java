@@ -146,8 +146,8 @@ public class Condition {
 		/* A string formula, nothing more to validate. */
 		if (formula != null) return;
 
-		/* If values are null, the operator must require zero values. */
-		if (values == null && cmp.size() == 0) return;
+		/* If values are null or empty, the operator must require zero values. */
+		if ((values == null || values.length == 0) && cmp.size() == 0) return;
 
 		/* Values are required. */
 		if (values == null) throw new IllegalArgumentException("Values are required");
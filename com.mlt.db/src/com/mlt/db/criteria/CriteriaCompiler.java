@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.db.criteria;
+
+import com.mlt.common.collections.Queue;
+import com.mlt.db.Criteria;
+import com.mlt.db.Document;
+import com.mlt.db.Field;
+import com.mlt.db.FieldMap;
+import com.mlt.db.Type;
+import com.mlt.db.Value;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Compiles a criteria to a predicate over documents that conform to a schema.
+ * <p>
+ * Fields are resolved to value indexes of the field map once, at compile time, and each condition
+ * becomes a leaf specialized by type, comparing longs, doubles, decimals or comparable objects
+ * with constants converted once, and binary searching sorted constants for IN. Within a segment
+ * or criteria AND binds tighter than OR, and AND NOT and OR NOT negate the operand that follows.
+ * Evaluation short-circuits and does not allocate per document.
+ * <p>
+ * Comparisons with a null value, either in the document or as a constant, are false, including
+ * NE and NOT IN, and only IS NULL accepts nulls. Formula conditions can not be compiled.
+ *
+ * @author Miquel Sas
+ */
+public class CriteriaCompiler {
+
+	/**
+	 * Conjunction of operands.
+	 */
+	private static final class And implements Predicate<Document> {
+		private final Predicate<Document>[] operands;
+		private And(Predicate<Document>[] operands) { this.operands = operands; }
+		@Override
+		public boolean test(Document document) {
+			for (Predicate<Document> operand : operands) if (!operand.test(document)) return false;
+			return true;
+		}
+	}
+	/**
+	 * Disjunction of operands.
+	 */
+	private static final class Or implements Predicate<Document> {
+		private final Predicate<Document>[] operands;
+		private Or(Predicate<Document>[] operands) { this.operands = operands; }
+		@Override
+		public boolean test(Document document) {
+			for (Predicate<Document> operand : operands) if (operand.test(document)) return true;
+			return false;
+		}
+	}
+	/**
+	 * Negation of an operand.
+	 */
+	private static final class Not implements Predicate<Document> {
+		private final Predicate<Document> operand;
+		private Not(Predicate<Document> operand) { this.operand = operand; }
+		@Override
+		public boolean test(Document document) { return !operand.test(document); }
+	}
+	/**
+	 * Constant result.
+	 */
+	private static final class Constant implements Predicate<Document> {
+		private final boolean result;
+		private Constant(boolean result) { this.result = result; }
+		@Override
+		public boolean test(Document document) { return result; }
+	}
+
+	/**
+	 * IS NULL and IS NOT NULL.
+	 */
+	private static final class IsNull implements Predicate<Document> {
+		private final int index;
+		private final boolean isNull;
+		private IsNull(int index, boolean isNull) {
+			this.index = index;
+			this.isNull = isNull;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			return (value == null || value.isNull()) == isNull;
+		}
+	}
+	/**
+	 * Comparison of integer numbers.
+	 */
+	private static final class LongCompare implements Predicate<Document> {
+		private final int index;
+		private final Comparison cmp;
+		private final long constant;
+		private LongCompare(int index, Comparison cmp, long constant) {
+			this.index = index;
+			this.cmp = cmp;
+			this.constant = constant;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			return accept(cmp, Long.compare(value.getNumber().longValue(), constant));
+		}
+	}
+	/**
+	 * Comparison of floating point numbers.
+	 */
+	private static final class DoubleCompare implements Predicate<Document> {
+		private final int index;
+		private final Comparison cmp;
+		private final double constant;
+		private DoubleCompare(int index, Comparison cmp, double constant) {
+			this.index = index;
+			this.cmp = cmp;
+			this.constant = constant;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			double number = value.getNumber().doubleValue();
+			switch (cmp) {
+			case EQ:
+				return number == constant;
+			case NE:
+				return number != constant;
+			case GT:
+				return number > constant;
+			case GE:
+				return number >= constant;
+			case LT:
+				return number < constant;
+			case LE:
+				return number <= constant;
+			default:
+				return false;
+			}
+		}
+	}
+	/**
+	 * Comparison of decimal numbers.
+	 */
+	private static final class DecimalCompare implements Predicate<Document> {
+		private final int index;
+		private final Comparison cmp;
+		private final BigDecimal constant;
+		private DecimalCompare(int index, Comparison cmp, BigDecimal constant) {
+			this.index = index;
+			this.cmp = cmp;
+			this.constant = constant;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			return accept(cmp, decimal(value).compareTo(constant));
+		}
+	}
+	/**
+	 * Comparison of strings, dates, times, timestamps and booleans.
+	 */
+	private static final class ObjectCompare implements Predicate<Document> {
+		private final int index;
+		private final Type type;
+		private final Comparison cmp;
+		private final Object constant;
+		private ObjectCompare(int index, Type type, Comparison cmp, Object constant) {
+			this.index = index;
+			this.type = type;
+			this.cmp = cmp;
+			this.constant = constant;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			return accept(cmp, comparable(object(value, type)).compareTo(constant));
+		}
+	}
+	/**
+	 * STARTS WITH, CONTAINS and ENDS WITH.
+	 */
+	private static final class StringMatch implements Predicate<Document> {
+		private final int index;
+		private final Comparison cmp;
+		private final String constant;
+		private StringMatch(int index, Comparison cmp, String constant) {
+			this.index = index;
+			this.cmp = cmp;
+			this.constant = constant;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			String string = value.getString();
+			switch (cmp) {
+			case STARTS_WITH:
+				return string.startsWith(constant);
+			case CONTAINS:
+				return string.contains(constant);
+			case ENDS_WITH:
+				return string.endsWith(constant);
+			default:
+				return false;
+			}
+		}
+	}
+	/**
+	 * IN and NOT IN of integer numbers, over sorted constants.
+	 */
+	private static final class LongIn implements Predicate<Document> {
+		private final int index;
+		private final boolean in;
+		private final long[] constants;
+		private LongIn(int index, boolean in, long[] constants) {
+			this.index = index;
+			this.in = in;
+			this.constants = constants;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			return (Arrays.binarySearch(constants, value.getNumber().longValue()) >= 0) == in;
+		}
+	}
+	/**
+	 * IN and NOT IN of floating point numbers, over sorted constants.
+	 */
+	private static final class DoubleIn implements Predicate<Document> {
+		private final int index;
+		private final boolean in;
+		private final double[] constants;
+		private DoubleIn(int index, boolean in, double[] constants) {
+			this.index = index;
+			this.in = in;
+			this.constants = constants;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			return (Arrays.binarySearch(constants, value.getNumber().doubleValue()) >= 0) == in;
+		}
+	}
+	/**
+	 * IN and NOT IN of decimals, strings, dates, times and timestamps, over sorted constants.
+	 */
+	private static final class ObjectIn implements Predicate<Document> {
+		private final int index;
+		private final Type type;
+		private final boolean in;
+		private final Object[] constants;
+		private ObjectIn(int index, Type type, boolean in, Object[] constants) {
+			this.index = index;
+			this.type = type;
+			this.in = in;
+			this.constants = constants;
+		}
+		@Override
+		public boolean test(Document document) {
+			Value value = document.getValue(index);
+			if (value == null || value.isNull()) return false;
+			Object object = type == Type.DECIMAL ? decimal(value) : object(value, type);
+			return (Arrays.binarySearch(constants, object) >= 0) == in;
+		}
+	}
+
+	/**
+	 * @param criteria The criteria.
+	 * @param fields   The field map that resolves fields to value indexes.
+	 * @return The predicate.
+	 * @throws IllegalStateException    If the criteria is not valid.
+	 * @throws IllegalArgumentException If a field is not in the field map, a condition is a
+	 *                                  formula or its type is not supported.
+	 */
+	public static Predicate<Document> compile(Criteria criteria, FieldMap fields) {
+		if (criteria.isEmpty()) return new Constant(true);
+		if (!criteria.isValid()) throw new IllegalStateException("Last segment is empty");
+		return compile(criteria.getTokens(), fields);
+	}
+
+	/**
+	 * Compile a sequence of operands separated by logical operators, as a disjunction of
+	 * conjunctions.
+	 *
+	 * @param tokens The tokens.
+	 * @param fields The field map.
+	 * @return The predicate.
+	 */
+	private static Predicate<Document> compile(Queue<Token> tokens, FieldMap fields) {
+		List<List<Predicate<Document>>> disjunction = new ArrayList<>();
+		List<Predicate<Document>> conjunction = new ArrayList<>();
+		disjunction.add(conjunction);
+		Logical logical = null;
+		for (Token token : tokens) {
+			if (token.isLogical()) {
+				logical = token.getLogical();
+				continue;
+			}
+			Predicate<Document> operand;
+			if (token.isCondition()) operand = compile(token.getCondition(), fields);
+			else if (token.isSegment()) operand = compile(token.getSegment().getTokens(), fields);
+			else operand = compile(token.getCriteria(), fields);
+			if (logical == Logical.OR || logical == Logical.OR_NOT) {
+				conjunction = new ArrayList<>();
+				disjunction.add(conjunction);
+			}
+			if (logical == Logical.AND_NOT || logical == Logical.OR_NOT) operand = new Not(operand);
+			conjunction.add(operand);
+			logical = null;
+		}
+		List<Predicate<Document>> operands = new ArrayList<>();
+		for (List<Predicate<Document>> operand : disjunction) {
+			operands.add(operand.size() == 1 ? operand.get(0) : new And(array(operand)));
+		}
+		return operands.size() == 1 ? operands.get(0) : new Or(array(operands));
+	}
+	/**
+	 * @param cond   The condition.
+	 * @param fields The field map.
+	 * @return The leaf predicate.
+	 */
+	private static Predicate<Document> compile(Condition cond, FieldMap fields) {
+		if (cond.getFormula() != null) {
+			throw new IllegalArgumentException("Formula conditions can not be compiled: " + cond);
+		}
+		Field field = cond.getField();
+		int index = fields.getIndex(field.getAlias());
+		if (index < 0) throw new IllegalArgumentException("Invalid field key: " + field.getAlias());
+		Comparison cmp = cond.getComparison();
+		if (cmp.isUnary()) return new IsNull(index, cmp == Comparison.IS_NULL);
+
+		Type type = field.getType();
+		Value[] values = nonNull(cond.getValues());
+		if (values.length == 0) return new Constant(false);
+		boolean in = cmp == Comparison.IN || cmp == Comparison.NOT_IN;
+
+		if (type.isNumber()) {
+			boolean integral = !type.isDecimal() && !type.isDouble();
+			for (Value value : values) integral &= value.isInteger() || value.isLong();
+			if (integral) {
+				if (!in) return new LongCompare(index, cmp, values[0].getNumber().longValue());
+				long[] constants = new long[values.length];
+				for (int i = 0; i < values.length; i++) {
+					constants[i] = values[i].getNumber().longValue();
+				}
+				Arrays.sort(constants);
+				return new LongIn(index, cmp == Comparison.IN, constants);
+			}
+			if (type.isDecimal()) {
+				if (!in) return new DecimalCompare(index, cmp, values[0].getDecimal());
+				BigDecimal[] constants = new BigDecimal[values.length];
+				for (int i = 0; i < values.length; i++) constants[i] = values[i].getDecimal();
+				Arrays.sort(constants);
+				return new ObjectIn(index, type, cmp == Comparison.IN, constants);
+			}
+			if (!in) return new DoubleCompare(index, cmp, values[0].getNumber().doubleValue());
+			double[] constants = new double[values.length];
+			for (int i = 0; i < values.length; i++) {
+				constants[i] = values[i].getNumber().doubleValue();
+			}
+			Arrays.sort(constants);
+			return new DoubleIn(index, cmp == Comparison.IN, constants);
+		}
+
+		if (!type.in(Type.BOOLEAN, Type.STRING, Type.DATE, Type.TIME, Type.TIMESTAMP)) {
+			throw new IllegalArgumentException("Type not supported: " + type);
+		}
+		boolean match = cmp == Comparison.STARTS_WITH || cmp == Comparison.CONTAINS;
+		if (match || cmp == Comparison.ENDS_WITH) {
+			return new StringMatch(index, cmp, values[0].getString());
+		}
+		if (!in) return new ObjectCompare(index, type, cmp, object(values[0], type));
+		Object[] constants = new Object[values.length];
+		for (int i = 0; i < values.length; i++) constants[i] = object(values[i], type);
+		Arrays.sort(constants);
+		return new ObjectIn(index, type, cmp == Comparison.IN, constants);
+	}
+
+	/**
+	 * @param cmp     The comparison, EQ, NE, GT, GE, LT or LE.
+	 * @param compare The result of comparing the document value with the constant.
+	 * @return A boolean indicating whether the comparison accepts the result.
+	 */
+	private static boolean accept(Comparison cmp, int compare) {
+		switch (cmp) {
+		case EQ:
+			return compare == 0;
+		case NE:
+			return compare != 0;
+		case GT:
+			return compare > 0;
+		case GE:
+			return compare >= 0;
+		case LT:
+			return compare < 0;
+		case LE:
+			return compare <= 0;
+		default:
+			return false;
+		}
+	}
+	/**
+	 * @param value A not null value.
+	 * @param type  The type of the field.
+	 * @return The internal object of the value, a string, a date, a time, a timestamp or a boolean.
+	 */
+	private static Object object(Value value, Type type) {
+		switch (type) {
+		case STRING:
+			return value.getString();
+		case DATE:
+			return value.getDate();
+		case TIME:
+			return value.getTime();
+		case TIMESTAMP:
+			return value.getTimestamp();
+		default:
+			return value.getBoolean();
+		}
+	}
+	/**
+	 * @param value A not null number value.
+	 * @return The decimal, allocated only if the value is not a decimal.
+	 */
+	private static BigDecimal decimal(Value value) {
+		Number number = value.getNumber();
+		if (number instanceof BigDecimal) return (BigDecimal) number;
+		return value.getDecimal();
+	}
+	/**
+	 * @param object The object.
+	 * @return The object as a comparable.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Comparable<Object> comparable(Object object) {
+		return (Comparable<Object>) object;
+	}
+	/**
+	 * @param values The values, may be null.
+	 * @return The not null values.
+	 */
+	private static Value[] nonNull(Value[] values) {
+		if (values == null) return new Value[0];
+		List<Value> list = new ArrayList<>();
+		for (Value value : values) if (value != null && !value.isNull()) list.add(value);
+		return list.toArray(new Value[list.size()]);
+	}
+	/**
+	 * @param list The list of predicates.
+	 * @return The array.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate<Document>[] array(List<Predicate<Document>> list) {
+		return list.toArray(new Predicate[list.size()]);
+	}
+}
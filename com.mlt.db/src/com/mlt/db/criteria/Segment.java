@@ -31,6 +31,8 @@ public class Segment {
 	public Segment() {}
 	/** @param token A token. */
 	public void add(Token token) { tokens.add(token); }
+	/** @return The list of tokens. */
+	public Queue<Token> getTokens() { return tokens; }
 	/** @return A boolean indicating whether the segment is empty. */
 	public boolean isEmpty() { return tokens.isEmpty(); }
 
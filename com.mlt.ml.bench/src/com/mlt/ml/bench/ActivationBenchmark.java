@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.bench;
+
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.function.activation.ActivationSoftMax;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the activation functions over a batch of vectors.
+ *
+ * @author Miquel Sas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivationBenchmark {
+
+	/** Vector size. */
+	@Param({ "16", "256", "4096" })
+	public int size;
+	/** Batch size. */
+	@Param({ "1", "32" })
+	public int batch;
+
+	/** Sigmoid. */
+	private ActivationSigmoid sigmoid = new ActivationSigmoid();
+	/** Soft-max. */
+	private ActivationSoftMax softMax = new ActivationSoftMax();
+	/** Triggers, one vector per batch item. */
+	private double[][] triggers;
+	/** Outputs, one vector per batch item. */
+	private double[][] outputs;
+
+	/**
+	 * Fill triggers and outputs with random data.
+	 */
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		triggers = new double[batch][size];
+		outputs = new double[batch][size];
+		for (int b = 0; b < batch; b++) {
+			for (int i = 0; i < size; i++) {
+				triggers[b][i] = random.nextGaussian();
+				outputs[b][i] = random.nextDouble();
+			}
+		}
+	}
+
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void sigmoidActivations(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(sigmoid.activations(triggers[b]));
+	}
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void sigmoidDerivatives(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(sigmoid.derivatives(outputs[b]));
+	}
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void softMaxActivations(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(softMax.activations(triggers[b]));
+	}
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void softMaxDerivatives(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(softMax.derivatives(outputs[b]));
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the ML benchmarks with the allocation (GC) profiler enabled, writing a JSON result file
+ * that can be kept as the baseline to compare performance changes of the graph engine.
+ * <p>
+ * JMH comes from the <code>jmh</code> project library, resolved from Maven Central, and its
+ * annotation processor is enabled for this module by the <code>jmh</code> profile of the project
+ * compiler settings. Optional arguments are a regular expression to select benchmarks and the
+ * result file name.
+ *
+ * @author Miquel Sas
+ */
+public class BenchmarkRunner {
+	/**
+	 * @param args Optional include regular expression and result file.
+	 * @throws RunnerException If the run fails.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : "com\\.mlt\\.ml\\.bench\\..*";
+		String result = args.length > 1 ? args[1] : "mlt-ml-bench.json";
+		Options options = new OptionsBuilder()
+			.include(include)
+			.addProfiler(GCProfiler.class)
+			.resultFormat(ResultFormatType.JSON)
+			.result(result)
+			.build();
+		new Runner(options).run();
+	}
+}
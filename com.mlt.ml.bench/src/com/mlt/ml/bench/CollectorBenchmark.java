@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.bench;
+
+import com.mlt.common.collections.Queue;
+import com.mlt.ml.function.collector.CollectorAddition;
+import com.mlt.ml.function.collector.CollectorTransfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the collector functions over a batch of vector collections.
+ *
+ * @author Miquel Sas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorBenchmark {
+
+	/** Vector size. */
+	@Param({ "16", "256", "4096" })
+	public int size;
+	/** Batch size. */
+	@Param({ "1", "32" })
+	public int batch;
+	/** Number of vectors collected by the addition. */
+	@Param({ "2", "8" })
+	public int vectors;
+
+	/** Addition. */
+	private CollectorAddition addition = new CollectorAddition();
+	/** Transfer. */
+	private CollectorTransfer transfer = new CollectorTransfer();
+	/** Collections to add, one per batch item. */
+	private Queue<double[]>[] additions;
+	/** Single vector collections to transfer, one per batch item. */
+	private Queue<double[]>[] transfers;
+
+	/**
+	 * Fill the collections with random data.
+	 */
+	@Setup
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setup() {
+		Random random = new Random(0);
+		additions = new Queue[batch];
+		transfers = new Queue[batch];
+		for (int b = 0; b < batch; b++) {
+			additions[b] = new Queue<>();
+			for (int v = 0; v < vectors; v++) additions[b].add(vector(random));
+			transfers[b] = new Queue<>();
+			transfers[b].add(vector(random));
+		}
+	}
+	/**
+	 * @param random Random generator.
+	 * @return A random vector.
+	 */
+	private double[] vector(Random random) {
+		double[] vector = new double[size];
+		for (int i = 0; i < size; i++) vector[i] = random.nextGaussian();
+		return vector;
+	}
+
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void addition(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(addition.collect(additions[b]));
+	}
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void transfer(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(transfer.collect(transfers[b]));
+	}
+}
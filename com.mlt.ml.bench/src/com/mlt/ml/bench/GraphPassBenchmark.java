@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.bench;
+
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.AdditionNode;
+import com.mlt.ml.graph.nodes.BiasNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of full forward and backward passes over the graph
+ * <code>input + bias -&gt; addition -&gt; sigmoid activation -&gt; output</code>, for a batch of
+ * samples.
+ *
+ * @author Miquel Sas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphPassBenchmark {
+
+	/** Vector size. */
+	@Param({ "16", "256", "4096" })
+	public int size;
+	/** Batch size. */
+	@Param({ "1", "32" })
+	public int batch;
+
+	/** Network. */
+	private Network network;
+	/** Inputs, one vector per batch item. */
+	private double[][] inputs;
+	/** Deltas, one vector per batch item, read-only for the nodes. */
+	private double[][] deltas;
+
+	/**
+	 * Build the network and fill inputs and deltas with random data.
+	 */
+	@Setup
+	public void setup() {
+		BiasNode bias = new BiasNode(size);
+		AdditionNode addition = new AdditionNode(size);
+		ActivationNode activation = new ActivationNode(size, new ActivationSigmoid());
+
+		Edge biasAddition = new Edge(size);
+		bias.addOutputEdge(biasAddition);
+		addition.addInputEdge(biasAddition);
+		addition.addInputEdge(new Edge(size));
+		Edge additionActivation = new Edge(size);
+		addition.addOutputEdge(additionActivation);
+		activation.addInputEdge(additionActivation);
+		activation.addOutputEdge(new Edge(size));
+
+		network = new Network();
+		network.addNodes(bias, addition, activation);
+		network.initialize();
+
+		Random random = new Random(0);
+		inputs = new double[batch][size];
+		deltas = new double[batch][size];
+		for (int b = 0; b < batch; b++) {
+			for (int i = 0; i < size; i++) {
+				inputs[b][i] = random.nextGaussian();
+				deltas[b][i] = random.nextGaussian() * 0.1;
+			}
+		}
+	}
+
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void forward(Blackhole bh) {
+		for (int b = 0; b < batch; b++) bh.consume(network.forward(inputs[b]));
+	}
+	/**
+	 * @param bh Black hole.
+	 */
+	@Benchmark
+	public void forwardBackward(Blackhole bh) {
+		for (int b = 0; b < batch; b++) {
+			bh.consume(network.forward(inputs[b]));
+			network.backward(deltas[b]);
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Shuffled epoch iteration over a pattern file that does not fit in memory. Each epoch visits the
+ * blocks of consecutive patterns in a random order, reading each block with a sequential read,
+ * and feeds a bounded shuffle buffer from which patterns are drawn at random. The randomness of
+ * the order grows with the buffer size over the block size.
+ * <p>
+ * The quality of the order of the last completed epoch is measured on the fly, without storing
+ * the permutation.
+ *
+ * @author Miquel Sas
+ */
+public class BlockShuffle implements Iterable<Pattern> {
+
+	/**
+	 * Quality metrics of the order of an epoch.
+	 */
+	public static class Quality {
+		/** Mean displacement over the expected displacement of a random permutation. */
+		private double displacement;
+		/** Spearman rank correlation between the file position and the epoch position. */
+		private double rankCorrelation;
+		/** Rate of consecutive patterns that come from the same block. */
+		private double sameBlockRate;
+		/** Same block rate of a random permutation. */
+		private double expectedSameBlockRate;
+
+		/**
+		 * @return The mean displacement over that of a random permutation, near 1 if random.
+		 */
+		public double getDisplacement() { return displacement; }
+		/**
+		 * @return The rank correlation between file and epoch positions, near 0 if random.
+		 */
+		public double getRankCorrelation() { return rankCorrelation; }
+		/**
+		 * @return The rate of consecutive patterns from the same block.
+		 */
+		public double getSameBlockRate() { return sameBlockRate; }
+		/**
+		 * @return The same block rate expected from a random permutation.
+		 */
+		public double getExpectedSameBlockRate() { return expectedSameBlockRate; }
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			return String.format(
+				"displacement %.3f, rank correlation %.4f, same block rate %.4f (random %.4f)",
+				displacement, rankCorrelation, sameBlockRate, expectedSameBlockRate);
+		}
+	}
+
+	/** Pattern file. */
+	private PatternFile file;
+	/** Number of patterns per block. */
+	private int blockSize;
+	/** Number of patterns of the shuffle buffer. */
+	private int bufferSize;
+	/** Random generator. */
+	private Random random = new Random();
+	/** Quality of the last completed epoch. */
+	private Quality quality;
+
+	/**
+	 * @param file       The pattern file.
+	 * @param blockSize  The number of patterns per block.
+	 * @param bufferSize The number of patterns of the shuffle buffer.
+	 */
+	public BlockShuffle(PatternFile file, int blockSize, int bufferSize) {
+		if (blockSize < 1) throw new IllegalArgumentException("Invalid block size");
+		if (bufferSize < 1) throw new IllegalArgumentException("Invalid buffer size");
+		this.file = file;
+		this.blockSize = blockSize;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @param seed The seed of the random generator.
+	 */
+	public void setSeed(long seed) { this.random = new Random(seed); }
+	/**
+	 * @return The quality of the last completed epoch, null if none.
+	 */
+	public Quality getQuality() { return quality; }
+
+	/**
+	 * @return An iterator over a new shuffled epoch.
+	 */
+	@Override
+	public Iterator<Pattern> iterator() { return new Epoch(); }
+
+	/**
+	 * Iterator over an epoch.
+	 */
+	private class Epoch implements Iterator<Pattern> {
+		/** Block order. */
+		private int[] blocks;
+		/** Next block in the order. */
+		private int nextBlock;
+		/** Patterns of the current block. */
+		private Pattern[] block = new Pattern[blockSize];
+		/** File index of the first pattern of the current block. */
+		private int blockStart;
+		/** Number of patterns of the current block. */
+		private int blockCount;
+		/** Next pattern of the current block to move to the buffer. */
+		private int blockCursor;
+		/** Shuffle buffer. */
+		private Pattern[] buffer = new Pattern[bufferSize];
+		/** File index of the patterns of the buffer. */
+		private int[] indexes = new int[bufferSize];
+		/** Number of patterns in the buffer. */
+		private int count;
+
+		/** Epoch position. */
+		private long position;
+		/** Sum of absolute displacements. */
+		private double sumDisplacement;
+		/** Sum of squared displacements. */
+		private double sumSquares;
+		/** Block of the previous pattern. */
+		private int previousBlock = -1;
+		/** Consecutive patterns from the same block. */
+		private long sameBlock;
+
+		private Epoch() {
+			int size = file.size();
+			blocks = new int[(size + blockSize - 1) / blockSize];
+			for (int i = 0; i < blocks.length; i++) blocks[i] = i;
+			for (int i = blocks.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = blocks[i];
+				blocks[i] = blocks[j];
+				blocks[j] = t;
+			}
+			fill();
+		}
+		@Override
+		public boolean hasNext() { return count > 0; }
+		@Override
+		public Pattern next() {
+			if (count == 0) throw new NoSuchElementException();
+			int j = random.nextInt(count);
+			Pattern pattern = buffer[j];
+			int index = indexes[j];
+			count--;
+			buffer[j] = buffer[count];
+			indexes[j] = indexes[count];
+			buffer[count] = null;
+			measure(index);
+			fill();
+			if (count == 0) finish();
+			return pattern;
+		}
+		/**
+		 * Move patterns to the buffer until full, reading blocks as needed.
+		 */
+		private void fill() {
+			while (count < bufferSize) {
+				if (blockCursor == blockCount) {
+					if (nextBlock == blocks.length) return;
+					blockStart = blocks[nextBlock++] * blockSize;
+					blockCount = Math.min(blockSize, file.size() - blockStart);
+					blockCursor = 0;
+					file.read(blockStart, block, blockCount);
+				}
+				buffer[count] = block[blockCursor];
+				indexes[count] = blockStart + blockCursor;
+				block[blockCursor] = null;
+				blockCursor++;
+				count++;
+			}
+		}
+		/**
+		 * @param index The file index of the pattern at the current epoch position.
+		 */
+		private void measure(int index) {
+			double d = Math.abs((double) index - position);
+			sumDisplacement += d;
+			sumSquares += d * d;
+			int blockIndex = index / blockSize;
+			if (blockIndex == previousBlock) sameBlock++;
+			previousBlock = blockIndex;
+			position++;
+		}
+		/**
+		 * Register the quality of the completed epoch.
+		 */
+		private void finish() {
+			double n = position;
+			Quality quality = new Quality();
+			/* The mean displacement of a random permutation is (n^2 - 1) / 3n. */
+			quality.displacement = n < 2 ? 0 : (sumDisplacement / n) / ((n * n - 1) / (3 * n));
+			quality.rankCorrelation = n < 2 ? 1 : 1 - 6 * sumSquares / (n * (n * n - 1));
+			quality.sameBlockRate = n < 2 ? 0 : sameBlock / (n - 1);
+			quality.expectedSameBlockRate = n < 2 ? 0 : (Math.min(blockSize, n) - 1) / (n - 1);
+			BlockShuffle.this.quality = quality;
+		}
+	}
+}
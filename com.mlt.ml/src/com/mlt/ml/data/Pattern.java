@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+/**
+ * A training or test pattern, input values and the expected output values.
+ *
+ * @author Miquel Sas
+ */
+public class Pattern {
+
+	/** Input values. */
+	private double[] input;
+	/** Output or target values. */
+	private double[] output;
+
+	/**
+	 * @param input  Input values.
+	 * @param output Output or target values.
+	 */
+	public Pattern(double[] input, double[] output) {
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * @return The input values.
+	 */
+	public double[] getInput() { return input; }
+	/**
+	 * @return The output or target values.
+	 */
+	public double[] getOutput() { return output; }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of patterns with fixed size records, so that any pattern or block of consecutive
+ * patterns is read with a single positional read. The header holds a magic number, the input
+ * and output sizes and the number of patterns, and records are the input values followed by the
+ * output values, as doubles. Positional reads make the file safe for concurrent reads.
+ *
+ * @author Miquel Sas
+ */
+public class PatternFile implements PatternSource, Closeable {
+
+	/** Magic number. */
+	private static final int MAGIC = 0x4D4C5450;
+	/** Header size in bytes. */
+	private static final int HEADER_SIZE = 24;
+
+	/**
+	 * Write a source to a file.
+	 *
+	 * @param path   The path.
+	 * @param source The source, all patterns with the same sizes.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public static void write(Path path, PatternSource source) throws IOException {
+		int inputSize = source.size() == 0 ? 0 : source.get(0).getInput().length;
+		int outputSize = source.size() == 0 ? 0 : source.get(0).getOutput().length;
+		int recordSize = 8 * (inputSize + outputSize);
+		try (FileChannel channel = FileChannel.open(
+			path,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(inputSize).putInt(outputSize).putInt(0);
+			header.putLong(source.size()).flip();
+			writeFully(channel, header);
+			int records = Math.max(1, (1 << 20) / Math.max(1, recordSize));
+			ByteBuffer buffer = ByteBuffer.allocateDirect(records * Math.max(1, recordSize));
+			for (int i = 0; i < source.size(); i++) {
+				Pattern pattern = source.get(i);
+				if (pattern.getInput().length != inputSize || pattern.getOutput().length != outputSize) {
+					throw new IllegalArgumentException("Invalid pattern sizes at " + i);
+				}
+				if (buffer.remaining() < recordSize) {
+					buffer.flip();
+					writeFully(channel, buffer);
+					buffer.clear();
+				}
+				for (double value : pattern.getInput()) buffer.putDouble(value);
+				for (double value : pattern.getOutput()) buffer.putDouble(value);
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+	}
+	/**
+	 * @param channel The channel.
+	 * @param buffer  The buffer to write completely.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+
+	/** Channel. */
+	private FileChannel channel;
+	/** Input size. */
+	private int inputSize;
+	/** Output size. */
+	private int outputSize;
+	/** Number of patterns. */
+	private int size;
+
+	/**
+	 * @param path The path of the file.
+	 * @throws IOException If an I/O error occurs or the file is not a pattern file.
+	 */
+	public PatternFile(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(header, 0);
+		header.flip();
+		if (header.getInt() != MAGIC) {
+			channel.close();
+			throw new IOException("Not a pattern file: " + path);
+		}
+		inputSize = header.getInt();
+		outputSize = header.getInt();
+		header.getInt();
+		long count = header.getLong();
+		if (count > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException("Too many patterns: " + count);
+		}
+		size = (int) count;
+	}
+
+	/**
+	 * @return The input size.
+	 */
+	public int getInputSize() { return inputSize; }
+	/**
+	 * @return The output size.
+	 */
+	public int getOutputSize() { return outputSize; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() { return size; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Pattern get(int index) {
+		Pattern[] patterns = new Pattern[1];
+		read(index, patterns, 1);
+		return patterns[0];
+	}
+	/**
+	 * Read a block of consecutive patterns with a single read.
+	 *
+	 * @param first    The index of the first pattern.
+	 * @param patterns The destination array.
+	 * @param count    The number of patterns to read.
+	 */
+	public void read(int first, Pattern[] patterns, int count) {
+		if (first < 0 || count < 0 || first + count > size) {
+			throw new IllegalArgumentException("Invalid block " + first + ", " + count);
+		}
+		int recordSize = 8 * (inputSize + outputSize);
+		ByteBuffer buffer = ByteBuffer.allocate(count * recordSize);
+		try {
+			readFully(buffer, HEADER_SIZE + (long) first * recordSize);
+		} catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+		buffer.flip();
+		DoubleBuffer values = buffer.asDoubleBuffer();
+		for (int i = 0; i < count; i++) {
+			double[] input = new double[inputSize];
+			double[] output = new double[outputSize];
+			values.get(input);
+			values.get(output);
+			patterns[i] = new Pattern(input, output);
+		}
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException { channel.close(); }
+
+	/**
+	 * @param buffer   The buffer to fill.
+	 * @param position The file position.
+	 * @throws IOException If an I/O error occurs or the end of file is reached.
+	 */
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) throw new IOException("Unexpected end of file");
+			position += read;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+/**
+ * A random access source of patterns. Implementations are expected to be safe for concurrent
+ * reads, so that several trainers can share a single read-only source.
+ *
+ * @author Miquel Sas
+ */
+public interface PatternSource {
+	/**
+	 * @return The number of patterns.
+	 */
+	int size();
+	/**
+	 * @param index The index of the pattern.
+	 * @return The pattern.
+	 */
+	Pattern get(int index);
+}
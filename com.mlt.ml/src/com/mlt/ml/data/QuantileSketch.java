@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming quantile sketch. Values are kept in levels of a fixed capacity, where each
+ * value of level h stands for 2^h values of the stream. When a level fills up it is sorted and
+ * every other value is promoted to the next level, alternating the offset to avoid bias. Sketches
+ * of separate chunks are merged appending level by level and compacting again.
+ *
+ * @author Miquel Sas
+ */
+public class QuantileSketch {
+
+	/** Capacity of each level. */
+	private int capacity;
+	/** Values per level. */
+	private double[][] levels = new double[1][];
+	/** Number of values per level. */
+	private int[] counts = new int[1];
+	/** Alternating offset per level. */
+	private boolean[] offsets = new boolean[1];
+	/** Number of values added to the stream. */
+	private long count;
+
+	/**
+	 * @param capacity Capacity of each level, the greater the more accurate.
+	 */
+	public QuantileSketch(int capacity) {
+		if (capacity < 2) throw new IllegalArgumentException("Invalid capacity");
+		this.capacity = capacity;
+		this.levels[0] = new double[capacity];
+	}
+
+	/**
+	 * @return The number of values added to the stream.
+	 */
+	public long getCount() { return count; }
+
+	/**
+	 * @param value The value to add.
+	 */
+	public void add(double value) {
+		levels[0][counts[0]++] = value;
+		count++;
+		if (counts[0] == capacity) compact(0);
+	}
+	/**
+	 * @param other The sketch to merge into this one, with the same capacity.
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.capacity != capacity) throw new IllegalArgumentException("Different capacity");
+		for (int h = 0; h < other.levels.length; h++) {
+			if (other.counts[h] == 0) continue;
+			ensureLevel(h);
+			int total = counts[h] + other.counts[h];
+			if (levels[h].length < total) levels[h] = Arrays.copyOf(levels[h], total);
+			System.arraycopy(other.levels[h], 0, levels[h], counts[h], other.counts[h]);
+			counts[h] = total;
+		}
+		count += other.count;
+		for (int h = 0; h < levels.length; h++) {
+			if (counts[h] >= capacity) compact(h);
+		}
+	}
+	/**
+	 * @param q The quantile, between 0 and 1.
+	 * @return The approximate value of the quantile, NaN if empty.
+	 */
+	public double getQuantile(double q) {
+		int size = 0;
+		for (int h = 0; h < levels.length; h++) size += counts[h];
+		if (size == 0) return Double.NaN;
+		double[] values = new double[size];
+		long[] weights = new long[size];
+		Integer[] indexes = new Integer[size];
+		int index = 0;
+		for (int h = 0; h < levels.length; h++) {
+			for (int i = 0; i < counts[h]; i++) {
+				values[index] = levels[h][i];
+				weights[index] = 1L << h;
+				indexes[index] = index;
+				index++;
+			}
+		}
+		Arrays.sort(indexes, (a, b) -> Double.compare(values[a], values[b]));
+		long total = 0;
+		for (long weight : weights) total += weight;
+		double rank = Math.max(0, Math.min(1, q)) * total;
+		/* Each value stands for the middle of the span of values it represents. */
+		double cumulative = 0;
+		for (int i = 0; i < size; i++) {
+			long weight = weights[indexes[i]];
+			if (cumulative + 0.5 * weight >= rank) return values[indexes[i]];
+			cumulative += weight;
+		}
+		return values[indexes[size - 1]];
+	}
+
+	/**
+	 * Sort the level and promote every other value to the next level.
+	 *
+	 * @param h The level.
+	 */
+	private void compact(int h) {
+		ensureLevel(h + 1);
+		double[] level = levels[h];
+		int size = counts[h];
+		Arrays.sort(level, 0, size);
+		/* An odd value stays in the level. */
+		int pairs = size / 2;
+		int start = offsets[h] ? 1 : 0;
+		offsets[h] = !offsets[h];
+		int next = counts[h + 1];
+		if (levels[h + 1].length < next + pairs) {
+			levels[h + 1] = Arrays.copyOf(levels[h + 1], Math.max(capacity, next + pairs));
+		}
+		for (int i = 0; i < pairs; i++) levels[h + 1][next + i] = level[2 * i + start];
+		counts[h + 1] = next + pairs;
+		if (size % 2 == 1) level[0] = level[size - 1];
+		counts[h] = size % 2;
+		if (levels[h].length > capacity) levels[h] = Arrays.copyOf(level, capacity);
+		if (counts[h + 1] >= capacity) compact(h + 1);
+	}
+	/**
+	 * @param h The level that must exist.
+	 */
+	private void ensureLevel(int h) {
+		if (h < levels.length) return;
+		int from = levels.length;
+		levels = Arrays.copyOf(levels, h + 1);
+		counts = Arrays.copyOf(counts, h + 1);
+		offsets = Arrays.copyOf(offsets, h + 1);
+		for (int i = from; i <= h; i++) levels[i] = new double[capacity];
+	}
+}
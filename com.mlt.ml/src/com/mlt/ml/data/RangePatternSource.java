@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+/**
+ * A read-only view over one or more ranges of a source, that does not copy patterns. Useful to
+ * build training and test sets of folds or walk-forward windows over a single shared source.
+ *
+ * @author Miquel Sas
+ */
+public class RangePatternSource implements PatternSource {
+
+	/** Underlying source. */
+	private PatternSource source;
+	/** Start index of each range, inclusive. */
+	private int[] starts;
+	/** Accumulated size at the end of each range. */
+	private int[] ends;
+
+	/**
+	 * @param source The underlying source.
+	 * @param ranges Pairs of start inclusive and end exclusive indexes.
+	 */
+	public RangePatternSource(PatternSource source, int... ranges) {
+		if (ranges.length % 2 != 0) throw new IllegalArgumentException("Ranges must be pairs");
+		this.source = source;
+		this.starts = new int[ranges.length / 2];
+		this.ends = new int[ranges.length / 2];
+		int size = 0;
+		for (int i = 0; i < starts.length; i++) {
+			int start = ranges[2 * i];
+			int end = ranges[2 * i + 1];
+			if (start < 0 || end < start || end > source.size()) {
+				throw new IllegalArgumentException("Invalid range " + start + " - " + end);
+			}
+			starts[i] = start;
+			size += end - start;
+			ends[i] = size;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() { return ends.length == 0 ? 0 : ends[ends.length - 1]; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Pattern get(int index) {
+		if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+		int offset = 0;
+		for (int i = 0; i < ends.length; i++) {
+			if (index < ends[i]) return source.get(starts[i] + index - offset);
+			offset = ends[i];
+		}
+		throw new IndexOutOfBoundsException(index);
+	}
+}
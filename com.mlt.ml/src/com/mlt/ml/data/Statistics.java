@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.data;
+
+import com.mlt.common.task.Task;
+import com.mlt.common.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One pass, mergeable statistics per column of a vector stream: count, mean and variance with
+ * the Welford update, minimum, maximum, and optionally quantile sketches. Statistics of chunks
+ * accumulated in parallel are merged with the pairwise update of Chan et al.
+ *
+ * @author Miquel Sas
+ */
+public class Statistics {
+
+	/**
+	 * Compute the statistics of the input vectors of a source, accumulating chunks in parallel
+	 * and merging them in chunk order, so the result does not depend on the scheduling.
+	 *
+	 * @param source         The source.
+	 * @param parallelism    The number of threads.
+	 * @param sketchCapacity The capacity of the quantile sketches, zero for no sketches.
+	 * @return The statistics.
+	 */
+	public static Statistics compute(PatternSource source, int parallelism, int sketchCapacity) {
+		if (source.size() == 0) throw new IllegalArgumentException("Empty source");
+		int size = source.get(0).getInput().length;
+		int chunks = Math.max(1, Math.min(source.size(), parallelism * 4));
+		List<ChunkTask> tasks = new ArrayList<>();
+		for (int i = 0; i < chunks; i++) {
+			long start = (long) source.size() * i / chunks;
+			long end = (long) source.size() * (i + 1) / chunks;
+			tasks.add(new ChunkTask(source, (int) start, (int) end, size, sketchCapacity));
+		}
+		TaskExecutor executor = new TaskExecutor(Math.max(1, Math.min(parallelism, chunks)));
+		try {
+			executor.submitAndWaitForTermination(tasks);
+		} finally {
+			executor.shutdown();
+		}
+		/* The cause is the exception of a failed chunk, others may have been cancelled. */
+		ChunkTask failed = null;
+		for (ChunkTask task : tasks) {
+			if (task.hasSucceded()) continue;
+			if (failed == null || (!failed.hasFailed() && task.hasFailed())) failed = task;
+		}
+		if (failed != null) {
+			throw new IllegalStateException("Statistics chunk failed", failed.getException());
+		}
+		Statistics statistics = new Statistics(size, sketchCapacity);
+		for (ChunkTask task : tasks) statistics.merge(task.statistics);
+		return statistics;
+	}
+
+	/**
+	 * Task that accumulates a chunk of the source.
+	 */
+	private static class ChunkTask extends Task {
+		private PatternSource source;
+		private int start;
+		private int end;
+		private Statistics statistics;
+		private ChunkTask(PatternSource source, int start, int end, int size, int sketchCapacity) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.statistics = new Statistics(size, sketchCapacity);
+		}
+		@Override
+		public void execute() throws Throwable {
+			for (int i = start; i < end; i++) {
+				if (shouldCancel()) {
+					setCancelled();
+					return;
+				}
+				statistics.add(source.get(i).getInput());
+			}
+		}
+	}
+
+	/** Number of columns. */
+	private int size;
+	/** Number of vectors. */
+	private long count;
+	/** Means. */
+	private double[] mean;
+	/** Sums of squared deviations from the mean. */
+	private double[] m2;
+	/** Minimums. */
+	private double[] min;
+	/** Maximums. */
+	private double[] max;
+	/** Quantile sketches, null if not requested. */
+	private QuantileSketch[] sketches;
+
+	/**
+	 * @param size The number of columns.
+	 */
+	public Statistics(int size) { this(size, 0); }
+	/**
+	 * @param size           The number of columns.
+	 * @param sketchCapacity The capacity of the quantile sketches, zero for no sketches.
+	 */
+	public Statistics(int size, int sketchCapacity) {
+		this.size = size;
+		this.mean = new double[size];
+		this.m2 = new double[size];
+		this.min = new double[size];
+		this.max = new double[size];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		if (sketchCapacity > 0) {
+			sketches = new QuantileSketch[size];
+			for (int i = 0; i < size; i++) sketches[i] = new QuantileSketch(sketchCapacity);
+		}
+	}
+
+	/**
+	 * @param values The vector to add.
+	 */
+	public void add(double[] values) {
+		if (values.length != size) throw new IllegalArgumentException("Invalid vector size");
+		count++;
+		for (int i = 0; i < size; i++) {
+			double value = values[i];
+			double delta = value - mean[i];
+			mean[i] += delta / count;
+			m2[i] += delta * (value - mean[i]);
+			if (value < min[i]) min[i] = value;
+			if (value > max[i]) max[i] = value;
+			if (sketches != null) sketches[i].add(value);
+		}
+	}
+	/**
+	 * @param other The statistics to merge into this one.
+	 */
+	public void merge(Statistics other) {
+		if (other.size != size) throw new IllegalArgumentException("Invalid statistics size");
+		if (other.count == 0) return;
+		long total = count + other.count;
+		for (int i = 0; i < size; i++) {
+			double delta = other.mean[i] - mean[i];
+			mean[i] += delta * other.count / total;
+			m2[i] += other.m2[i] + delta * delta * ((double) count * other.count / total);
+			min[i] = Math.min(min[i], other.min[i]);
+			max[i] = Math.max(max[i], other.max[i]);
+			if (sketches != null && other.sketches != null) sketches[i].merge(other.sketches[i]);
+		}
+		count = total;
+	}
+
+	/**
+	 * @return The number of columns.
+	 */
+	public int getSize() { return size; }
+	/**
+	 * @return The number of vectors.
+	 */
+	public long getCount() { return count; }
+	/**
+	 * @param column The column.
+	 * @return The mean.
+	 */
+	public double getMean(int column) { return mean[column]; }
+	/**
+	 * @param column The column.
+	 * @return The sample variance.
+	 */
+	public double getVariance(int column) { return count < 2 ? 0 : m2[column] / (count - 1); }
+	/**
+	 * @param column The column.
+	 * @return The sample standard deviation.
+	 */
+	public double getStdDev(int column) { return Math.sqrt(getVariance(column)); }
+	/**
+	 * @param column The column.
+	 * @return The minimum.
+	 */
+	public double getMinimum(int column) { return min[column]; }
+	/**
+	 * @param column The column.
+	 * @return The maximum.
+	 */
+	public double getMaximum(int column) { return max[column]; }
+	/**
+	 * @param column The column.
+	 * @param q      The quantile, between 0 and 1.
+	 * @return The approximate quantile.
+	 * @throws IllegalStateException If the statistics have no sketches.
+	 */
+	public double getQuantile(int column, double q) {
+		if (sketches == null) throw new IllegalStateException("No quantile sketches");
+		return sketches[column].getQuantile(q);
+	}
+}
@@ -40,6 +40,28 @@ public interface Activation {
 	 * @return The derivatives.
 	 */
 	public abstract double[] derivatives(double[] outputs);
+	/**
+	 * Calculates the output values of the function given the trigger values, writing them to the
+	 * outputs vector.
+	 *
+	 * @param triggers The trigger (weighted sum plus bias) values.
+	 * @param outputs  The vector to receive the activation outputs.
+	 */
+	public default void activations(double[] triggers, double[] outputs) {
+		double[] values = activations(triggers);
+		System.arraycopy(values, 0, outputs, 0, values.length);
+	}
+	/**
+	 * Calculates the first derivatives of the function, given the outputs, writing them to the
+	 * derivatives vector.
+	 *
+	 * @param outputs     The outputs obtained applying the triggers to activations.
+	 * @param derivatives The vector to receive the derivatives.
+	 */
+	public default void derivatives(double[] outputs, double[] derivatives) {
+		double[] values = derivatives(outputs);
+		System.arraycopy(values, 0, derivatives, 0, values.length);
+	}
 
 	/**
 	 * @return A suitable name for storage.
@@ -23,8 +23,8 @@ import com.mlt.common.collections.Queue;
  */
 public interface Collector {
 	/**
-	 * @param vectors The collection of vectors.
-	 * @return The result vector.
+	 * @param vectors The collection of vectors, read-only.
+	 * @return The result vector, that may be one of the argument vectors.
 	 */
 	double[] collect(Queue<double[]> vectors);
 	/**
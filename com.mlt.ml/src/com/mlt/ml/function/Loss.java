@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.function;
+
+/**
+ * Loss function. Deltas follow the convention of the graph nodes, that is, they are the negative
+ * gradient of the loss with respect to the outputs, so that parameters are updated adding them.
+ *
+ * @author Miquel Sas
+ */
+public interface Loss {
+	/**
+	 * @param outputs The network outputs.
+	 * @param targets The target values.
+	 * @return The loss.
+	 */
+	double loss(double[] outputs, double[] targets);
+	/**
+	 * Calculates the deltas into the argument buffer, without allocating.
+	 *
+	 * @param outputs The network outputs.
+	 * @param targets The target values.
+	 * @param deltas  The buffer where deltas are calculated.
+	 */
+	void deltas(double[] outputs, double[] targets, double[] deltas);
+	/**
+	 * @return A suitable name for storage.
+	 */
+	String getName();
+}
@@ -36,12 +36,19 @@ public class ActivationSigmoid implements Activation {
 	@Override
 	public double[] activations(double[] triggers) {
 		double[] outputs = new double[triggers.length];
+		activations(triggers, outputs);
+		return outputs;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void activations(double[] triggers, double[] outputs) {
 		double exp = 0;
 		for (int i = 0; i < triggers.length; i++) {
 			exp = Math.exp(-(sigma * triggers[i]));
 			outputs[i] = 1 / (1 + exp);
 		}
-		return outputs;
 	}
 	/**
 	 * {@inheritDoc}
@@ -49,12 +56,19 @@ public class ActivationSigmoid implements Activation {
 	@Override
 	public double[] derivatives(double[] outputs) {
 		double[] derivatives = new double[outputs.length];
+		derivatives(outputs, derivatives);
+		return derivatives;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void derivatives(double[] outputs, double[] derivatives) {
 		double out = 0;
 		for (int i = 0; i < outputs.length; i++) {
 			out = outputs[i];
 			derivatives[i] = sigma * out * (1 - out);
 		}
-		return derivatives;
 	}
 
 	/**
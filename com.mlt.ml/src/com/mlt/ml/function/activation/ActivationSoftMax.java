@@ -18,6 +18,10 @@ import com.mlt.ml.function.Activation;
 
 /**
  * Soft-max activation.
+ * <p>
+ * Derivatives are returned as ones, since the soft-max is expected to be followed by a
+ * cross-entropy loss that supplies the deltas of the triggers. To train, use the fused
+ * {@link com.mlt.ml.graph.nodes.SoftMaxCrossEntropyNode} instead of an activation node.
  *
  * @author Miquel Sas
  */
@@ -38,6 +42,14 @@ public class ActivationSoftMax implements Activation {
 	@Override
 	public double[] activations(double[] triggers) {
 		double[] outputs = new double[triggers.length];
+		activations(triggers, outputs);
+		return outputs;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void activations(double[] triggers, double[] outputs) {
 		double div = 0;
 		for (int i = 0; i < triggers.length; i++) {
 			double p = bound(Math.exp(triggers[i]));
@@ -49,7 +61,6 @@ public class ActivationSoftMax implements Activation {
 				outputs[i] /= div;
 			}
 		}
-		return outputs;
 	}
 	/**
 	 * {@inheritDoc}
@@ -57,10 +68,17 @@ public class ActivationSoftMax implements Activation {
 	@Override
 	public double[] derivatives(double[] outputs) {
 		double[] derivatives = new double[outputs.length];
+		derivatives(outputs, derivatives);
+		return derivatives;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void derivatives(double[] outputs, double[] derivatives) {
 		for (int i = 0; i < outputs.length; i++) {
 			derivatives[i] = 1.0;
 		}
-		return derivatives;
 	}
 
 	/**
@@ -19,22 +19,37 @@ package com.mlt.ml.function.collector;
 
 import com.mlt.common.collections.Queue;
 import com.mlt.ml.function.Collector;
+import com.mlt.ml.math.Reduction;
 
 /**
- * Addition collector function.
+ * Addition collector function. Without a reduction, vectors are added sequentially in the order
+ * of the collection, which is deterministic when the order is. With a reduction, vectors are
+ * added in parallel, and deterministically if the reduction mode is deterministic.
  *
  * @author Miquel Sas
  */
 public class CollectorAddition implements Collector {
+	/** Optional reduction. */
+	private Reduction reduction;
 	/**
 	 * Constructor for restore.
 	 */
 	public CollectorAddition() {}
+	/**
+	 * @param reduction The reduction used to add the vectors in parallel.
+	 */
+	public CollectorAddition(Reduction reduction) { this.reduction = reduction; }
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public double[] collect(Queue<double[]> vectors) {
+		if (reduction != null && !vectors.isEmpty()) {
+			double[][] array = vectors.toArray(new double[vectors.size()][]);
+			double[] result = new double[array[0].length];
+			reduction.sum(array, result);
+			return result;
+		}
 		double[] result = null;
 		for (double[] vector : vectors) {
 			if (result == null) result = new double[vector.length];
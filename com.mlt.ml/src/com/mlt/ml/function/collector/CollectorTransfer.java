@@ -21,7 +21,8 @@ import com.mlt.common.collections.Queue;
 import com.mlt.ml.function.Collector;
 
 /**
- * A collector that just transfers the unique queued vector.
+ * A collector that just transfers the unique queued vector, as a view, without copying. Since
+ * vectors read from edges are read-only, the transferred vector can be shared.
  *
  * @author Miquel Sas
  */
@@ -43,5 +44,5 @@ public class CollectorTransfer implements Collector {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String getName() { return "collector-addition"; }
+	public String getName() { return "collector-transfer"; }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.function.loss;
+
+import com.mlt.ml.function.Loss;
+
+/**
+ * Categorical cross-entropy loss over probabilities. When the probabilities come from a soft-max,
+ * prefer the fused soft-max cross-entropy node, that is numerically stable and whose deltas are
+ * those of the soft-max inputs.
+ *
+ * @author Miquel Sas
+ */
+public class LossCrossEntropy implements Loss {
+
+	/** Minimum probability, to avoid the logarithm and the division of zero. */
+	private static final double EPSILON = 1.0E-15;
+
+	/**
+	 * Constructor.
+	 */
+	public LossCrossEntropy() {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double loss(double[] outputs, double[] targets) {
+		double sum = 0;
+		for (int i = 0; i < outputs.length; i++) {
+			if (targets[i] != 0) sum -= targets[i] * Math.log(Math.max(outputs[i], EPSILON));
+		}
+		return sum;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deltas(double[] outputs, double[] targets, double[] deltas) {
+		for (int i = 0; i < outputs.length; i++) {
+			deltas[i] = targets[i] / Math.max(outputs[i], EPSILON);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "loss-cross-entropy"; }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.function.loss;
+
+import com.mlt.ml.function.Loss;
+
+/**
+ * Huber loss, quadratic for errors up to a threshold and linear beyond, thus less sensitive to
+ * outliers than the squared error. Summed over the outputs, the deltas being the errors clipped
+ * to the threshold, its negative gradient.
+ *
+ * @author Miquel Sas
+ */
+public class LossHuber implements Loss {
+
+	/** Threshold between the quadratic and the linear regions. */
+	private double delta = 1.0;
+
+	/**
+	 * Constructor.
+	 */
+	public LossHuber() {}
+	/**
+	 * @param delta Threshold between the quadratic and the linear regions.
+	 */
+	public LossHuber(double delta) {
+		if (delta <= 0) throw new IllegalArgumentException("Delta must be positive");
+		this.delta = delta;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double loss(double[] outputs, double[] targets) {
+		double sum = 0;
+		for (int i = 0; i < outputs.length; i++) {
+			double error = Math.abs(targets[i] - outputs[i]);
+			sum += error <= delta ? 0.5 * error * error : delta * (error - 0.5 * delta);
+		}
+		return sum;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deltas(double[] outputs, double[] targets, double[] deltas) {
+		for (int i = 0; i < outputs.length; i++) {
+			double error = targets[i] - outputs[i];
+			if (error > delta) error = delta;
+			else if (error < -delta) error = -delta;
+			deltas[i] = error;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "loss-huber"; }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.function.loss;
+
+import com.mlt.ml.function.Loss;
+
+/**
+ * Squared error loss, half the sum of squared errors, whose negative gradient, the deltas, are the
+ * errors. Like the other losses it is summed over the outputs, not averaged, so that the deltas
+ * are the gradient of the reported loss.
+ *
+ * @author Miquel Sas
+ */
+public class LossMeanSquared implements Loss {
+
+	/**
+	 * Constructor.
+	 */
+	public LossMeanSquared() {}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double loss(double[] outputs, double[] targets) {
+		double sum = 0;
+		for (int i = 0; i < outputs.length; i++) {
+			double error = targets[i] - outputs[i];
+			sum += error * error;
+		}
+		return 0.5 * sum;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deltas(double[] outputs, double[] targets, double[] deltas) {
+		for (int i = 0; i < outputs.length; i++) deltas[i] = targets[i] - outputs[i];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "loss-mse"; }
+}
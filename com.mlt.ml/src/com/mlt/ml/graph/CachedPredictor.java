@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+/**
+ * Predictions of a snapshot predictor memoized in an inference cache shared by several
+ * predictors. Results are tagged with the snapshot version they were computed with, thus a swap
+ * of parameters never returns stale results.
+ *
+ * @author Miquel Sas
+ */
+public class CachedPredictor {
+
+	/** Predictor, used by one thread. */
+	private SnapshotPredictor predictor;
+	/** Shared cache. */
+	private InferenceCache cache;
+
+	/**
+	 * @param predictor The snapshot predictor of this thread.
+	 * @param cache     The shared cache.
+	 */
+	public CachedPredictor(SnapshotPredictor predictor, InferenceCache cache) {
+		this.predictor = predictor;
+		this.cache = cache;
+	}
+
+	/**
+	 * @param inputs The input vectors, one per input edge.
+	 * @return The output vectors, one per output edge, owned by the caller.
+	 */
+	public double[][] predict(double[]... inputs) {
+		ParameterSnapshot snapshot = predictor.refresh();
+		return cache.get(snapshot.getVersion(), inputs, in -> predictor.getNetwork().forward(in));
+	}
+}
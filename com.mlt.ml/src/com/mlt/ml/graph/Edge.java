@@ -24,6 +24,16 @@ import java.util.UUID;
 /**
  * Edge of a computational graph. Data (double[]) flows through the edge in both directions, forward
  * and backward.
+ * <p>
+ * Vectors are shared, never copied, by edges, and follow these ownership rules:
+ * <ul>
+ * <li>A node that pushes a vector hands it over: it must not modify the vector afterwards in the
+ * same pass. A node that fans out pushes the same vector to all its edges.</li>
+ * <li>Data read from an edge is read-only. A node that needs to modify it must write the result
+ * to a vector of its own (copy-on-write), and pass-through nodes push the same vector they
+ * read.</li>
+ * <li>The data of an empty queue is a zero vector shared by the edge, thus also read-only.</li>
+ * </ul>
  *
  * @author Miquel Sas
  */
@@ -33,6 +43,10 @@ public class Edge {
 	 * String uuid.
 	 */
 	private String uuid;
+	/**
+	 * Dense id assigned by the network, -1 if not assigned.
+	 */
+	int id = -1;
 	/**
 	 * Size of the input and output vectors.
 	 */
@@ -47,6 +61,28 @@ public class Edge {
 	 */
 	private Queue<double[]> forwardQueue = new Queue();
 
+	/**
+	 * Shared zero vector returned when a queue is empty.
+	 */
+	private double[] zeros;
+	/**
+	 * Forward buffer assigned by a memory plan, null if not planned.
+	 */
+	double[] forwardBuffer;
+	/**
+	 * Backward buffer assigned by a memory plan, null if not planned.
+	 */
+	double[] backwardBuffer;
+	/**
+	 * A boolean that indicates whether the edge crosses stages of a pipeline, the output node then
+	 * reading the staged vector while the input node pushes to the forward queue.
+	 */
+	boolean staged;
+	/**
+	 * Forward vector read by the output node when the edge is staged.
+	 */
+	double[] stagedForward;
+
 	/**
 	 * Input node, null for an input edge.
 	 */
@@ -70,6 +106,13 @@ public class Edge {
 		if (uuid == null) uuid = UUID.randomUUID().toString();
 		return uuid;
 	}
+	/**
+	 * @return The dense id assigned by the network, -1 if not assigned. Unlike the UUID, ids are
+	 * only unique within a network.
+	 */
+	public int getId() {
+		return id;
+	}
 	/**
 	 * @return The forward LIFO queue.
 	 */
@@ -84,19 +127,34 @@ public class Edge {
 	}
 
 	/**
-	 * @return The forward data, normally called values.
+	 * @return The forward data, normally called values, read-only.
 	 */
 	public double[] getForwardData() {
-		if (forwardQueue.isEmpty()) return new double[size];
+		if (staged) return stagedForward != null ? stagedForward : getZeros();
+		return getPushedForwardData();
+	}
+	/**
+	 * @return The last forward data pushed, that differs from the forward data read by the output
+	 * node only when the edge is staged.
+	 */
+	double[] getPushedForwardData() {
+		if (forwardQueue.isEmpty()) return getZeros();
 		return forwardQueue.getFirst();
 	}
 	/**
-	 * @return The backward data, normally called deltas.
+	 * @return The backward data, normally called deltas, read-only.
 	 */
 	public double[] getBackwardData() {
-		if (backwardQueue.isEmpty()) return new double[size];
+		if (backwardQueue.isEmpty()) return getZeros();
 		return backwardQueue.getFirst();
 	}
+	/**
+	 * @return The shared zero vector.
+	 */
+	private double[] getZeros() {
+		if (zeros == null) zeros = new double[size];
+		return zeros;
+	}
 
 	/**
 	 * @return The input node.
@@ -131,6 +189,14 @@ public class Edge {
 		return size;
 	}
 
+	/**
+	 * Clear the forward and backward queues, normally at the start of a pass.
+	 */
+	public void clear() {
+		forwardQueue.clear();
+		backwardQueue.clear();
+	}
+
 	/**
 	 * @param values Vector of input values.
 	 */
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.task.Task;
+import com.mlt.common.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ensemble of frozen networks, evaluated concurrently for an input or a batch of inputs, whose
+ * outputs are combined by averaging, voting or a weighted sum.
+ * <p>
+ * Members may declare an input preprocessor. Members that declare the same preprocessor instance
+ * share its result, that is computed once per input. Each member network must have one input edge
+ * and its first output edge is the one combined, all of the same size.
+ * <p>
+ * Member networks are not reentrant, thus predictions are serialized, and parallelism is across
+ * members and distinct preprocessors. The executor is created on the first prediction and its
+ * threads, that are not daemon threads, keep the virtual machine alive until <code>shutdown</code>
+ * is called.
+ *
+ * @author Miquel Sas
+ */
+public class Ensemble {
+
+	/**
+	 * Input preprocessing function.
+	 */
+	public interface Preprocessor {
+		/**
+		 * @param input The raw input.
+		 * @return The preprocessed input, must not modify the raw input.
+		 */
+		double[] process(double[] input);
+	}
+
+	/**
+	 * Combination of member outputs.
+	 */
+	public enum Combination {
+		/** Mean of member outputs. */
+		AVERAGE,
+		/** Fraction of members whose maximum output is at each index. */
+		VOTE,
+		/** Sum of member outputs scaled by the member weights. */
+		WEIGHTED_SUM
+	}
+
+	/**
+	 * A member.
+	 */
+	private static class Member {
+		private Network network;
+		private int preprocessor;
+		private double weight;
+	}
+
+	/** Members. */
+	private List<Member> members = new ArrayList<>();
+	/** Distinct preprocessors, null for the raw input. */
+	private List<Preprocessor> preprocessors = new ArrayList<>();
+	/** Combination. */
+	private Combination combination = Combination.AVERAGE;
+	/** Executor, created on the first prediction, its threads live until shutdown. */
+	private TaskExecutor executor;
+	/** Output size. */
+	private int outputSize = -1;
+
+	/**
+	 * Constructor.
+	 */
+	public Ensemble() {}
+
+	/**
+	 * @param combination The combination of member outputs.
+	 */
+	public void setCombination(Combination combination) { this.combination = combination; }
+
+	/**
+	 * @param network The member network, already initialized.
+	 */
+	public void addMember(Network network) { addMember(network, null, 1.0); }
+	/**
+	 * @param network      The member network, already initialized, not already a member since
+	 *                     members are evaluated concurrently.
+	 * @param preprocessor The input preprocessor, or null to use the raw input.
+	 * @param weight       The weight used in weighted sums.
+	 */
+	public synchronized void addMember(Network network, Preprocessor preprocessor, double weight) {
+		for (Member member : members) {
+			if (member.network == network) throw new IllegalArgumentException("Already a member");
+		}
+		if (network.getInputEdges().length != 1) {
+			throw new IllegalArgumentException("Only one input edge supported");
+		}
+		if (network.getOutputEdges().length == 0) throw new IllegalArgumentException("No outputs");
+		int size = network.getOutputEdges()[0].size();
+		if (outputSize >= 0 && size != outputSize) {
+			throw new IllegalArgumentException("Invalid output size");
+		}
+		outputSize = size;
+		Member member = new Member();
+		member.network = network;
+		member.weight = weight;
+		int index = -1;
+		for (int i = 0; i < preprocessors.size(); i++) {
+			if (preprocessors.get(i) == preprocessor) index = i;
+		}
+		if (index < 0) {
+			preprocessors.add(preprocessor);
+			index = preprocessors.size() - 1;
+		}
+		member.preprocessor = index;
+		members.add(member);
+	}
+	/**
+	 * @return The number of members.
+	 */
+	public int size() { return members.size(); }
+
+	/**
+	 * @param input The input.
+	 * @return The combined output.
+	 */
+	public double[] predict(double[] input) {
+		return predict(new double[][] { input })[0];
+	}
+	/**
+	 * @param inputs The batch of inputs.
+	 * @return The combined outputs, one per input.
+	 */
+	public synchronized double[][] predict(double[][] inputs) {
+		if (members.isEmpty()) throw new IllegalStateException("No members");
+		if (executor == null) {
+			int parallelism = Math.min(members.size(), Runtime.getRuntime().availableProcessors());
+			executor = new TaskExecutor(Math.max(1, parallelism));
+		}
+		int batch = inputs.length;
+
+		/* Preprocess once per distinct preprocessor. */
+		double[][][] processed = new double[preprocessors.size()][][];
+		List<Task> tasks = new ArrayList<>();
+		for (int p = 0; p < preprocessors.size(); p++) {
+			Preprocessor preprocessor = preprocessors.get(p);
+			if (preprocessor == null) {
+				processed[p] = inputs;
+				continue;
+			}
+			int index = p;
+			processed[p] = new double[batch][];
+			tasks.add(task(() -> {
+				for (int b = 0; b < batch; b++) processed[index][b] = preprocessor.process(inputs[b]);
+			}));
+		}
+		execute(tasks);
+
+		/* Evaluate members. */
+		double[][][] outputs = new double[members.size()][batch][];
+		tasks.clear();
+		for (int m = 0; m < members.size(); m++) {
+			Member member = members.get(m);
+			int index = m;
+			tasks.add(task(() -> {
+				for (int b = 0; b < batch; b++) {
+					double[] output = member.network.forward(processed[member.preprocessor][b])[0];
+					outputs[index][b] = output.clone();
+				}
+			}));
+		}
+		execute(tasks);
+
+		/* Combine. */
+		double[][] result = new double[batch][outputSize];
+		for (int b = 0; b < batch; b++) {
+			for (int m = 0; m < members.size(); m++) {
+				double[] output = outputs[m][b];
+				switch (combination) {
+				case AVERAGE:
+					for (int i = 0; i < outputSize; i++) result[b][i] += output[i] / members.size();
+					break;
+				case VOTE:
+					int max = 0;
+					for (int i = 1; i < outputSize; i++) if (output[i] > output[max]) max = i;
+					result[b][max] += 1.0 / members.size();
+					break;
+				case WEIGHTED_SUM:
+					double weight = members.get(m).weight;
+					for (int i = 0; i < outputSize; i++) result[b][i] += output[i] * weight;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Shutdown the executor, releasing its threads, that otherwise keep the virtual machine alive.
+	 * The ensemble can still be used and will create a new one.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) executor.shutdown();
+		executor = null;
+	}
+
+	/**
+	 * @param runnable The runnable.
+	 * @return A task that runs it.
+	 */
+	private static Task task(Runnable runnable) {
+		return new Task() {
+			@Override
+			public void execute() throws Throwable {
+				runnable.run();
+			}
+		};
+	}
+	/**
+	 * Execute the tasks, running a single task in the calling thread.
+	 *
+	 * @param tasks The tasks.
+	 */
+	private void execute(List<Task> tasks) {
+		if (tasks.isEmpty()) return;
+		if (tasks.size() == 1) {
+			tasks.get(0).run();
+		} else {
+			executor.submitAndWaitForTermination(tasks);
+		}
+		/* The cause is the exception of a failed task, others may have been cancelled. */
+		Task failed = null;
+		for (Task task : tasks) {
+			if (task.hasSucceded()) continue;
+			if (failed == null || (!failed.hasFailed() && task.hasFailed())) failed = task;
+		}
+		if (failed != null) {
+			throw new IllegalStateException("Ensemble evaluation failed", failed.getException());
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import java.util.Arrays;
+
+/**
+ * Compact graph core. Nodes and edges are identified by dense integer ids, in order of creation,
+ * and, once compiled, the adjacency is stored in compressed sparse row arrays: the output edges
+ * of node <code>n</code> are <code>outEdges[outOffsets[n]]</code> to
+ * <code>outEdges[outOffsets[n + 1] - 1]</code>, and likewise for the input edges.
+ * <p>
+ * An edge without source node is an input edge of the graph, and an edge without target node an
+ * output edge. String labels, like the UUIDs of nodes, are optional and only allocated when set.
+ * <p>
+ * Building, compiling, validating and traversing are linear in the number of nodes and edges and
+ * do not allocate per node or per edge beyond the primitive arrays.
+ *
+ * @author Miquel Sas
+ */
+public class Graph {
+
+	/** No node, source of input edges and target of output edges. */
+	public static final int NONE = -1;
+
+	/** Number of nodes. */
+	private int nodeCount = 0;
+	/** Number of edges. */
+	private int edgeCount = 0;
+	/** Source node per edge. */
+	private int[] edgeSources;
+	/** Target node per edge. */
+	private int[] edgeTargets;
+	/** Optional node labels. */
+	private String[] labels;
+
+	/** Output edges offsets per node, nodeCount + 1. */
+	private int[] outOffsets;
+	/** Output edges. */
+	private int[] outEdges;
+	/** Input edges offsets per node, nodeCount + 1. */
+	private int[] inOffsets;
+	/** Input edges. */
+	private int[] inEdges;
+
+	/**
+	 * Constructor.
+	 */
+	public Graph() {
+		this(16);
+	}
+	/**
+	 * @param edgeCapacity Expected number of edges.
+	 */
+	public Graph(int edgeCapacity) {
+		edgeSources = new int[Math.max(1, edgeCapacity)];
+		edgeTargets = new int[Math.max(1, edgeCapacity)];
+	}
+
+	/**
+	 * @return The id of the new node.
+	 */
+	public int addNode() {
+		outOffsets = null;
+		return nodeCount++;
+	}
+	/**
+	 * @param count The number of nodes to add.
+	 * @return The id of the first new node, ids being consecutive.
+	 */
+	public int addNodes(int count) {
+		outOffsets = null;
+		int first = nodeCount;
+		nodeCount += count;
+		return first;
+	}
+	/**
+	 * @param source The source node or NONE for an input edge.
+	 * @param target The target node or NONE for an output edge.
+	 * @return The id of the new edge.
+	 */
+	public int addEdge(int source, int target) {
+		if (source < NONE || source >= nodeCount || target < NONE || target >= nodeCount) {
+			throw new IllegalArgumentException("Invalid node");
+		}
+		if (edgeCount == edgeSources.length) {
+			edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+			edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+		}
+		edgeSources[edgeCount] = source;
+		edgeTargets[edgeCount] = target;
+		outOffsets = null;
+		return edgeCount++;
+	}
+
+	/**
+	 * @param node  The node.
+	 * @param label The label, for instance the node UUID.
+	 */
+	public void setLabel(int node, String label) {
+		if (labels == null) labels = new String[Math.max(nodeCount, 16)];
+		if (node >= labels.length) labels = Arrays.copyOf(labels, Math.max(nodeCount, node + 1));
+		labels[node] = label;
+	}
+	/**
+	 * @param node The node.
+	 * @return The label or null.
+	 */
+	public String getLabel(int node) {
+		if (labels == null || node >= labels.length) return null;
+		return labels[node];
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	public int getNodeCount() { return nodeCount; }
+	/**
+	 * @return The number of edges.
+	 */
+	public int getEdgeCount() { return edgeCount; }
+	/**
+	 * @param edge The edge.
+	 * @return The source node or NONE.
+	 */
+	public int getSource(int edge) { return edgeSources[edge]; }
+	/**
+	 * @param edge The edge.
+	 * @return The target node or NONE.
+	 */
+	public int getTarget(int edge) { return edgeTargets[edge]; }
+
+	/**
+	 * Build the compressed sparse row adjacency, by counting sort of the edges, keeping for each
+	 * node its edges in order of creation.
+	 */
+	public void compile() {
+		outOffsets = new int[nodeCount + 1];
+		inOffsets = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			if (edgeSources[e] != NONE) outOffsets[edgeSources[e] + 1]++;
+			if (edgeTargets[e] != NONE) inOffsets[edgeTargets[e] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			outOffsets[n + 1] += outOffsets[n];
+			inOffsets[n + 1] += inOffsets[n];
+		}
+		outEdges = new int[outOffsets[nodeCount]];
+		inEdges = new int[inOffsets[nodeCount]];
+		int[] outFill = Arrays.copyOf(outOffsets, nodeCount);
+		int[] inFill = Arrays.copyOf(inOffsets, nodeCount);
+		for (int e = 0; e < edgeCount; e++) {
+			if (edgeSources[e] != NONE) outEdges[outFill[edgeSources[e]]++] = e;
+			if (edgeTargets[e] != NONE) inEdges[inFill[edgeTargets[e]]++] = e;
+		}
+	}
+	/**
+	 * @return A boolean indicating whether the adjacency is compiled and up to date.
+	 */
+	public boolean isCompiled() { return outOffsets != null; }
+
+	/**
+	 * @param node The node.
+	 * @return The number of output edges of the node.
+	 */
+	public int getOutputCount(int node) {
+		checkCompiled();
+		return outOffsets[node + 1] - outOffsets[node];
+	}
+	/**
+	 * @param node  The node.
+	 * @param index The index of the output edge within the node.
+	 * @return The edge.
+	 */
+	public int getOutputEdge(int node, int index) {
+		checkCompiled();
+		return outEdges[outOffsets[node] + index];
+	}
+	/**
+	 * @param node The node.
+	 * @return The number of input edges of the node.
+	 */
+	public int getInputCount(int node) {
+		checkCompiled();
+		return inOffsets[node + 1] - inOffsets[node];
+	}
+	/**
+	 * @param node  The node.
+	 * @param index The index of the input edge within the node.
+	 * @return The edge.
+	 */
+	public int getInputEdge(int node, int index) {
+		checkCompiled();
+		return inEdges[inOffsets[node] + index];
+	}
+
+	/**
+	 * @return The edges without source node, in order of creation.
+	 */
+	public int[] getInputEdges() {
+		int count = 0;
+		for (int e = 0; e < edgeCount; e++) if (edgeSources[e] == NONE) count++;
+		int[] edges = new int[count];
+		count = 0;
+		for (int e = 0; e < edgeCount; e++) if (edgeSources[e] == NONE) edges[count++] = e;
+		return edges;
+	}
+	/**
+	 * @return The edges without target node, in order of creation.
+	 */
+	public int[] getOutputEdges() {
+		int count = 0;
+		for (int e = 0; e < edgeCount; e++) if (edgeTargets[e] == NONE) count++;
+		int[] edges = new int[count];
+		count = 0;
+		for (int e = 0; e < edgeCount; e++) if (edgeTargets[e] == NONE) edges[count++] = e;
+		return edges;
+	}
+
+	/**
+	 * Order the nodes so that every node comes after the source nodes of its input edges, nodes
+	 * that become ready at the same time keeping their id order.
+	 *
+	 * @return The node ids in topological order.
+	 * @throws IllegalStateException If the graph has cycles.
+	 */
+	public int[] topologicalOrder() {
+		if (!isCompiled()) compile();
+		int[] pending = new int[nodeCount];
+		for (int e = 0; e < edgeCount; e++) {
+			if (edgeSources[e] != NONE && edgeTargets[e] != NONE) pending[edgeTargets[e]]++;
+		}
+		/* The order array doubles as the FIFO queue of ready nodes. */
+		int[] order = new int[nodeCount];
+		int tail = 0;
+		for (int n = 0; n < nodeCount; n++) if (pending[n] == 0) order[tail++] = n;
+		int head = 0;
+		while (head < tail) {
+			int node = order[head++];
+			for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+				int target = edgeTargets[outEdges[i]];
+				if (target != NONE && --pending[target] == 0) order[tail++] = target;
+			}
+		}
+		if (tail != nodeCount) throw new IllegalStateException("The graph has cycles");
+		return order;
+	}
+
+	/**
+	 * Check that the adjacency is compiled.
+	 */
+	private void checkCompiled() {
+		if (!isCompiled()) throw new IllegalStateException("Graph not compiled");
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded memoization of inference results, keyed by a 128 bit hash of the input vectors,
+ * optionally quantized, and tagged with the version of the parameters that produced them, so that
+ * a result is never returned for another version. The cache is split in stripes, each with its
+ * own lock, open addressing index and CLOCK eviction.
+ * <p>
+ * Inputs are not stored, two inputs with the same 128 bit hash being considered equal.
+ *
+ * @author Miquel Sas
+ */
+public class InferenceCache {
+
+	/**
+	 * A stripe of the cache.
+	 */
+	private static class Stripe {
+		/** High hash per slot. */
+		private final long[] high;
+		/** Low hash per slot. */
+		private final long[] low;
+		/** Version per slot. */
+		private final long[] versions;
+		/** Results per slot. */
+		private final double[][][] results;
+		/** Reference bit per slot. */
+		private final boolean[] referenced;
+		/** Open addressing index of slot plus one, zero if empty. */
+		private final int[] index;
+		/** Number of used slots. */
+		private int count;
+		/** Clock hand. */
+		private int hand;
+
+		private Stripe(int capacity) {
+			high = new long[capacity];
+			low = new long[capacity];
+			versions = new long[capacity];
+			results = new double[capacity][][];
+			referenced = new boolean[capacity];
+			int size = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+			index = new int[size];
+		}
+		/**
+		 * @return The index position of the key, or of the empty position where it would go.
+		 */
+		private int find(long h, long l) {
+			int mask = index.length - 1;
+			int i = (int) l & mask;
+			while (true) {
+				int slot = index[i] - 1;
+				if (slot < 0 || (high[slot] == h && low[slot] == l)) return i;
+				i = (i + 1) & mask;
+			}
+		}
+		/**
+		 * Remove the entry at the index position, shifting back the following entries of the run.
+		 */
+		private void removeAt(int i) {
+			int mask = index.length - 1;
+			index[i] = 0;
+			int j = (i + 1) & mask;
+			while (index[j] != 0) {
+				int slot = index[j] - 1;
+				int home = (int) low[slot] & mask;
+				/* Move back if the home position is not cyclically within (i, j]. */
+				boolean between = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+				if (!between) {
+					index[i] = index[j];
+					index[j] = 0;
+					i = j;
+				}
+				j = (j + 1) & mask;
+			}
+		}
+		/**
+		 * @return A free slot, evicting with the clock if full.
+		 */
+		private int allocate(InferenceCache cache) {
+			if (count < high.length) return count++;
+			while (referenced[hand]) {
+				referenced[hand] = false;
+				hand = (hand + 1) % high.length;
+			}
+			int slot = hand;
+			hand = (hand + 1) % high.length;
+			removeAt(find(high[slot], low[slot]));
+			cache.evictions.increment();
+			return slot;
+		}
+		private void clear() {
+			Arrays.fill(index, 0);
+			Arrays.fill(results, null);
+			Arrays.fill(referenced, false);
+			count = 0;
+			hand = 0;
+		}
+	}
+
+	/** Stripes. */
+	private final Stripe[] stripes;
+	/** Quantization step, zero to hash exact values. */
+	private double quantization;
+
+	/** Hits. */
+	private final LongAdder hits = new LongAdder();
+	/** Misses. */
+	private final LongAdder misses = new LongAdder();
+	/** Misses of entries computed with another version. */
+	private final LongAdder stale = new LongAdder();
+	/** Evictions. */
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param capacity The maximum number of results.
+	 * @param stripes  The number of stripes, rounded up to a power of two.
+	 */
+	public InferenceCache(int capacity, int stripes) {
+		if (capacity < 1 || stripes < 1) throw new IllegalArgumentException("Invalid capacity");
+		int count = Integer.highestOneBit(Math.max(1, stripes * 2 - 1));
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) this.stripes[i] = new Stripe(Math.max(1, capacity / count));
+	}
+
+	/**
+	 * @param quantization The quantization step of input values before hashing, zero for exact
+	 *                     values. Inputs within the same step share the result.
+	 */
+	public void setQuantization(double quantization) {
+		if (quantization < 0) throw new IllegalArgumentException("Invalid quantization");
+		this.quantization = quantization;
+	}
+
+	/**
+	 * Return the cached result of the inputs for the version, or compute and cache it. The
+	 * computation runs out of the stripe lock.
+	 *
+	 * @param version The version of the parameters.
+	 * @param inputs  The input vectors.
+	 * @param compute The computation of the result of the inputs with the version.
+	 * @return A copy of the result.
+	 */
+	public double[][] get(long version, double[][] inputs, Function<double[][], double[][]> compute) {
+		long h = hash(inputs, 0x9E3779B97F4A7C15L);
+		long l = hash(inputs, 0xC2B2AE3D27D4EB4FL);
+		Stripe stripe = stripes[(int) (h >>> 32) & (stripes.length - 1)];
+		synchronized (stripe) {
+			int position = stripe.find(h, l);
+			int slot = stripe.index[position] - 1;
+			if (slot >= 0) {
+				if (stripe.versions[slot] == version) {
+					stripe.referenced[slot] = true;
+					hits.increment();
+					return copy(stripe.results[slot]);
+				}
+				stale.increment();
+			}
+		}
+		misses.increment();
+		double[][] result = copy(compute.apply(inputs));
+		synchronized (stripe) {
+			int position = stripe.find(h, l);
+			int slot = stripe.index[position] - 1;
+			if (slot < 0) {
+				slot = stripe.allocate(this);
+				/* Eviction may have shifted the index. */
+				position = stripe.find(h, l);
+				stripe.index[position] = slot + 1;
+				stripe.high[slot] = h;
+				stripe.low[slot] = l;
+			} else if (stripe.versions[slot] > version) {
+				/* A newer version was cached meanwhile. */
+				return copy(result);
+			}
+			stripe.versions[slot] = version;
+			stripe.results[slot] = result;
+			stripe.referenced[slot] = false;
+		}
+		return copy(result);
+	}
+	/**
+	 * Remove all entries.
+	 */
+	public void invalidate() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of cached results.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.count;
+			}
+		}
+		return size;
+	}
+	/**
+	 * @return The number of hits.
+	 */
+	public long getHits() { return hits.sum(); }
+	/**
+	 * @return The number of misses, including stale entries.
+	 */
+	public long getMisses() { return misses.sum(); }
+	/**
+	 * @return The number of misses of entries cached with another version.
+	 */
+	public long getStale() { return stale.sum(); }
+	/**
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() { return evictions.sum(); }
+	/**
+	 * @return The ratio of hits over lookups.
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+			"size %d, hits %d, misses %d, stale %d, evictions %d, hit rate %.3f",
+			size(), getHits(), getMisses(), getStale(), getEvictions(), getHitRate());
+	}
+
+	/**
+	 * @param inputs The input vectors.
+	 * @param seed   The seed of the lane.
+	 * @return A 64 bit hash of the inputs.
+	 */
+	private long hash(double[][] inputs, long seed) {
+		long hash = seed ^ inputs.length;
+		for (double[] vector : inputs) {
+			hash = mix(hash ^ vector.length) * 0x9E3779B97F4A7C15L;
+			for (double value : vector) {
+				long bits;
+				if (quantization > 0) {
+					bits = Math.round(value / quantization);
+				} else {
+					/* Both zeros hash the same. */
+					bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+				}
+				hash = Long.rotateLeft(hash ^ (bits * 0xFF51AFD7ED558CCDL), 29) * 0x9E3779B97F4A7C15L;
+			}
+		}
+		return mix(hash);
+	}
+	/**
+	 * @param h The value.
+	 * @return The value with the bits mixed, finalizer of MurmurHash3.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	/**
+	 * @param vectors The vectors.
+	 * @return A deep copy.
+	 */
+	private static double[][] copy(double[][] vectors) {
+		double[][] copy = new double[vectors.length][];
+		for (int i = 0; i < vectors.length; i++) copy[i] = vectors[i].clone();
+		return copy;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Static memory plan of the edge vectors of a network. A liveness analysis over the ordered
+ * nodes gives the steps where the forward values, and in training the backward deltas, of each
+ * edge are alive, and edges whose lifetimes do not overlap share a buffer of the same size.
+ * <p>
+ * Steps are the forward calls of the nodes in order, followed in training by the backward calls
+ * in reverse order. A vector is planned only when it is written by a plannable node with a single
+ * edge on that side, and its lifetime ends at the last plannable reader. A vector read by a node
+ * that is not plannable may be pushed further or retained, thus its buffer is never reused.
+ * Input and output edges of the network are not planned, so that the vectors supplied by and
+ * returned to the caller are not overwritten.
+ * <p>
+ * An inference plan does not keep forward values until the backward pass and must not be used to
+ * train. A plan is dropped when the network is validated again.
+ *
+ * @author Miquel Sas
+ */
+public class MemoryPlan {
+
+	/**
+	 * Plan modes.
+	 */
+	public enum Mode {
+		/** Forward passes only. */
+		INFERENCE,
+		/** Forward and backward passes. */
+		TRAINING
+	}
+
+	/**
+	 * Lifetime of a planned vector.
+	 */
+	private static class Interval {
+		/** Edge. */
+		private Edge edge;
+		/** A boolean that indicates whether the vector is the backward deltas. */
+		private boolean backward;
+		/** First step, inclusive. */
+		private int start;
+		/** Last step, inclusive. */
+		private int end;
+		/** Slot. */
+		private int slot;
+	}
+
+	/** Mode. */
+	private Mode mode;
+	/** Network. */
+	private Network network;
+	/** Planned lifetimes. */
+	private List<Interval> intervals = new ArrayList<>();
+	/** Buffers of the slots. */
+	private List<double[]> slots = new ArrayList<>();
+
+	/**
+	 * @param network The network.
+	 * @param mode    The mode.
+	 */
+	public MemoryPlan(Network network, Mode mode) {
+		this.network = network;
+		this.mode = mode;
+		analyze();
+		assign();
+	}
+
+	/**
+	 * @return The mode.
+	 */
+	public Mode getMode() { return mode; }
+	/**
+	 * @return The number of planned vectors.
+	 */
+	public int getPlannedVectors() { return intervals.size(); }
+	/**
+	 * @return The number of buffers that hold the planned vectors.
+	 */
+	public int getSlots() { return slots.size(); }
+	/**
+	 * @return The bytes of the planned vectors if each had its own buffer.
+	 */
+	public long getUnplannedBytes() {
+		long bytes = 0;
+		for (Interval interval : intervals) bytes += 8L * interval.edge.size();
+		return bytes;
+	}
+	/**
+	 * @return The bytes of the shared buffers.
+	 */
+	public long getPlannedBytes() {
+		long bytes = 0;
+		for (double[] slot : slots) bytes += 8L * slot.length;
+		return bytes;
+	}
+
+	/**
+	 * Assign the buffers to the edges of the network.
+	 */
+	public void apply() {
+		for (Interval interval : intervals) {
+			if (interval.backward) interval.edge.backwardBuffer = slots.get(interval.slot);
+			else interval.edge.forwardBuffer = slots.get(interval.slot);
+		}
+	}
+	/**
+	 * Remove the buffers from the edges of the network, so that nodes allocate new vectors.
+	 */
+	public void remove() {
+		for (Interval interval : intervals) {
+			if (interval.backward) interval.edge.backwardBuffer = null;
+			else interval.edge.forwardBuffer = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return mode + ": " + intervals.size() + " vectors in " + slots.size() + " buffers, "
+			+ getPlannedBytes() / 1024 + " KB instead of " + getUnplannedBytes() / 1024 + " KB";
+	}
+
+	/**
+	 * Compute the lifetimes of the vectors that can be planned.
+	 */
+	private void analyze() {
+		Node[] nodes = network.getNodes();
+		int n = nodes.length;
+		int[] positions = new int[n];
+		for (int i = 0; i < n; i++) positions[nodes[i].getId()] = i;
+		boolean training = mode == Mode.TRAINING;
+		int last = training ? 2 * n : n;
+		for (Edge edge : network.getEdges()) {
+			Node producer = edge.getInputNode();
+			Node consumer = edge.getOutputNode();
+			if (producer == null || consumer == null) continue;
+			int p = positions[producer.getId()];
+			int c = positions[consumer.getId()];
+			if (producer.isPlannable() && producer.outputEdges.size() == 1) {
+				Interval interval = new Interval();
+				interval.edge = edge;
+				interval.start = p;
+				if (!consumer.isPlannable()) interval.end = last;
+				else interval.end = training ? 2 * n - 1 - p : c;
+				intervals.add(interval);
+			}
+			if (training && consumer.isPlannable() && consumer.inputEdges.size() == 1) {
+				Interval interval = new Interval();
+				interval.edge = edge;
+				interval.backward = true;
+				interval.start = 2 * n - 1 - c;
+				interval.end = producer.isPlannable() ? 2 * n - 1 - p : last;
+				intervals.add(interval);
+			}
+		}
+	}
+	/**
+	 * Assign slots in order of start, reusing the slot of the same size that became free first.
+	 */
+	private void assign() {
+		intervals.sort(Comparator.comparingInt(interval -> interval.start));
+		Map<Integer, PriorityQueue<Interval>> busy = new HashMap<>();
+		for (Interval interval : intervals) {
+			int size = interval.edge.size();
+			PriorityQueue<Interval> queue = busy.computeIfAbsent(
+				size, key -> new PriorityQueue<>(Comparator.comparingInt(i -> i.end)));
+			Interval free = queue.peek();
+			if (free != null && free.end < interval.start) {
+				queue.poll();
+				interval.slot = free.slot;
+			} else {
+				interval.slot = slots.size();
+				slots.add(new double[size]);
+			}
+			queue.add(interval);
+		}
+	}
+}
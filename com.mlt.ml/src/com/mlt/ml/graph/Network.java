@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.collections.Queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A network or computational graph, a set of nodes connected by edges.
+ * <p>
+ * Edges that have no input node are the input edges of the network, and edges that have no output
+ * node are the output edges. On initialization or validation, nodes are ordered so that a node is
+ * processed forward after all the nodes that feed its input edges, and backward in reverse order.
+ * <p>
+ * Backward, the values pushed to the output edges are the target values, that loss nodes read to
+ * calculate the deltas.
+ * <p>
+ * Validation assigns dense ids and builds the compact <code>Graph</code>, whose labels are the
+ * UUIDs of the nodes that have one, without generating them. Nodes still keep their own edge
+ * queues, that they use in their passes, thus building and registering edges remain per object,
+ * and only ordering and the structure exposed by <code>getGraph</code> are int arrays.
+ *
+ * @author Miquel Sas
+ */
+public class Network {
+
+	/** Nodes in the order they were added. */
+	private Queue<Node> nodes = new Queue<>();
+	/** Nodes ordered for the forward pass. */
+	private Node[] ordered;
+	/** All edges. */
+	private Edge[] edges;
+	/** Input edges. */
+	private Edge[] inputEdges;
+	/** Output edges. */
+	private Edge[] outputEdges;
+	/** Compact graph of node and edge ids. */
+	private Graph graph;
+	/** Optional profiler. */
+	private Profiler profiler;
+
+	/**
+	 * Constructor.
+	 */
+	public Network() {}
+
+	/**
+	 * @param nodes The nodes to add.
+	 */
+	public void addNodes(Node... nodes) {
+		for (Node node : nodes) addNode(node);
+	}
+	/**
+	 * @param node The node to add.
+	 */
+	public void addNode(Node node) {
+		nodes.add(node);
+		ordered = null;
+	}
+	/**
+	 * Replace a node by another one that takes over its input and output edges, keeping the
+	 * position within the added nodes.
+	 *
+	 * @param node        The node to replace.
+	 * @param replacement The replacement node, with no edges.
+	 * @throws IllegalArgumentException If the node has not been added to the network.
+	 */
+	public void replaceNode(Node node, Node replacement) {
+		if (!nodes.contains(node)) throw new IllegalArgumentException("Node not added to the network");
+		Queue<Node> replaced = new Queue<>();
+		for (Node added : nodes) replaced.add(added == node ? replacement : added);
+		for (Edge edge : node.inputEdges) replacement.addInputEdge(edge);
+		for (Edge edge : node.outputEdges) replacement.addOutputEdge(edge);
+		node.inputEdges.clear();
+		node.outputEdges.clear();
+		nodes = replaced;
+		ordered = null;
+	}
+
+	/**
+	 * Validate the nodes, order them and initialize their internal data. Called after a new
+	 * network is built.
+	 */
+	public void initialize() {
+		validate();
+		for (Node node : ordered) node.initialize();
+	}
+	/**
+	 * Validate the nodes and order them. Called both when a network is built or restored.
+	 *
+	 * @throws IllegalStateException If any node is not valid or the graph has cycles.
+	 */
+	public void validate() {
+		for (Node node : nodes) node.validate();
+		order();
+	}
+
+	/**
+	 * @return The nodes ordered for the forward pass.
+	 */
+	public Node[] getNodes() {
+		if (ordered == null) validate();
+		return ordered;
+	}
+	/**
+	 * @return The compact graph, where node and edge ids are those of the nodes and edges.
+	 */
+	public Graph getGraph() {
+		if (ordered == null) validate();
+		return graph;
+	}
+	/**
+	 * @return All the edges, indexed by id.
+	 */
+	public Edge[] getEdges() {
+		if (ordered == null) validate();
+		return edges;
+	}
+	/**
+	 * @return The input edges.
+	 */
+	public Edge[] getInputEdges() {
+		if (ordered == null) validate();
+		return inputEdges;
+	}
+	/**
+	 * @return The output edges.
+	 */
+	public Edge[] getOutputEdges() {
+		if (ordered == null) validate();
+		return outputEdges;
+	}
+
+	/**
+	 * @return The trainable parameter arrays of all nodes, in forward order. Arrays are the node
+	 * arrays, not copies.
+	 */
+	public List<double[]> getParameters() {
+		List<double[]> parameters = new ArrayList<>();
+		for (Node node : getNodes()) {
+			for (double[] array : node.getParameters()) parameters.add(array);
+		}
+		return parameters;
+	}
+	/**
+	 * Set the trainable parameters of all nodes, in the order of <code>getParameters</code>. Nodes
+	 * may adopt the arrays instead of copying them.
+	 *
+	 * @param parameters The parameter arrays.
+	 * @throws IllegalArgumentException If the number or sizes of the arrays do not match.
+	 */
+	public void setParameters(List<double[]> parameters) {
+		int index = 0;
+		for (Node node : getNodes()) {
+			int count = node.getParameters().length;
+			if (count == 0) continue;
+			if (index + count > parameters.size()) {
+				throw new IllegalArgumentException("Invalid number of parameter arrays");
+			}
+			node.setParameters(parameters.subList(index, index + count).toArray(new double[count][]));
+			index += count;
+		}
+		if (index != parameters.size()) {
+			throw new IllegalArgumentException("Invalid number of parameter arrays");
+		}
+	}
+
+	/**
+	 * @param profiler The profiler, or null to run passes without instrumentation.
+	 */
+	public void setProfiler(Profiler profiler) { this.profiler = profiler; }
+	/**
+	 * @return The profiler, null if not set.
+	 */
+	public Profiler getProfiler() { return profiler; }
+
+	/**
+	 * Run a forward pass.
+	 *
+	 * @param inputs The input values, one vector per input edge.
+	 * @return The output values, one vector per output edge.
+	 */
+	public double[][] forward(double[]... inputs) {
+		Node[] nodes = getNodes();
+		if (inputs.length != inputEdges.length) {
+			throw new IllegalArgumentException("Invalid number of input vectors");
+		}
+		for (Edge edge : edges) edge.clear();
+		for (int i = 0; i < inputs.length; i++) inputEdges[i].pushForward(inputs[i]);
+		for (Node node : nodes) {
+			if (profiler != null) profiler.forward(node);
+			else node.forward();
+		}
+		double[][] outputs = new double[outputEdges.length][];
+		for (int i = 0; i < outputs.length; i++) outputs[i] = outputEdges[i].getForwardData();
+		return outputs;
+	}
+	/**
+	 * Run a backward pass after a forward pass.
+	 *
+	 * @param targets The target values, one vector per output edge.
+	 */
+	public void backward(double[]... targets) {
+		Node[] nodes = getNodes();
+		if (targets.length != outputEdges.length) {
+			throw new IllegalArgumentException("Invalid number of target vectors");
+		}
+		for (int i = 0; i < targets.length; i++) outputEdges[i].pushBackward(targets[i]);
+		for (int i = nodes.length - 1; i >= 0; i--) {
+			if (profiler != null) profiler.backward(nodes[i]);
+			else nodes[i].backward();
+		}
+	}
+
+	/**
+	 * Assign dense ids to nodes and edges, build the compact graph and order the nodes so that
+	 * each node comes after all the nodes that feed its input edges.
+	 * <p>
+	 * Each edge is registered once, as output edge of its input node or, for the input edges of
+	 * the network, as input edge of its output node, walking the edge queues of the nodes without
+	 * iterators. Ordering then runs on the int arrays of the compact graph only.
+	 */
+	private void order() {
+		Node[] added = nodes.toArray(new Node[nodes.size()]);
+		int count = 0;
+		for (int i = 0; i < added.length; i++) {
+			added[i].id = i;
+			count += added[i].outputEdges.size();
+			for (Queue<Edge>.Entry e = added[i].inputEdges.getHead(); e != null; e = e.getNext()) {
+				if (e.getItem().getInputNode() == null) count++;
+			}
+		}
+		Graph graph = new Graph(count);
+		graph.addNodes(added.length);
+		Edge[] edgesById = new Edge[count];
+		for (Node node : added) {
+			if (node.uuid != null) graph.setLabel(node.id, node.uuid);
+			for (Queue<Edge>.Entry e = node.inputEdges.getHead(); e != null; e = e.getNext()) {
+				Edge edge = e.getItem();
+				if (edge.getInputNode() == null) register(edge, edgesById, graph, added);
+				else nodeId(edge.getInputNode(), added);
+			}
+			for (Queue<Edge>.Entry e = node.outputEdges.getHead(); e != null; e = e.getNext()) {
+				register(e.getItem(), edgesById, graph, added);
+			}
+		}
+		int[] order = graph.topologicalOrder();
+		Node[] result = new Node[order.length];
+		for (int i = 0; i < order.length; i++) result[i] = added[order[i]];
+		int[] inputIds = graph.getInputEdges();
+		Edge[] inputs = new Edge[inputIds.length];
+		for (int i = 0; i < inputIds.length; i++) inputs[i] = edgesById[inputIds[i]];
+		int[] outputIds = graph.getOutputEdges();
+		Edge[] outputs = new Edge[outputIds.length];
+		for (int i = 0; i < outputIds.length; i++) outputs[i] = edgesById[outputIds[i]];
+		this.graph = graph;
+		this.ordered = result;
+		this.edges = edgesById;
+		this.inputEdges = inputs;
+		this.outputEdges = outputs;
+	}
+	/**
+	 * Assign the next id to the edge, add it to the graph and reset its planned buffers, a plan
+	 * being valid only for an order.
+	 *
+	 * @param edge  The edge.
+	 * @param edges The edges by id.
+	 * @param graph The graph.
+	 * @param nodes The nodes by id.
+	 */
+	private static void register(Edge edge, Edge[] edges, Graph graph, Node[] nodes) {
+		int source = nodeId(edge.getInputNode(), nodes);
+		int target = nodeId(edge.getOutputNode(), nodes);
+		edge.id = graph.addEdge(source, target);
+		edge.forwardBuffer = null;
+		edge.backwardBuffer = null;
+		edges[edge.id] = edge;
+	}
+	/**
+	 * @param node  The node, may be null.
+	 * @param nodes The nodes by id.
+	 * @return The id of the node or NONE if null.
+	 */
+	private static int nodeId(Node node, Node[] nodes) {
+		if (node == null) return Graph.NONE;
+		if (node.id < 0 || node.id >= nodes.length || nodes[node.id] != node) {
+			throw new IllegalStateException("Node not added to the network");
+		}
+		return node.id;
+	}
+}
@@ -19,6 +19,7 @@ package com.mlt.ml.graph;
 
 import com.mlt.common.collections.Queue;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -35,9 +36,13 @@ import java.util.UUID;
 public abstract class Node {
 
 	/**
-	 * String uuid.
+	 * String uuid, generated on demand and used as label of the compact graph.
 	 */
-	private String uuid;
+	String uuid;
+	/**
+	 * Dense id assigned by the network, -1 if not assigned.
+	 */
+	int id = -1;
 	/**
 	 * List of input edges.
 	 */
@@ -58,6 +63,61 @@ public abstract class Node {
 		if (uuid == null) uuid = UUID.randomUUID().toString();
 		return uuid;
 	}
+	/**
+	 * @return The dense id assigned by the network, -1 if not assigned. Unlike the UUID, ids are
+	 * only unique within a network.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return The trainable parameter arrays, updated in place by the backward pass. Nodes without
+	 * trainable parameters return an empty array.
+	 */
+	public double[][] getParameters() {
+		return new double[0][];
+	}
+	/**
+	 * Set the trainable parameters, in the order of <code>getParameters</code>. By default values
+	 * are copied to the node arrays. Nodes may instead adopt the arrays, that then must not be
+	 * modified by the caller.
+	 *
+	 * @param parameters The parameter arrays.
+	 * @throws IllegalArgumentException If the number or sizes of the arrays do not match.
+	 */
+	public void setParameters(double[][] parameters) {
+		double[][] arrays = getParameters();
+		checkParameters(parameters);
+		for (int i = 0; i < arrays.length; i++) {
+			System.arraycopy(parameters[i], 0, arrays[i], 0, arrays[i].length);
+		}
+	}
+	/**
+	 * @param parameters The parameter arrays to set.
+	 * @throws IllegalArgumentException If the number or sizes of the arrays do not match.
+	 */
+	protected void checkParameters(double[][] parameters) {
+		double[][] arrays = getParameters();
+		if (parameters.length != arrays.length) {
+			throw new IllegalArgumentException("Invalid number of parameter arrays");
+		}
+		for (int i = 0; i < arrays.length; i++) {
+			if (parameters[i].length != arrays[i].length) {
+				throw new IllegalArgumentException("Invalid parameter array size");
+			}
+		}
+	}
+
+	/**
+	 * @return A boolean that indicates whether the node writes its results to the vectors returned
+	 * by <code>getForwardBuffer</code> and <code>getBackwardBuffer</code>, and neither pushes
+	 * vectors read from its edges nor retains them across passes, so that a memory plan can reuse
+	 * the buffers of its edges.
+	 */
+	public boolean isPlannable() {
+		return false;
+	}
 
 	/**
 	 * @param edge The edge to add. May throw an exception if the operation does not pass the
@@ -95,15 +155,50 @@ public abstract class Node {
 	public abstract void backward();
 
 	/**
+	 * @param size The size of the forward result.
+	 * @return The zero filled buffer planned for the single output edge, or a new vector.
+	 */
+	protected double[] getForwardBuffer(int size) {
+		if (outputEdges.size() == 1) {
+			double[] buffer = outputEdges.getFirst().forwardBuffer;
+			if (buffer != null && buffer.length == size) {
+				Arrays.fill(buffer, 0);
+				return buffer;
+			}
+		}
+		return new double[size];
+	}
+	/**
+	 * @param size The size of the backward result.
+	 * @return The zero filled buffer planned for the single input edge, or a new vector.
+	 */
+	protected double[] getBackwardBuffer(int size) {
+		if (inputEdges.size() == 1) {
+			double[] buffer = inputEdges.getFirst().backwardBuffer;
+			if (buffer != null && buffer.length == size) {
+				Arrays.fill(buffer, 0);
+				return buffer;
+			}
+		}
+		return new double[size];
+	}
+
+	/**
+	 * Push the same vector, without copying, to all output edges. The vector is handed over and
+	 * must not be modified afterwards.
+	 *
 	 * @param values Output values to push to output edges.
 	 */
 	protected void pushForward(double[] values) {
-		outputEdges.forEach(edge -> pushForward(values));
+		outputEdges.forEach(edge -> edge.pushForward(values));
 	}
 	/**
+	 * Push the same vector, without copying, to all input edges. The vector is handed over and
+	 * must not be modified afterwards.
+	 *
 	 * @param values Input values (deltas) to push to input edges.
 	 */
 	protected void pushBackward(double[] values) {
-		inputEdges.forEach(edge -> pushBackward(values));
+		inputEdges.forEach(edge -> edge.pushBackward(values));
 	}
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event emitted by the profiler for each forward or backward call of a node, when
+ * recording of events is enabled.
+ *
+ * @author Miquel Sas
+ */
+@Name("com.mlt.ml.NodePass")
+@Label("Node Pass")
+@Category({ "MLT", "Graph" })
+@Description("Forward or backward call of a graph node")
+@StackTrace(false)
+public class NodeEvent extends Event {
+	/** Node name. */
+	@Label("Node")
+	String node;
+	/** Node id within the network. */
+	@Label("Id")
+	int id;
+	/** Pass, forward or backward. */
+	@Label("Pass")
+	String pass;
+	/** Bytes allocated by the current thread during the call. */
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable version of the trainable parameters of a network. Arrays are never modified once
+ * the snapshot is built, so any number of threads can read them without synchronization.
+ *
+ * @author Miquel Sas
+ */
+public class ParameterSnapshot {
+
+	/**
+	 * @param network The network.
+	 * @param version The version.
+	 * @return A snapshot with a copy of the current parameters of the network.
+	 */
+	public static ParameterSnapshot of(Network network, long version) {
+		List<double[]> copies = new ArrayList<>();
+		for (double[] array : network.getParameters()) copies.add(array.clone());
+		return new ParameterSnapshot(version, copies);
+	}
+
+	/** Version. */
+	private final long version;
+	/** Parameter arrays, in the order of the network. */
+	private final List<double[]> parameters;
+
+	/**
+	 * @param version    The version.
+	 * @param parameters The parameter arrays, owned by the snapshot from now on.
+	 */
+	public ParameterSnapshot(long version, List<double[]> parameters) {
+		this.version = version;
+		this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+	}
+
+	/**
+	 * @return The version.
+	 */
+	public long getVersion() { return version; }
+	/**
+	 * @return The parameter arrays, that must not be modified.
+	 */
+	public List<double[]> getParameters() { return parameters; }
+}
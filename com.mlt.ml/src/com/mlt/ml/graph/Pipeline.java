@@ -0,0 +1,473 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.lang.Strings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipeline parallel forward passes of a network over a stream of samples. The ordered nodes are
+ * cut into contiguous stages of balanced cost, each run by its own thread, so that consecutive
+ * samples occupy different stages at once. Stages are connected by bounded single producer single
+ * consumer rings of preallocated messages, that carry the vectors of the edges that cross each
+ * boundary.
+ * <p>
+ * Costs are the forward times of the nodes measured with <code>calibrate</code>, or equal if not
+ * calibrated. While started, the network must not be used otherwise. Samples must be submitted
+ * from a single thread and results taken from a single thread, in submission order. An exception
+ * thrown by a node on a sample travels with it and is rethrown as cause when it is taken.
+ *
+ * @author Miquel Sas
+ */
+public class Pipeline {
+
+	/**
+	 * Bounded single producer single consumer ring.
+	 */
+	private static class Ring {
+		/** Items. */
+		private final Message[] items;
+		/** Next index to take, written by the consumer. */
+		private final AtomicLong head = new AtomicLong();
+		/** Next index to put, written by the producer. */
+		private final AtomicLong tail = new AtomicLong();
+		private Ring(int capacity) { this.items = new Message[capacity]; }
+		private void put(Message message) {
+			long t = tail.get();
+			int spins = 0;
+			while (t - head.get() == items.length) spins = backOff(spins);
+			items[(int) (t % items.length)] = message;
+			tail.lazySet(t + 1);
+		}
+		private Message take() {
+			long h = head.get();
+			int spins = 0;
+			while (tail.get() == h) spins = backOff(spins);
+			int index = (int) (h % items.length);
+			Message message = items[index];
+			items[index] = null;
+			head.lazySet(h + 1);
+			return message;
+		}
+		private static int backOff(int spins) {
+			if (spins < 100) Thread.onSpinWait();
+			else if (spins < 200) Thread.yield();
+			else LockSupport.parkNanos(20_000);
+			return spins + 1;
+		}
+	}
+
+	/**
+	 * Message that crosses a boundary, the vectors of the live edges.
+	 */
+	private static class Message {
+		/** Vectors, one per edge of the boundary. */
+		private final double[][] vectors;
+		/** A boolean that indicates the end of the stream. */
+		private boolean stop;
+		/** Exception thrown by a node on this sample, carried to the end of the pipeline. */
+		private Throwable failure;
+		private Message(Edge[] edges) {
+			vectors = new double[edges.length][];
+			for (int i = 0; i < edges.length; i++) vectors[i] = new double[edges[i].size()];
+		}
+	}
+
+	/**
+	 * Boundary between two stages, with the rings of full and free messages.
+	 */
+	private static class Boundary {
+		/** Edges produced before the boundary and consumed after it. */
+		private Edge[] edges;
+		/** Full messages. */
+		private Ring full;
+		/** Free messages. */
+		private Ring free;
+		private Boundary(Edge[] edges, int capacity) {
+			this.edges = edges;
+			this.full = new Ring(capacity);
+			this.free = new Ring(capacity);
+			for (int i = 0; i < capacity; i++) free.put(new Message(edges));
+		}
+		private int indexOf(Edge edge) {
+			for (int i = 0; i < edges.length; i++) if (edges[i] == edge) return i;
+			return -1;
+		}
+	}
+
+	/**
+	 * Stage worker.
+	 */
+	private class Stage implements Runnable {
+		/** Nodes. */
+		private Node[] nodes;
+		/** Edges written by the nodes, cleared each sample. */
+		private Edge[] written;
+		/** Input boundary. */
+		private Boundary input;
+		/** Output boundary. */
+		private Boundary output;
+		/** Per output edge, index in the input message or -1 if produced by the stage. */
+		private int[] sources;
+		/** Input edges consumed by the stage and their index in the input message. */
+		private Edge[] consumed;
+		private int[] consumedIndexes;
+		/** Busy nanos. */
+		private volatile long nanos;
+		/** Samples processed. */
+		private volatile long samples;
+
+		@Override
+		public void run() {
+			while (true) {
+				Message in = input.full.take();
+				Message out = output.free.take();
+				if (in.stop) {
+					out.stop = true;
+					output.full.put(out);
+					input.free.put(in);
+					return;
+				}
+				long start = System.nanoTime();
+				out.stop = false;
+				out.failure = in.failure;
+				if (out.failure == null) {
+					try {
+						process(in, out);
+					} catch (Throwable exc) {
+						out.failure = exc;
+					}
+				}
+				nanos += System.nanoTime() - start;
+				samples++;
+				output.full.put(out);
+				input.free.put(in);
+			}
+		}
+		private void process(Message in, Message out) {
+			for (int i = 0; i < consumed.length; i++) {
+				consumed[i].stagedForward = in.vectors[consumedIndexes[i]];
+			}
+			for (Edge edge : written) edge.clear();
+			for (Node node : nodes) node.forward();
+			for (int i = 0; i < sources.length; i++) {
+				double[] vector;
+				if (sources[i] >= 0) vector = in.vectors[sources[i]];
+				else vector = output.edges[i].getPushedForwardData();
+				System.arraycopy(vector, 0, out.vectors[i], 0, vector.length);
+			}
+		}
+	}
+
+	/** Network. */
+	private Network network;
+	/** Requested number of stages. */
+	private int stageCount;
+	/** Messages per boundary. */
+	private int capacity = 4;
+	/** Forward nanos per node in forward order, null if not calibrated. */
+	private long[] costs;
+
+	/** Stages, null if not started. */
+	private Stage[] stages;
+	/** Threads of the stages. */
+	private Thread[] threads;
+	/** Boundaries, one more than stages. */
+	private Boundary[] boundaries;
+	/** Per edge of the first boundary, the index of the network input edge. */
+	private int[] inputIndexes;
+
+	/**
+	 * @param network The network.
+	 * @param stages  The number of stages.
+	 */
+	public Pipeline(Network network, int stages) {
+		if (stages < 1) throw new IllegalArgumentException("Invalid number of stages");
+		this.network = network;
+		this.stageCount = stages;
+	}
+
+	/**
+	 * @param capacity The number of messages per boundary, the maximum samples in flight between
+	 *                 two stages.
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Invalid capacity");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Measure the forward cost of each node running serial passes.
+	 *
+	 * @param iterations The number of passes, the first half being warm up.
+	 * @param inputs     The input vectors of a representative sample.
+	 */
+	public void calibrate(int iterations, double[]... inputs) {
+		if (stages != null) throw new IllegalStateException("Already started");
+		Node[] nodes = network.getNodes();
+		Edge[] inputEdges = network.getInputEdges();
+		costs = new long[nodes.length];
+		for (int k = 0; k < iterations; k++) {
+			for (Edge edge : network.getEdges()) edge.clear();
+			for (int i = 0; i < inputs.length; i++) inputEdges[i].pushForward(inputs[i]);
+			for (int i = 0; i < nodes.length; i++) {
+				long start = System.nanoTime();
+				nodes[i].forward();
+				if (k >= iterations / 2) costs[i] += System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Cut the nodes in stages and start the stage threads. The network is validated again, which
+	 * drops any memory plan, as planned buffers may be shared by edges of different stages.
+	 */
+	public void start() {
+		if (stages != null) throw new IllegalStateException("Already started");
+		network.validate();
+		Node[] nodes = network.getNodes();
+		int[] cuts = partition(nodes.length);
+		int count = cuts.length - 1;
+		int[] stageOf = new int[nodes.length];
+		for (int s = 0; s < count; s++) {
+			for (int i = cuts[s]; i < cuts[s + 1]; i++) stageOf[nodes[i].getId()] = s;
+		}
+
+		/* Boundary b is the input of stage b: edges produced before and consumed from stage b. */
+		boundaries = new Boundary[count + 1];
+		for (int b = 0; b <= count; b++) {
+			List<Edge> live = new ArrayList<>();
+			for (Edge edge : network.getEdges()) {
+				Node producer = edge.getInputNode();
+				Node consumer = edge.getOutputNode();
+				int from = producer == null ? -1 : stageOf[producer.getId()];
+				int to = consumer == null ? count : stageOf[consumer.getId()];
+				if (from < b && to >= b) live.add(edge);
+			}
+			boundaries[b] = new Boundary(live.toArray(new Edge[live.size()]), capacity);
+		}
+
+		Edge[] inputEdges = network.getInputEdges();
+		inputIndexes = new int[boundaries[0].edges.length];
+		for (int i = 0; i < inputIndexes.length; i++) {
+			inputIndexes[i] = Arrays.asList(inputEdges).indexOf(boundaries[0].edges[i]);
+		}
+
+		stages = new Stage[count];
+		threads = new Thread[count];
+		for (int s = 0; s < count; s++) {
+			Stage stage = new Stage();
+			stage.nodes = Arrays.copyOfRange(nodes, cuts[s], cuts[s + 1]);
+			stage.input = boundaries[s];
+			stage.output = boundaries[s + 1];
+			List<Edge> written = new ArrayList<>();
+			for (Node node : stage.nodes) for (Edge edge : node.outputEdges) written.add(edge);
+			stage.written = written.toArray(new Edge[written.size()]);
+			List<Edge> consumed = new ArrayList<>();
+			List<Integer> indexes = new ArrayList<>();
+			for (int i = 0; i < stage.input.edges.length; i++) {
+				Edge edge = stage.input.edges[i];
+				if (edge.getOutputNode() != null && stageOf[edge.getOutputNode().getId()] == s) {
+					consumed.add(edge);
+					indexes.add(i);
+				}
+			}
+			stage.consumed = consumed.toArray(new Edge[consumed.size()]);
+			stage.consumedIndexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+			stage.sources = new int[stage.output.edges.length];
+			for (int i = 0; i < stage.sources.length; i++) {
+				stage.sources[i] = stage.input.indexOf(stage.output.edges[i]);
+			}
+			for (Edge edge : stage.consumed) edge.staged = true;
+			stages[s] = stage;
+		}
+		for (int s = 0; s < count; s++) {
+			threads[s] = new Thread(stages[s], "pipeline-stage-" + s);
+			threads[s].setDaemon(true);
+			threads[s].start();
+		}
+	}
+
+	/**
+	 * Submit a sample, blocking while the first stage is full. Input vectors are copied.
+	 *
+	 * @param inputs The input vectors, one per input edge of the network.
+	 */
+	public void submit(double[]... inputs) {
+		if (stages == null) throw new IllegalStateException("Not started");
+		Boundary boundary = boundaries[0];
+		Message message = boundary.free.take();
+		for (int i = 0; i < boundary.edges.length; i++) {
+			double[] vector = inputs[inputIndexes[i]];
+			System.arraycopy(vector, 0, message.vectors[i], 0, vector.length);
+		}
+		message.stop = false;
+		message.failure = null;
+		boundary.full.put(message);
+	}
+	/**
+	 * Take the result of the next sample in submission order, blocking until available. A sample
+	 * on which a node failed is skipped by the following stages, and the pipeline keeps running.
+	 *
+	 * @return The output vectors, one per output edge of the network, owned by the caller.
+	 * @throws IllegalStateException If a node failed on the sample, with the exception as cause.
+	 */
+	public double[][] take() {
+		if (stages == null) throw new IllegalStateException("Not started");
+		Boundary boundary = boundaries[boundaries.length - 1];
+		Message message = boundary.full.take();
+		if (message.failure != null) {
+			Throwable failure = message.failure;
+			message.failure = null;
+			boundary.free.put(message);
+			throw new IllegalStateException("Sample failed in the pipeline", failure);
+		}
+		Edge[] outputEdges = network.getOutputEdges();
+		double[][] outputs = new double[outputEdges.length][];
+		for (int i = 0; i < outputEdges.length; i++) {
+			outputs[i] = message.vectors[boundary.indexOf(outputEdges[i])].clone();
+		}
+		boundary.free.put(message);
+		return outputs;
+	}
+
+	/**
+	 * Stop the stage threads after the samples in flight, that are discarded, and restore the
+	 * network for serial use.
+	 */
+	public void shutdown() {
+		if (stages == null) return;
+		Boundary first = boundaries[0];
+		Message stop = first.free.take();
+		stop.stop = true;
+		first.full.put(stop);
+		Boundary last = boundaries[boundaries.length - 1];
+		while (true) {
+			Message message = last.full.take();
+			last.free.put(message);
+			if (message.stop) break;
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Stage stage : stages) {
+			for (Edge edge : stage.consumed) {
+				edge.staged = false;
+				edge.stagedForward = null;
+			}
+		}
+		stages = null;
+		threads = null;
+		boundaries = null;
+	}
+
+	/**
+	 * @return The number of stages, after start.
+	 */
+	public int getStages() { return stages == null ? 0 : stages.length; }
+	/**
+	 * @return A report of the nodes, busy time and samples of each stage.
+	 */
+	public String getReport() {
+		if (stages == null) return "";
+		StringBuilder b = new StringBuilder();
+		b.append(Strings.rightPad("Stage", 8));
+		b.append(Strings.leftPad("Nodes", 8));
+		b.append(Strings.leftPad("Samples", 10));
+		b.append(Strings.leftPad("Busy ms", 11));
+		b.append(Strings.leftPad("us/sample", 11));
+		b.append("\n");
+		for (int s = 0; s < stages.length; s++) {
+			Stage stage = stages[s];
+			long samples = stage.samples;
+			long nanos = stage.nanos;
+			b.append(Strings.rightPad(String.valueOf(s), 8));
+			b.append(Strings.leftPad(stage.nodes.length, 8));
+			b.append(Strings.leftPad(samples, 10));
+			b.append(Strings.leftPad(String.format("%.1f", nanos / 1e6), 11));
+			double perSample = samples == 0 ? 0 : nanos / 1e3 / samples;
+			b.append(Strings.leftPad(String.format("%.1f", perSample), 11));
+			b.append("\n");
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Cut the ordered nodes in contiguous ranges minimizing the maximum cost of a range, by
+	 * bisection over the maximum cost with a greedy fill.
+	 *
+	 * @param n The number of nodes.
+	 * @return The cut indexes, starting with 0 and ending with n.
+	 */
+	private int[] partition(int n) {
+		long[] cost = new long[n];
+		for (int i = 0; i < n; i++) cost[i] = costs == null ? 1 : Math.max(1, costs[i]);
+		int k = Math.min(stageCount, n);
+		long low = 0;
+		long high = 0;
+		for (long c : cost) {
+			low = Math.max(low, c);
+			high += c;
+		}
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (ranges(cost, middle) <= k) high = middle;
+			else low = middle + 1;
+		}
+		List<Integer> cuts = new ArrayList<>();
+		cuts.add(0);
+		long sum = 0;
+		for (int i = 0; i < n; i++) {
+			/* Cut when the limit is exceeded, or when the remaining nodes are needed to fill k. */
+			int remaining = k - cuts.size();
+			if (i > cuts.get(cuts.size() - 1) && (sum + cost[i] > low || n - i <= remaining)) {
+				cuts.add(i);
+				sum = 0;
+			}
+			sum += cost[i];
+		}
+		cuts.add(n);
+		return cuts.stream().mapToInt(Integer::intValue).toArray();
+	}
+	/**
+	 * @param cost  The costs.
+	 * @param limit The maximum cost of a range.
+	 * @return The number of ranges of a greedy fill.
+	 */
+	private static int ranges(long[] cost, long limit) {
+		int ranges = 1;
+		long sum = 0;
+		for (long c : cost) {
+			if (sum + c > limit) {
+				ranges++;
+				sum = 0;
+			}
+			sum += c;
+		}
+		return ranges;
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.lang.Strings;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opt-in instrumentation of the forward and backward calls of nodes. Set on a network, it records
+ * per node the wall time, the number of calls, the bytes allocated by the calling thread and the
+ * bytes held by the queues of the node edges, and optionally emits a flight recorder event per
+ * call.
+ * <p>
+ * Allocated bytes are measured through the HotSpot thread management bean, and are zero if the
+ * JVM does not support it.
+ *
+ * @author Miquel Sas
+ */
+public class Profiler {
+
+	/**
+	 * Statistics of a node.
+	 */
+	public static class Stats {
+		/** Node. */
+		private Node node;
+		/** Forward calls. */
+		private long forwardCalls;
+		/** Forward nanos. */
+		private long forwardNanos;
+		/** Backward calls. */
+		private long backwardCalls;
+		/** Backward nanos. */
+		private long backwardNanos;
+		/** Allocated bytes. */
+		private long allocatedBytes;
+		/** Maximum bytes held by the queues of the edges. */
+		private long edgeBytes;
+
+		/**
+		 * @param node The node.
+		 */
+		private Stats(Node node) { this.node = node; }
+
+		/**
+		 * @return The node.
+		 */
+		public Node getNode() { return node; }
+		/**
+		 * @return The number of forward calls.
+		 */
+		public long getForwardCalls() { return forwardCalls; }
+		/**
+		 * @return The forward wall time in nanos.
+		 */
+		public long getForwardNanos() { return forwardNanos; }
+		/**
+		 * @return The number of backward calls.
+		 */
+		public long getBackwardCalls() { return backwardCalls; }
+		/**
+		 * @return The backward wall time in nanos.
+		 */
+		public long getBackwardNanos() { return backwardNanos; }
+		/**
+		 * @return The total wall time in nanos.
+		 */
+		public long getTotalNanos() { return forwardNanos + backwardNanos; }
+		/**
+		 * @return The bytes allocated in forward and backward calls.
+		 */
+		public long getAllocatedBytes() { return allocatedBytes; }
+		/**
+		 * @return The maximum bytes held by the queues of the node edges.
+		 */
+		public long getEdgeBytes() { return edgeBytes; }
+	}
+
+	/** Thread bean, null if allocation measurement is not supported. */
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+	/**
+	 * @return The HotSpot thread bean with allocation measurement enabled, or null.
+	 */
+	private static com.sun.management.ThreadMXBean threadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+			if (!hotspot.isThreadAllocatedMemorySupported()) return null;
+			if (!hotspot.isThreadAllocatedMemoryEnabled()) hotspot.setThreadAllocatedMemoryEnabled(true);
+			return hotspot;
+		} catch (Throwable exc) {
+			return null;
+		}
+	}
+	/**
+	 * @return The bytes allocated so far by the current thread.
+	 */
+	private static long allocatedBytes() {
+		if (THREAD_BEAN == null) return 0;
+		return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** Statistics per node. */
+	private Map<Node, Stats> statistics = new HashMap<>();
+	/** A boolean that indicates whether flight recorder events should be emitted. */
+	private boolean recordEvents = false;
+
+	/**
+	 * Constructor.
+	 */
+	public Profiler() {}
+
+	/**
+	 * @param recordEvents A boolean that indicates whether flight recorder events should be
+	 *                     emitted for each call.
+	 */
+	public void setRecordEvents(boolean recordEvents) { this.recordEvents = recordEvents; }
+
+	/**
+	 * Call and measure the forward method of the node.
+	 *
+	 * @param node The node.
+	 */
+	public void forward(Node node) {
+		NodeEvent event = begin();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		node.forward();
+		long nanos = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+		synchronized (statistics) {
+			Stats stats = getStats(node);
+			stats.forwardCalls++;
+			stats.forwardNanos += nanos;
+			stats.allocatedBytes += allocated;
+			stats.edgeBytes = Math.max(stats.edgeBytes, edgeBytes(node));
+		}
+		commit(event, node, "forward", allocated);
+	}
+	/**
+	 * Call and measure the backward method of the node.
+	 *
+	 * @param node The node.
+	 */
+	public void backward(Node node) {
+		NodeEvent event = begin();
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		node.backward();
+		long nanos = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+		synchronized (statistics) {
+			Stats stats = getStats(node);
+			stats.backwardCalls++;
+			stats.backwardNanos += nanos;
+			stats.allocatedBytes += allocated;
+			stats.edgeBytes = Math.max(stats.edgeBytes, edgeBytes(node));
+		}
+		commit(event, node, "backward", allocated);
+	}
+
+	/**
+	 * @return The statistics sorted by total wall time, descending.
+	 */
+	public List<Stats> getStatistics() {
+		List<Stats> list;
+		synchronized (statistics) { list = new ArrayList<>(statistics.values()); }
+		list.sort(Comparator.comparingLong(Stats::getTotalNanos).reversed());
+		return list;
+	}
+	/**
+	 * Clear the statistics.
+	 */
+	public void clear() {
+		synchronized (statistics) { statistics.clear(); }
+	}
+
+	/**
+	 * @return A text report of the statistics sorted by total wall time, descending.
+	 */
+	public String getReport() {
+		List<Stats> list = getStatistics();
+		long total = 0;
+		for (Stats stats : list) total += stats.getTotalNanos();
+		StringBuilder b = new StringBuilder();
+		b.append(Strings.rightPad("Node", 32));
+		b.append(Strings.leftPad("Fwd calls", 11));
+		b.append(Strings.leftPad("Fwd ms", 11));
+		b.append(Strings.leftPad("Bwd calls", 11));
+		b.append(Strings.leftPad("Bwd ms", 11));
+		b.append(Strings.leftPad("Time %", 9));
+		b.append(Strings.leftPad("Alloc KB", 12));
+		b.append(Strings.leftPad("Edge KB", 10));
+		b.append("\n");
+		for (Stats stats : list) {
+			b.append(Strings.rightPad(stats.node.getName() + " #" + stats.node.getId(), 32));
+			b.append(Strings.leftPad(stats.forwardCalls, 11));
+			b.append(Strings.leftPad(millis(stats.forwardNanos), 11));
+			b.append(Strings.leftPad(stats.backwardCalls, 11));
+			b.append(Strings.leftPad(millis(stats.backwardNanos), 11));
+			double percent = total == 0 ? 0 : 100.0 * stats.getTotalNanos() / total;
+			b.append(Strings.leftPad(String.format("%.1f", percent), 9));
+			b.append(Strings.leftPad(stats.allocatedBytes / 1024, 12));
+			b.append(Strings.leftPad(stats.edgeBytes / 1024, 10));
+			b.append("\n");
+		}
+		return b.toString();
+	}
+
+	/**
+	 * @param node The node.
+	 * @return The statistics of the node, created if not exist.
+	 */
+	private Stats getStats(Node node) {
+		Stats stats = statistics.get(node);
+		if (stats == null) {
+			stats = new Stats(node);
+			statistics.put(node, stats);
+		}
+		return stats;
+	}
+	/**
+	 * @param node The node.
+	 * @return The bytes held by the forward queues of the output edges and the backward queues of
+	 * the input edges.
+	 */
+	private long edgeBytes(Node node) {
+		long bytes = 0;
+		for (Edge edge : node.outputEdges) bytes += 8L * edge.size() * edge.getForwardQueue().size();
+		for (Edge edge : node.inputEdges) bytes += 8L * edge.size() * edge.getBackwardQueue().size();
+		return bytes;
+	}
+	/**
+	 * @return A begun event if recording is enabled, otherwise null.
+	 */
+	private NodeEvent begin() {
+		if (!recordEvents) return null;
+		NodeEvent event = new NodeEvent();
+		event.begin();
+		return event;
+	}
+	/**
+	 * @param event     The event, may be null.
+	 * @param node      The node.
+	 * @param pass      The pass.
+	 * @param allocated Allocated bytes.
+	 */
+	private void commit(NodeEvent event, Node node, String pass, long allocated) {
+		if (event == null) return;
+		event.end();
+		if (event.shouldCommit()) {
+			event.node = node.getName();
+			event.id = node.getId();
+			event.pass = pass;
+			event.allocated = allocated;
+			event.commit();
+		}
+	}
+	/**
+	 * @param nanos Nanos.
+	 * @return The milliseconds string with three decimals.
+	 */
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1.0E6);
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.lang.Strings;
+import com.mlt.ml.graph.nodes.SparseWeightsNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+import com.mlt.ml.math.SparseMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Magnitude pruning of a frozen network. Weights of dense weights nodes with an absolute value
+ * less or equal to a threshold are dropped, and the nodes whose resulting sparsity reaches a
+ * minimum are replaced by sparse weights nodes, while the others keep the dropped weights as zeros
+ * in place. The forward time of the dense and sparse products is measured
+ * for each layer, so the speedup can be reported.
+ *
+ * @author Miquel Sas
+ */
+public class Pruning {
+
+	/**
+	 * Result of pruning a weights node.
+	 */
+	public static class Result {
+		/** Label of the dense node. */
+		private String label;
+		/** Rows, the output size. */
+		private int rows;
+		/** Columns, the input size. */
+		private int columns;
+		/** Sparsity after pruning. */
+		private double sparsity;
+		/** Nanos of a dense product. */
+		private double denseNanos;
+		/** Nanos of a sparse product. */
+		private double sparseNanos;
+		/** A boolean that indicates whether the node has been replaced. */
+		private boolean converted;
+
+		/**
+		 * @return The label of the dense node.
+		 */
+		public String getLabel() { return label; }
+		/**
+		 * @return The fraction of pruned weights.
+		 */
+		public double getSparsity() { return sparsity; }
+		/**
+		 * @return The nanos of a dense product.
+		 */
+		public double getDenseNanos() { return denseNanos; }
+		/**
+		 * @return The nanos of a sparse product.
+		 */
+		public double getSparseNanos() { return sparseNanos; }
+		/**
+		 * @return The dense time over the sparse time.
+		 */
+		public double getSpeedup() { return sparseNanos == 0 ? 0 : denseNanos / sparseNanos; }
+		/**
+		 * @return A boolean that indicates whether the node has been replaced.
+		 */
+		public boolean isConverted() { return converted; }
+	}
+
+	/**
+	 * @param weights  The weights.
+	 * @param fraction The fraction of weights to prune.
+	 * @return The magnitude threshold that prunes the fraction of weights.
+	 */
+	public static double getThreshold(double[] weights, double fraction) {
+		if (fraction <= 0) return 0;
+		double[] magnitudes = new double[weights.length];
+		for (int i = 0; i < weights.length; i++) magnitudes[i] = Math.abs(weights[i]);
+		Arrays.sort(magnitudes);
+		int index = (int) Math.min(magnitudes.length - 1, Math.ceil(fraction * weights.length) - 1);
+		return magnitudes[Math.max(0, index)];
+	}
+
+	/** Magnitude threshold, weights with an absolute value less or equal are pruned. */
+	private double threshold;
+	/** Fraction of weights to prune per node, used instead of the threshold if greater than 0. */
+	private double fraction;
+	/** Minimum sparsity to replace a dense node. */
+	private double minSparsity = 0.5;
+	/** Number of products timed per layer. */
+	private int iterations = 50;
+	/** Pool of the sparse kernels, null to run sequentially. */
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Constructor.
+	 */
+	public Pruning() {}
+
+	/**
+	 * @param threshold The magnitude threshold.
+	 */
+	public void setThreshold(double threshold) { this.threshold = threshold; }
+	/**
+	 * @param fraction The fraction of weights to prune per node, zero to use the threshold.
+	 */
+	public void setFraction(double fraction) {
+		if (fraction < 0 || fraction >= 1) throw new IllegalArgumentException("Invalid fraction");
+		this.fraction = fraction;
+	}
+	/**
+	 * @param minSparsity The minimum sparsity to replace a dense node.
+	 */
+	public void setMinSparsity(double minSparsity) { this.minSparsity = minSparsity; }
+	/**
+	 * @param iterations The number of products timed per layer.
+	 */
+	public void setIterations(int iterations) {
+		if (iterations < 1) throw new IllegalArgumentException("Invalid iterations");
+		this.iterations = iterations;
+	}
+	/**
+	 * @param pool The pool of the sparse kernels, null to run sequentially.
+	 */
+	public void setPool(ForkJoinPool pool) { this.pool = pool; }
+
+	/**
+	 * Prune the dense weights nodes of the network, replacing those that reach the minimum
+	 * sparsity. The network is validated again after replacements.
+	 *
+	 * @param network The network, trained.
+	 * @return The results, one per dense weights node, in forward order.
+	 */
+	public List<Result> prune(Network network) {
+		List<Result> results = new ArrayList<>();
+		Random random = new Random(0);
+		for (Node node : network.getNodes()) {
+			if (!(node instanceof WeightsNode)) continue;
+			WeightsNode dense = (WeightsNode) node;
+			double limit = fraction > 0 ? getThreshold(dense.getWeights(), fraction) : threshold;
+			SparseWeightsNode sparse = new SparseWeightsNode(dense, limit);
+			sparse.setPool(pool);
+			Result result = new Result();
+			result.label = dense.getName() + " #" + dense.getId();
+			result.rows = dense.getOutputSize();
+			result.columns = dense.getInputSize();
+			result.sparsity = sparse.getWeights().getSparsity();
+			double[] input = new double[result.columns];
+			for (int i = 0; i < input.length; i++) input[i] = random.nextGaussian();
+			result.denseNanos = timeDense(dense, input);
+			result.sparseNanos = timeSparse(sparse.getWeights(), input);
+			if (result.sparsity >= minSparsity) {
+				network.replaceNode(dense, sparse);
+				result.converted = true;
+			} else {
+				double[] weights = dense.getWeights();
+				for (int i = 0; i < weights.length; i++) {
+					if (Math.abs(weights[i]) <= limit) weights[i] = 0;
+				}
+			}
+			results.add(result);
+		}
+		network.validate();
+		return results;
+	}
+
+	/**
+	 * @param results The results of a pruning.
+	 * @return A printable report.
+	 */
+	public static String getReport(List<Result> results) {
+		StringBuilder b = new StringBuilder();
+		b.append(Strings.rightPad("Node", 32));
+		b.append(Strings.leftPad("Shape", 14));
+		b.append(Strings.leftPad("Sparsity", 10));
+		b.append(Strings.leftPad("Dense us", 11));
+		b.append(Strings.leftPad("Sparse us", 11));
+		b.append(Strings.leftPad("Speedup", 9));
+		b.append(Strings.leftPad("Sparse", 8));
+		b.append("\n");
+		for (Result result : results) {
+			b.append(Strings.rightPad(result.label, 32));
+			b.append(Strings.leftPad(result.rows + "x" + result.columns, 14));
+			b.append(Strings.leftPad(String.format("%.3f", result.sparsity), 10));
+			b.append(Strings.leftPad(String.format("%.1f", result.denseNanos / 1000), 11));
+			b.append(Strings.leftPad(String.format("%.1f", result.sparseNanos / 1000), 11));
+			b.append(Strings.leftPad(String.format("%.2f", result.getSpeedup()), 9));
+			b.append(Strings.leftPad(result.converted ? "yes" : "no", 8));
+			b.append("\n");
+		}
+		return b.toString();
+	}
+
+	/**
+	 * @param dense The dense node.
+	 * @param input The input vector.
+	 * @return The minimum nanos of a dense product, after a warm up.
+	 */
+	private double timeDense(WeightsNode dense, double[] input) {
+		double[] output = new double[dense.getOutputSize()];
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 2 * iterations; i++) {
+			long start = System.nanoTime();
+			dense.multiply(input, output);
+			long nanos = System.nanoTime() - start;
+			if (i >= iterations) best = Math.min(best, nanos);
+		}
+		return best;
+	}
+	/**
+	 * @param sparse The sparse weights.
+	 * @param input  The input vector.
+	 * @return The minimum nanos of a sparse product, after a warm up.
+	 */
+	private double timeSparse(SparseMatrix sparse, double[] input) {
+		double[] output = new double[sparse.getRows()];
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 2 * iterations; i++) {
+			long start = System.nanoTime();
+			if (pool != null) sparse.multiply(input, output, pool);
+			else sparse.multiply(input, output);
+			long nanos = System.nanoTime() - start;
+			if (i >= iterations) best = Math.min(best, nanos);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import com.mlt.common.task.Task;
+import com.mlt.common.task.TaskExecutor;
+import com.mlt.ml.graph.nodes.RecurrentNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Scoring of a long series with a recurrent network, splitting the series in chunks scored in
+ * parallel by network replicas, and stitching the outputs in order.
+ * <p>
+ * The recurrent state carries from step to step, thus each chunk but the first starts with a
+ * warm-up, the steps that precede it, whose outputs are discarded and that only serve to converge
+ * the state from the reset state. The result is an approximation of the serial scoring, whose
+ * divergence decreases with the warm-up, and that can be measured comparing with a serial run.
+ * <p>
+ * The network must have one input edge, and the first output edge is the one scored.
+ *
+ * @author Miquel Sas
+ */
+public class SeriesScoring {
+
+	/**
+	 * Divergence of chunked outputs against serial outputs.
+	 */
+	public static class Divergence {
+		/** Maximum absolute difference. */
+		private double maximum;
+		/** Mean absolute difference. */
+		private double mean;
+		/** Step of the maximum absolute difference. */
+		private int step;
+		/** Maximum absolute difference per chunk. */
+		private double[] chunkMaximums;
+		/**
+		 * @return The maximum absolute difference.
+		 */
+		public double getMaximum() { return maximum; }
+		/**
+		 * @return The mean absolute difference.
+		 */
+		public double getMean() { return mean; }
+		/**
+		 * @return The step of the maximum absolute difference.
+		 */
+		public int getStep() { return step; }
+		/**
+		 * @return The maximum absolute difference per chunk.
+		 */
+		public double[] getChunkMaximums() { return chunkMaximums; }
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			return String.format(
+				"max %.3e at step %d, mean %.3e, chunks %d",
+				maximum, step, mean, chunkMaximums.length);
+		}
+	}
+
+	/**
+	 * Task that scores a chunk.
+	 */
+	private class ChunkTask extends Task {
+		private double[][] series;
+		private double[][] outputs;
+		private int start;
+		private int end;
+		private ChunkTask(double[][] series, double[][] outputs, int start, int end) {
+			this.series = series;
+			this.outputs = outputs;
+			this.start = start;
+			this.end = end;
+		}
+		@Override
+		public void execute() throws Throwable {
+			Network network = replicas.poll();
+			if (network == null) network = factory.get();
+			try {
+				resetState(network);
+				for (int t = Math.max(0, start - warmUp); t < start; t++) {
+					network.forward(series[t]);
+				}
+				for (int t = start; t < end; t++) {
+					if (shouldCancel()) {
+						setCancelled();
+						return;
+					}
+					outputs[t] = network.forward(series[t])[0].clone();
+				}
+			} finally {
+				replicas.add(network);
+			}
+		}
+	}
+
+	/** Factory of initialized network replicas, all with the same parameters. */
+	private Supplier<Network> factory;
+	/** Idle replicas. */
+	private ConcurrentLinkedQueue<Network> replicas = new ConcurrentLinkedQueue<>();
+	/** Steps per chunk. */
+	private int chunkSize = 10000;
+	/** Warm-up steps before each chunk. */
+	private int warmUp = 500;
+	/** Maximum number of chunks scored concurrently. */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param factory Factory of initialized network replicas, all with the same parameters.
+	 */
+	public SeriesScoring(Supplier<Network> factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * @param chunkSize Steps per chunk.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size");
+		this.chunkSize = chunkSize;
+	}
+	/**
+	 * @param warmUp Warm-up steps before each chunk, whose outputs are discarded.
+	 */
+	public void setWarmUp(int warmUp) {
+		if (warmUp < 0) throw new IllegalArgumentException("Invalid warm-up");
+		this.warmUp = warmUp;
+	}
+	/**
+	 * @param parallelism Maximum number of chunks scored concurrently.
+	 */
+	public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+
+	/**
+	 * Score the series in parallel chunks.
+	 *
+	 * @param series The input vectors, one per step.
+	 * @return The output vectors, one per step.
+	 */
+	public double[][] score(double[][] series) {
+		double[][] outputs = new double[series.length][];
+		List<ChunkTask> tasks = new ArrayList<>();
+		for (int start = 0; start < series.length; start += chunkSize) {
+			int end = Math.min(series.length, start + chunkSize);
+			tasks.add(new ChunkTask(series, outputs, start, end));
+		}
+		TaskExecutor executor = new TaskExecutor(Math.max(1, Math.min(parallelism, tasks.size())));
+		try {
+			executor.submitAndWaitForTermination(tasks);
+		} finally {
+			executor.shutdown();
+		}
+		for (ChunkTask task : tasks) {
+			if (!task.hasSucceded()) {
+				String message = "Chunk at step " + task.start + " failed";
+				throw new IllegalStateException(message, task.getException());
+			}
+		}
+		return outputs;
+	}
+	/**
+	 * Score the series serially, carrying the state from the first to the last step.
+	 *
+	 * @param series The input vectors, one per step.
+	 * @return The output vectors, one per step.
+	 */
+	public double[][] scoreSerial(double[][] series) {
+		double[][] outputs = new double[series.length][];
+		ChunkTask task = new ChunkTask(series, outputs, 0, series.length);
+		task.run();
+		if (!task.hasSucceded()) {
+			throw new IllegalStateException("Serial scoring failed", task.getException());
+		}
+		return outputs;
+	}
+
+	/**
+	 * @param serial  The outputs of the serial scoring.
+	 * @param chunked The outputs of the chunked scoring.
+	 * @return The divergence, with per chunk maximums for the current chunk size.
+	 */
+	public Divergence getDivergence(double[][] serial, double[][] chunked) {
+		if (serial.length != chunked.length) throw new IllegalArgumentException("Invalid lengths");
+		Divergence divergence = new Divergence();
+		divergence.chunkMaximums = new double[(serial.length + chunkSize - 1) / chunkSize];
+		double sum = 0;
+		long count = 0;
+		for (int t = 0; t < serial.length; t++) {
+			for (int i = 0; i < serial[t].length; i++) {
+				double difference = Math.abs(serial[t][i] - chunked[t][i]);
+				sum += difference;
+				count++;
+				if (difference > divergence.maximum) {
+					divergence.maximum = difference;
+					divergence.step = t;
+				}
+				int chunk = t / chunkSize;
+				if (difference > divergence.chunkMaximums[chunk]) {
+					divergence.chunkMaximums[chunk] = difference;
+				}
+			}
+		}
+		divergence.mean = count == 0 ? 0 : sum / count;
+		return divergence;
+	}
+
+	/**
+	 * @param network The network whose recurrent nodes are reset.
+	 */
+	private static void resetState(Network network) {
+		for (Node node : network.getNodes()) {
+			if (node instanceof RecurrentNode) ((RecurrentNode) node).resetState();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+/**
+ * Predictions of a network replica that follows the snapshots of a store. Before each prediction
+ * the replica checks the current snapshot and, when it changed, its nodes take the new parameter
+ * arrays, adopting them without copying where the node supports it. A prediction thus runs on a
+ * single snapshot, never on a mix of versions.
+ * <p>
+ * A predictor is used by one thread, each serving thread having its own replica, and the replica
+ * must not be trained, as nodes may share the snapshot arrays.
+ *
+ * @author Miquel Sas
+ */
+public class SnapshotPredictor {
+
+	/** Network replica. */
+	private Network network;
+	/** Store. */
+	private SnapshotStore store;
+	/** Snapshot the replica runs. */
+	private ParameterSnapshot snapshot;
+
+	/**
+	 * @param network The replica, with the same structure than the network of the store.
+	 * @param store   The store.
+	 */
+	public SnapshotPredictor(Network network, SnapshotStore store) {
+		this.network = network;
+		this.store = store;
+	}
+
+	/**
+	 * @return The network replica.
+	 */
+	public Network getNetwork() { return network; }
+	/**
+	 * @return The snapshot of the last prediction, null if none.
+	 */
+	public ParameterSnapshot getSnapshot() { return snapshot; }
+
+	/**
+	 * Make the replica run the current snapshot.
+	 *
+	 * @return The snapshot.
+	 */
+	public ParameterSnapshot refresh() {
+		ParameterSnapshot current = store.get();
+		if (current != snapshot) {
+			network.setParameters(current.getParameters());
+			snapshot = current;
+		}
+		return current;
+	}
+	/**
+	 * @param inputs The input vectors, one per input edge.
+	 * @return The output vectors, one per output edge.
+	 */
+	public double[][] predict(double[]... inputs) {
+		refresh();
+		return network.forward(inputs);
+	}
+}
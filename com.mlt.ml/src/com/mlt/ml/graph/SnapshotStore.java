@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Read-copy-update store of the parameters of a served network. Readers get the current
+ * snapshot with a single volatile read, and writers build the next snapshot aside and publish it
+ * with an atomic swap, so that predictions are never paused by an update. A snapshot is reclaimed
+ * by the garbage collector once no reader references it, which is the grace period of the update.
+ *
+ * @author Miquel Sas
+ */
+public class SnapshotStore {
+
+	/** Current snapshot. */
+	private final AtomicReference<ParameterSnapshot> current;
+
+	/**
+	 * @param network The network with the initial parameters, version zero.
+	 */
+	public SnapshotStore(Network network) {
+		current = new AtomicReference<>(ParameterSnapshot.of(network, 0));
+	}
+
+	/**
+	 * @return The current snapshot, without locking.
+	 */
+	public ParameterSnapshot get() { return current.get(); }
+	/**
+	 * @return The version of the current snapshot.
+	 */
+	public long getVersion() { return current.get().getVersion(); }
+
+	/**
+	 * Publish a copy of the parameters of a network, typically trained aside. The copy is made
+	 * before the swap, so the network may keep training afterwards.
+	 *
+	 * @param network The network, with the same structure than the served one.
+	 * @return The published snapshot.
+	 */
+	public ParameterSnapshot publish(Network network) {
+		List<double[]> arrays = network.getParameters();
+		double[][] copies = new double[arrays.size()][];
+		for (int i = 0; i < copies.length; i++) copies[i] = arrays.get(i).clone();
+		return publish(copies);
+	}
+	/**
+	 * Publish parameter arrays, that the snapshot owns from now on.
+	 *
+	 * @param parameters The parameter arrays, in the order of the network.
+	 * @return The published snapshot.
+	 * @throws IllegalArgumentException If the number or the sizes of the arrays do not match the
+	 *                                  current snapshot.
+	 */
+	public ParameterSnapshot publish(double[]... parameters) {
+		ParameterSnapshot previous;
+		ParameterSnapshot next;
+		do {
+			previous = current.get();
+			List<double[]> arrays = previous.getParameters();
+			if (parameters.length != arrays.size()) {
+				throw new IllegalArgumentException("Invalid number of parameter arrays");
+			}
+			for (int i = 0; i < parameters.length; i++) {
+				if (parameters[i] == null || parameters[i].length != arrays.get(i).length) {
+					throw new IllegalArgumentException("Invalid parameter array size");
+				}
+			}
+			next = new ParameterSnapshot(
+				previous.getVersion() + 1,
+				Arrays.asList(parameters));
+		} while (!current.compareAndSet(previous, next));
+		return next;
+	}
+}
@@ -74,6 +74,11 @@ public class ActivationNode extends Node {
 	 */
 	@Override
 	public String getName() { return "node-activation"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
 
 	/**
 	 * {@inheritDoc}
@@ -114,19 +119,23 @@ public class ActivationNode extends Node {
 	@Override
 	public void forward() {
 		double[] triggerValues = inputEdges.getLast().getForwardData();
-		double[] outputValues = activation.activations(triggerValues);
+		double[] outputValues = getForwardBuffer(size);
+		activation.activations(triggerValues, outputValues);
 		pushForward(outputValues);
 	}
 	/**
-	 * {@inheritDoc}
+	 * Apply the derivatives to the output deltas and push the input deltas. The output deltas may
+	 * be shared with other edges, thus the result is written to the derivatives vector, that is
+	 * owned by this node, instead of to the deltas.
 	 */
 	@Override
 	public void backward() {
 		double[] deltas = outputEdges.getLast().getBackwardData();
 		double[] values = outputEdges.getLast().getForwardData();
-		double[] derivatives = activation.derivatives(values);
+		double[] derivatives = getBackwardBuffer(size);
+		activation.derivatives(values, derivatives);
 		// Apply derivatives to deltas including a flat spot to avoid near zero	derivatives.
-		for (int i = 0; i < size; i++) { deltas[i] = deltas[i] * (derivatives[i] + flatSpot); }
-		pushBackward(deltas);
+		for (int i = 0; i < size; i++) { derivatives[i] = deltas[i] * (derivatives[i] + flatSpot); }
+		pushBackward(derivatives);
 	}
 }
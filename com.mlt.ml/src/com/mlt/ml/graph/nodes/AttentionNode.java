@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.math.Matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Multi-head self attention over a sequence, <code>Y = concat(heads) Wo</code>, where each head
+ * is <code>softmax(Q K' / sqrt(d)) V</code> over its slice of <code>Q = X Wq</code>,
+ * <code>K = X Wk</code> and <code>V = X Wv</code>.
+ * <p>
+ * The input and output vectors are the sequence, time major, <i>length</i> steps of <i>size</i>
+ * values. Attention is computed in tiles of query and key steps with an online softmax, keeping
+ * only the log-sum-exp of each query row for the backward pass, which recomputes the scores tile
+ * by tile. Memory is thus linear in the sequence length. Tiles run in parallel across heads and
+ * query blocks forward, and across heads backward.
+ *
+ * @author Miquel Sas
+ */
+public class AttentionNode extends Node {
+
+	/** Sequence length. */
+	private int length;
+	/** Model size, values per step. */
+	private int size;
+	/** Number of heads. */
+	private int heads;
+	/** Size of a head. */
+	private int headSize;
+	/** Steps per tile. */
+	private int blockSize = 64;
+	/** A boolean that indicates whether a step only attends to itself and previous steps. */
+	private boolean causal;
+	/** Learning rate. */
+	private double learningRate = 0.01;
+	/** Pool of the parallel kernels, null to run sequentially. */
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/** Query, key, value and output projections, size x size, input rows by output columns. */
+	private double[] wq;
+	private double[] wk;
+	private double[] wv;
+	private double[] wo;
+
+	/** Projections of the last forward, length x size. */
+	private double[] q;
+	private double[] k;
+	private double[] v;
+	/** Concatenated head outputs of the last forward, length x size. */
+	private double[] attention;
+	/** Log-sum-exp of the scores per head and query step. */
+	private double[] logSumExp;
+
+	/**
+	 * Constructor used for restore.
+	 */
+	public AttentionNode() {}
+	/**
+	 * @param length The sequence length.
+	 * @param size   The values per step.
+	 * @param heads  The number of heads, that must divide the size.
+	 */
+	public AttentionNode(int length, int size, int heads) {
+		if (length < 1 || size < 1 || heads < 1 || size % heads != 0) {
+			throw new IllegalArgumentException("Invalid attention dimensions");
+		}
+		this.length = length;
+		this.size = size;
+		this.heads = heads;
+		this.headSize = size / heads;
+		this.wq = new double[size * size];
+		this.wk = new double[size * size];
+		this.wv = new double[size * size];
+		this.wo = new double[size * size];
+	}
+
+	/**
+	 * @return The input and output size, length x size.
+	 */
+	public int getInputSize() { return length * size; }
+	/**
+	 * @param blockSize The steps per tile.
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 1) throw new IllegalArgumentException("Invalid block size");
+		this.blockSize = blockSize;
+	}
+	/**
+	 * @param causal A boolean that indicates whether a step only attends to previous steps.
+	 */
+	public void setCausal(boolean causal) { this.causal = causal; }
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+	/**
+	 * @param pool The pool of the parallel kernels, null to run sequentially.
+	 */
+	public void setPool(ForkJoinPool pool) { this.pool = pool; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != getInputSize()) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != getInputSize()) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-attention"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double[][] getParameters() { return new double[][] { wq, wk, wv, wo }; }
+	/**
+	 * Adopt the arrays.
+	 */
+	@Override
+	public void setParameters(double[][] parameters) {
+		checkParameters(parameters);
+		wq = parameters[0];
+		wk = parameters[1];
+		wv = parameters[2];
+		wo = parameters[3];
+	}
+
+	/**
+	 * Initialize the projections with gaussians scaled by the inverse square root of the size.
+	 */
+	@Override
+	public void initialize() {
+		Random random = new Random();
+		double scale = 1.0 / Math.sqrt(size);
+		for (double[] w : getParameters()) {
+			for (int i = 0; i < w.length; i++) w[i] = random.nextGaussian() * scale;
+		}
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() != 1) throw new IllegalStateException("One input edge required");
+		if (outputEdges.size() != 1) throw new IllegalStateException("One output edge required");
+		for (double[] w : getParameters()) {
+			if (w.length != size * size) throw new IllegalStateException("Invalid weights size");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void forward() {
+		double[] x = inputEdges.getLast().getForwardData();
+		int n = length * size;
+		if (q == null) {
+			q = new double[n];
+			k = new double[n];
+			v = new double[n];
+			attention = new double[n];
+			logSumExp = new double[heads * length];
+		}
+		Matrix.multiply(x, wq, q, length, size, size, false);
+		Matrix.multiply(x, wk, k, length, size, size, false);
+		Matrix.multiply(x, wv, v, length, size, size, false);
+		int blocks = (length + blockSize - 1) / blockSize;
+		run(heads * blocks, task -> forwardTile(task / blocks, task % blocks));
+		double[] output = new double[n];
+		Matrix.multiply(attention, wo, output, length, size, size, false);
+		pushForward(output);
+	}
+	/**
+	 * Push the input deltas and update the projections.
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] x = inputEdges.getLast().getForwardData();
+		int n = length * size;
+		/* Deltas of the head outputs. */
+		double[] da = new double[n];
+		Matrix.multiplyTransposeB(deltas, wo, da, length, size, size, false);
+		double[] dq = new double[n];
+		double[] dk = new double[n];
+		double[] dv = new double[n];
+		run(heads, head -> backwardHead(head, da, dq, dk, dv));
+
+		double[] inputDeltas = new double[n];
+		Matrix.multiplyTransposeB(dq, wq, inputDeltas, length, size, size, true);
+		Matrix.multiplyTransposeB(dk, wk, inputDeltas, length, size, size, true);
+		Matrix.multiplyTransposeB(dv, wv, inputDeltas, length, size, size, true);
+
+		double[] gradient = new double[size * size];
+		update(wo, attention, deltas, gradient);
+		update(wq, x, dq, gradient);
+		update(wk, x, dk, gradient);
+		update(wv, x, dv, gradient);
+		pushBackward(inputDeltas);
+	}
+
+	/**
+	 * Online softmax attention of a block of query steps of a head.
+	 *
+	 * @param head  The head.
+	 * @param block The query block.
+	 */
+	private void forwardTile(int head, int block) {
+		int offset = head * headSize;
+		int qStart = block * blockSize;
+		int qEnd = Math.min(length, qStart + blockSize);
+		int rows = qEnd - qStart;
+		double scale = 1.0 / Math.sqrt(headSize);
+		double[] max = new double[rows];
+		double[] sum = new double[rows];
+		double[] acc = new double[rows * headSize];
+		double[] scores = new double[blockSize];
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		int kLimit = causal ? qEnd : length;
+		for (int kStart = 0; kStart < kLimit; kStart += blockSize) {
+			int kEnd = Math.min(kLimit, kStart + blockSize);
+			for (int r = 0; r < rows; r++) {
+				int t = qStart + r;
+				int end = causal ? Math.min(kEnd, t + 1) : kEnd;
+				if (end <= kStart) continue;
+				int qi = t * size + offset;
+				double blockMax = Double.NEGATIVE_INFINITY;
+				for (int s = kStart; s < end; s++) {
+					int ki = s * size + offset;
+					double dot = 0;
+					for (int c = 0; c < headSize; c++) dot += q[qi + c] * k[ki + c];
+					dot *= scale;
+					scores[s - kStart] = dot;
+					if (dot > blockMax) blockMax = dot;
+				}
+				double newMax = Math.max(max[r], blockMax);
+				double correction = Math.exp(max[r] - newMax);
+				int ai = r * headSize;
+				sum[r] *= correction;
+				for (int c = 0; c < headSize; c++) acc[ai + c] *= correction;
+				for (int s = kStart; s < end; s++) {
+					double p = Math.exp(scores[s - kStart] - newMax);
+					sum[r] += p;
+					int vi = s * size + offset;
+					for (int c = 0; c < headSize; c++) acc[ai + c] += p * v[vi + c];
+				}
+				max[r] = newMax;
+			}
+		}
+		for (int r = 0; r < rows; r++) {
+			int t = qStart + r;
+			int oi = t * size + offset;
+			int ai = r * headSize;
+			for (int c = 0; c < headSize; c++) attention[oi + c] = acc[ai + c] / sum[r];
+			logSumExp[head * length + t] = max[r] + Math.log(sum[r]);
+		}
+	}
+	/**
+	 * Backward of a head, recomputing the probabilities from the log-sum-exp tile by tile.
+	 *
+	 * @param head The head.
+	 * @param da   The deltas of the head outputs.
+	 * @param dq   The query deltas to fill.
+	 * @param dk   The key deltas to fill.
+	 * @param dv   The value deltas to fill.
+	 */
+	private void backwardHead(int head, double[] da, double[] dq, double[] dk, double[] dv) {
+		int offset = head * headSize;
+		double scale = 1.0 / Math.sqrt(headSize);
+		/* Row sums of the output deltas times the outputs. */
+		double[] dot = new double[length];
+		for (int t = 0; t < length; t++) {
+			int oi = t * size + offset;
+			double sum = 0;
+			for (int c = 0; c < headSize; c++) sum += da[oi + c] * attention[oi + c];
+			dot[t] = sum;
+		}
+		for (int kStart = 0; kStart < length; kStart += blockSize) {
+			int kEnd = Math.min(length, kStart + blockSize);
+			int qStart = causal ? kStart : 0;
+			for (int t = qStart; t < length; t++) {
+				int end = causal ? Math.min(kEnd, t + 1) : kEnd;
+				int qi = t * size + offset;
+				double lse = logSumExp[head * length + t];
+				for (int s = kStart; s < end; s++) {
+					int ki = s * size + offset;
+					double score = 0;
+					double dp = 0;
+					for (int c = 0; c < headSize; c++) {
+						score += q[qi + c] * k[ki + c];
+						dp += da[qi + c] * v[ki + c];
+					}
+					double p = Math.exp(score * scale - lse);
+					double ds = p * (dp - dot[t]) * scale;
+					for (int c = 0; c < headSize; c++) {
+						dq[qi + c] += ds * k[ki + c];
+						dk[ki + c] += ds * q[qi + c];
+						dv[ki + c] += p * da[qi + c];
+					}
+				}
+			}
+		}
+	}
+	/**
+	 * Update projection weights with <code>transpose(input) deltas</code>.
+	 *
+	 * @param weights  The weights, size x size.
+	 * @param input    The input of the projection, length x size.
+	 * @param deltas   The deltas of the projection output, length x size.
+	 * @param gradient Scratch matrix, size x size.
+	 */
+	private void update(double[] weights, double[] input, double[] deltas, double[] gradient) {
+		Matrix.multiplyTransposeA(input, deltas, gradient, size, length, size, false);
+		for (int i = 0; i < weights.length; i++) weights[i] += learningRate * gradient[i];
+	}
+
+	/**
+	 * @param tasks  The number of tasks.
+	 * @param kernel The kernel of a task.
+	 */
+	private void run(int tasks, IntConsumer kernel) {
+		if (pool == null || tasks == 1) {
+			for (int i = 0; i < tasks; i++) kernel.accept(i);
+			return;
+		}
+		pool.invoke(new Tasks(0, tasks, kernel));
+	}
+	/**
+	 * Recursive split of a range of tasks.
+	 */
+	@SuppressWarnings("serial")
+	private static class Tasks extends RecursiveAction {
+		private int from;
+		private int to;
+		private IntConsumer kernel;
+		private Tasks(int from, int to, IntConsumer kernel) {
+			this.from = from;
+			this.to = to;
+			this.kernel = kernel;
+		}
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				kernel.accept(from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Tasks(from, middle, kernel), new Tasks(middle, to, kernel));
+		}
+	}
+}
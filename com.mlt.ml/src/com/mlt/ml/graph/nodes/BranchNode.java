@@ -19,6 +19,7 @@ package com.mlt.ml.graph.nodes;
 
 import com.mlt.common.collections.Queue;
 import com.mlt.ml.function.Collector;
+import com.mlt.ml.function.collector.CollectorTransfer;
 import com.mlt.ml.graph.Edge;
 import com.mlt.ml.graph.Node;
 
@@ -29,6 +30,8 @@ import com.mlt.ml.graph.Node;
  * all input edges.
  * <p>
  * The size is the same for all input and output edges.
+ * <p>
+ * Collected vectors are read-only, and the result is pushed to all edges without copying.
  *
  * @author Miquel Sas
  */
@@ -111,6 +114,11 @@ public class BranchNode extends Node {
 	 */
 	@Override
 	public void forward() {
+		/* A single vector is transferred as a view, without collecting. */
+		if (inputEdges.size() == 1 && forwardFunction instanceof CollectorTransfer) {
+			pushForward(inputEdges.getFirst().getForwardData());
+			return;
+		}
 		Queue<double[]> inputValues = new Queue<>();
 		for (Edge edge : inputEdges) {
 			inputValues.add(edge.getForwardData());
@@ -123,6 +131,11 @@ public class BranchNode extends Node {
 	 */
 	@Override
 	public void backward() {
+		/* A single vector is transferred as a view, without collecting. */
+		if (outputEdges.size() == 1 && backwardFunction instanceof CollectorTransfer) {
+			pushBackward(outputEdges.getFirst().getBackwardData());
+			return;
+		}
 		Queue<double[]> outputDeltas = new Queue<>();
 		for (Edge edge : outputEdges) outputDeltas.add(edge.getBackwardData());
 		if (outputDeltas.isEmpty()) outputDeltas.add(new double[size]);
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.math.Float16;
+
+/**
+ * A weights node with the weights stored in a 16 bit format, obtained from a dense weights node,
+ * that halves the memory and the bandwidth of the weights of the double node. Has the same edges
+ * and forward contract than the dense node. Weights are decoded inside the kernels, and products
+ * are accumulated in double.
+ * <p>
+ * The backward pass updates the stored weights rounding to the nearest, thus updates smaller than
+ * half the spacing of the format are lost, and the node is meant for inference or fine tuning.
+ * The weights are not exposed as parameter arrays.
+ *
+ * @author Miquel Sas
+ */
+public class CompactWeightsNode extends Node {
+
+	/**
+	 * Replace all dense weights nodes of a network by compact ones.
+	 *
+	 * @param network The network.
+	 * @param format  The format.
+	 * @return The number of nodes replaced.
+	 */
+	public static int compact(Network network, Float16 format) {
+		int count = 0;
+		for (Node node : network.getNodes()) {
+			if (node instanceof WeightsNode) {
+				network.replaceNode(node, new CompactWeightsNode((WeightsNode) node, format));
+				count++;
+			}
+		}
+		if (count > 0) network.validate();
+		return count;
+	}
+
+	/** Format. */
+	private Float16 format;
+	/** Input size. */
+	private int inputSize;
+	/** Output size. */
+	private int outputSize;
+	/** Encoded weights, row major, outputSize x inputSize. */
+	private short[] weights;
+	/** Learning rate. */
+	private double learningRate;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public CompactWeightsNode() {}
+	/**
+	 * @param dense  The dense weights node.
+	 * @param format The storage format.
+	 */
+	public CompactWeightsNode(WeightsNode dense, Float16 format) {
+		this.format = format;
+		this.inputSize = dense.getInputSize();
+		this.outputSize = dense.getOutputSize();
+		this.weights = format.encode(dense.getWeights());
+		this.learningRate = dense.getLearningRate();
+	}
+
+	/**
+	 * @return The format.
+	 */
+	public Float16 getFormat() { return format; }
+	/**
+	 * @return The encoded weights, row major, output size x input size.
+	 */
+	public short[] getWeights() { return weights; }
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != inputSize) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != outputSize) throw new IllegalStateException("Invalid output edge size");
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-weights-compact"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+
+	/**
+	 * Weights come from the dense node, nothing to initialize.
+	 */
+	@Override
+	public void initialize() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() == 0) throw new IllegalStateException("Input edges empty");
+		if (inputEdges.size() > 1) throw new IllegalStateException("More than one input edge");
+		if (inputEdges.getLast().size() != inputSize) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.size() == 0) throw new IllegalStateException("Output edges empty");
+		if (outputEdges.size() > 1) throw new IllegalStateException("More than one output edge");
+		if (outputEdges.getLast().size() != outputSize) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		if (format == null) throw new IllegalStateException("Format not set");
+		if (weights == null || weights.length != inputSize * outputSize) {
+			throw new IllegalStateException("Invalid weights size");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void forward() {
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] output = getForwardBuffer(outputSize);
+		multiply(input, output);
+		pushForward(output);
+	}
+	/**
+	 * Calculates <code>output = W input</code>, as row dot products.
+	 *
+	 * @param input  The input vector.
+	 * @param output The output vector.
+	 */
+	public void multiply(double[] input, double[] output) {
+		Float16 format = this.format;
+		for (int r = 0; r < outputSize; r++) {
+			int base = r * inputSize;
+			double sum = 0;
+			for (int c = 0; c < inputSize; c++) sum += format.decode(weights[base + c]) * input[c];
+			output[r] = sum;
+		}
+	}
+	/**
+	 * Push the input deltas, <code>transpose(W) d</code>, and update the weights.
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] inputDeltas = getBackwardBuffer(inputSize);
+		for (int r = 0; r < outputSize; r++) {
+			double delta = deltas[r];
+			if (delta == 0) continue;
+			int base = r * inputSize;
+			double update = learningRate * delta;
+			for (int c = 0; c < inputSize; c++) {
+				double weight = format.decode(weights[base + c]);
+				inputDeltas[c] += weight * delta;
+				weights[base + c] = format.encode(weight + update * input[c]);
+			}
+		}
+		pushBackward(inputDeltas);
+	}
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.math.FFT;
+import com.mlt.ml.math.Matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A temporal 1D convolution node over a multichannel series. Can have only one input edge and one
+ * output edge.
+ * <p>
+ * The input vector is laid out channel major, <code>x[c * length + t]</code>, and the output
+ * vector filter major, <code>y[f * (length - kernelSize + 1) + t]</code>. The convolution is
+ * "valid" with stride one, that is, the kernel is never applied over padding.
+ * <p>
+ * Two algorithms are available: im2col followed by a matrix product, well suited for short
+ * kernels, and FFT, that performs better for long kernels over long series. Unless forced, the
+ * algorithm is selected at initialization using an operation count estimate or, if benchmarking
+ * is enabled, by timing both on random data.
+ *
+ * @author Miquel Sas
+ */
+public class Convolution1DNode extends Node {
+
+	/**
+	 * Convolution algorithms.
+	 */
+	public enum Algorithm {
+		/** im2col plus matrix product. */
+		DIRECT,
+		/** Products of spectra. */
+		FFT
+	}
+
+	/** Number of input channels. */
+	private int channels;
+	/** Length of the input series per channel. */
+	private int length;
+	/** Number of filters or output channels. */
+	private int filters;
+	/** Kernel size. */
+	private int kernelSize;
+	/** Output length per filter. */
+	private int outputLength;
+
+	/** Weights, filters x channels x kernelSize. */
+	private double[] weights;
+	/** Biases, one per filter. */
+	private double[] biases;
+	/** Learning rate. */
+	private double learningRate = 0.01;
+
+	/** Forced algorithm, null to select it automatically. */
+	private Algorithm forcedAlgorithm;
+	/** A boolean that indicates whether to micro-benchmark the algorithms at initialization. */
+	private boolean benchmark = false;
+	/** Selected algorithm. */
+	private Algorithm algorithm;
+
+	/** im2col buffer, (channels x kernelSize) x outputLength. */
+	private double[] columns;
+	/** Backward im2col buffer. */
+	private double[] columnDeltas;
+	/** Weight deltas buffer. */
+	private double[] weightDeltas;
+
+	/** FFT of size the next power of two of the length. */
+	private FFT fft;
+	/** Spectra of the input channels, real and imaginary. */
+	private double[][] inputRe, inputIm;
+	/** Spectra of the reversed kernels, real and imaginary, filter x channel. */
+	private double[][] kernelRe, kernelIm;
+	/** Spectra of the kernels, real and imaginary, filter x channel, used backward. */
+	private double[][] kernelBwdRe, kernelBwdIm;
+	/** A boolean that indicates that weights changed and kernel spectra must be recalculated. */
+	private boolean kernelsDirty = true;
+	/** Spectra of the output deltas and of the reversed output deltas, filter x n. */
+	private double[][] deltaRe, deltaIm, reversedRe, reversedIm;
+	/** Accumulator buffers. */
+	private double[] accRe, accIm;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public Convolution1DNode() {}
+	/**
+	 * @param channels   Number of input channels.
+	 * @param length     Length of the input series per channel.
+	 * @param filters    Number of filters.
+	 * @param kernelSize Kernel size.
+	 */
+	public Convolution1DNode(int channels, int length, int filters, int kernelSize) {
+		if (channels < 1 || filters < 1 || kernelSize < 1 || kernelSize > length) {
+			throw new IllegalArgumentException("Invalid convolution dimensions");
+		}
+		this.channels = channels;
+		this.length = length;
+		this.filters = filters;
+		this.kernelSize = kernelSize;
+		this.outputLength = length - kernelSize + 1;
+		this.weights = new double[filters * channels * kernelSize];
+		this.biases = new double[filters];
+	}
+
+	/**
+	 * @return The input vector size.
+	 */
+	public int getInputSize() { return channels * length; }
+	/**
+	 * @return The output vector size.
+	 */
+	public int getOutputSize() { return filters * outputLength; }
+
+	/**
+	 * @param algorithm The algorithm to force, or null to select it automatically.
+	 */
+	public void setAlgorithm(Algorithm algorithm) {
+		this.forcedAlgorithm = algorithm;
+		this.algorithm = algorithm;
+	}
+	/**
+	 * @return The algorithm in use, null if not yet selected.
+	 */
+	public Algorithm getAlgorithm() { return algorithm; }
+	/**
+	 * @param benchmark A boolean that indicates whether the automatic selection should time both
+	 *                  algorithms instead of estimating their cost.
+	 */
+	public void setBenchmark(boolean benchmark) { this.benchmark = benchmark; }
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+	/**
+	 * @return The weights, filters x channels x kernelSize.
+	 */
+	public double[] getWeights() { return weights; }
+	/**
+	 * @return The biases.
+	 */
+	public double[] getBiases() { return biases; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != getInputSize()) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != getOutputSize()) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-convolution-1d"; }
+	/**
+	 * Kernel spectra are recomputed on the next pass, as the caller may modify the parameters.
+	 */
+	@Override
+	public double[][] getParameters() {
+		kernelsDirty = true;
+		return new double[][] { weights, biases };
+	}
+	/**
+	 * Adopt the arrays.
+	 */
+	@Override
+	public void setParameters(double[][] parameters) {
+		checkParameters(parameters);
+		weights = parameters[0];
+		biases = parameters[1];
+		kernelsDirty = true;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+
+	/**
+	 * Initialize weights with scaled gaussians and select the algorithm.
+	 */
+	@Override
+	public void initialize() {
+		Random random = new Random();
+		double scale = Math.sqrt(2.0 / (channels * kernelSize));
+		for (int i = 0; i < weights.length; i++) weights[i] = random.nextGaussian() * scale;
+		for (int i = 0; i < biases.length; i++) biases[i] = 0;
+		kernelsDirty = true;
+		algorithm = forcedAlgorithm;
+		if (algorithm == null) algorithm = selectAlgorithm();
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() == 0) throw new IllegalStateException("Input edges empty");
+		if (inputEdges.size() > 1) throw new IllegalStateException("More than one input edge");
+		if (inputEdges.getLast().size() != getInputSize()) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.size() == 0) throw new IllegalStateException("Output edges empty");
+		if (outputEdges.size() > 1) throw new IllegalStateException("More than one output edge");
+		if (outputEdges.getLast().size() != getOutputSize()) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		if (weights.length != filters * channels * kernelSize) {
+			throw new IllegalStateException("Invalid weights size");
+		}
+	}
+
+	/**
+	 * Convolve the input series and push the filter outputs.
+	 */
+	@Override
+	public void forward() {
+		if (algorithm == null) algorithm = selectAlgorithm();
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] output = getForwardBuffer(getOutputSize());
+		if (algorithm == Algorithm.FFT) {
+			forwardFFT(input, output);
+		} else {
+			forwardDirect(input, output);
+		}
+		pushForward(output);
+	}
+	/**
+	 * Calculate weight and input deltas, update the weights and biases, and push the input deltas.
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] inputDeltas = getBackwardBuffer(getInputSize());
+		if (weightDeltas == null) weightDeltas = new double[weights.length];
+		if (algorithm == Algorithm.FFT) {
+			backwardFFT(input, deltas, inputDeltas);
+		} else {
+			backwardDirect(input, deltas, inputDeltas);
+		}
+		for (int i = 0; i < weights.length; i++) weights[i] += learningRate * weightDeltas[i];
+		for (int f = 0; f < filters; f++) {
+			double sum = 0;
+			int base = f * outputLength;
+			for (int t = 0; t < outputLength; t++) sum += deltas[base + t];
+			biases[f] += learningRate * sum;
+		}
+		kernelsDirty = true;
+		pushBackward(inputDeltas);
+	}
+
+	/**
+	 * @return The algorithm estimated or measured as the fastest.
+	 */
+	private Algorithm selectAlgorithm() {
+		if (benchmark) {
+			long direct = time(Algorithm.DIRECT);
+			long fft = time(Algorithm.FFT);
+			return fft < direct ? Algorithm.FFT : Algorithm.DIRECT;
+		}
+		int n = FFT.nextPowerOfTwo(length);
+		int log = Integer.numberOfTrailingZeros(n);
+		double costDirect = (double) filters * channels * kernelSize * outputLength;
+		/*
+		 * Input and output transforms, spectra products and, since weights change every backward
+		 * pass while training, the transforms of the kernels.
+		 */
+		double costFFT = 5.0 * n * log * (channels + filters + (double) filters * channels);
+		costFFT += 8.0 * filters * channels * n;
+		return costFFT < costDirect ? Algorithm.FFT : Algorithm.DIRECT;
+	}
+	/**
+	 * @param algorithm The algorithm to time.
+	 * @return The best time in nanos of a few forward calculations over random data.
+	 */
+	private long time(Algorithm algorithm) {
+		Random random = new Random(0);
+		double[] input = new double[getInputSize()];
+		for (int i = 0; i < input.length; i++) input[i] = random.nextDouble();
+		double[] output = new double[getOutputSize()];
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 8; i++) {
+			kernelsDirty = true;
+			long start = System.nanoTime();
+			if (algorithm == Algorithm.FFT) forwardFFT(input, output);
+			else forwardDirect(input, output);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	/**
+	 * Fill the im2col buffer from the input series.
+	 *
+	 * @param input The input series.
+	 */
+	private void im2col(double[] input) {
+		if (columns == null) columns = new double[channels * kernelSize * outputLength];
+		for (int c = 0; c < channels; c++) {
+			for (int k = 0; k < kernelSize; k++) {
+				System.arraycopy(
+					input, c * length + k, columns, (c * kernelSize + k) * outputLength, outputLength);
+			}
+		}
+	}
+	/**
+	 * @param input  Input series.
+	 * @param output Output series.
+	 */
+	private void forwardDirect(double[] input, double[] output) {
+		im2col(input);
+		Matrix.multiply(
+			weights, columns, output, filters, channels * kernelSize, outputLength, false);
+		for (int f = 0; f < filters; f++) {
+			int base = f * outputLength;
+			for (int t = 0; t < outputLength; t++) output[base + t] += biases[f];
+		}
+	}
+	/**
+	 * @param input       Input series.
+	 * @param deltas      Output deltas.
+	 * @param inputDeltas Input deltas to calculate.
+	 */
+	private void backwardDirect(double[] input, double[] deltas, double[] inputDeltas) {
+		int rows = channels * kernelSize;
+		im2col(input);
+		Matrix.multiplyTransposeB(deltas, columns, weightDeltas, filters, outputLength, rows, false);
+		if (columnDeltas == null) columnDeltas = new double[rows * outputLength];
+		Matrix.multiplyTransposeA(weights, deltas, columnDeltas, rows, filters, outputLength, false);
+		/* col2im. */
+		for (int c = 0; c < channels; c++) {
+			for (int k = 0; k < kernelSize; k++) {
+				int src = (c * kernelSize + k) * outputLength;
+				int dst = c * length + k;
+				for (int t = 0; t < outputLength; t++) inputDeltas[dst + t] += columnDeltas[src + t];
+			}
+		}
+	}
+
+	/**
+	 * Allocate the FFT buffers if not already allocated.
+	 */
+	private void allocateFFT() {
+		if (fft != null) return;
+		int n = FFT.nextPowerOfTwo(length);
+		fft = new FFT(n);
+		inputRe = new double[channels][n];
+		inputIm = new double[channels][n];
+		kernelRe = new double[filters * channels][n];
+		kernelIm = new double[filters * channels][n];
+		accRe = new double[n];
+		accIm = new double[n];
+	}
+	/**
+	 * Transform the input channels.
+	 *
+	 * @param input The input series.
+	 */
+	private void transformInput(double[] input) {
+		int n = fft.size();
+		for (int c = 0; c < channels; c++) {
+			double[] re = inputRe[c];
+			double[] im = inputIm[c];
+			System.arraycopy(input, c * length, re, 0, length);
+			Arrays.fill(re, length, n, 0);
+			Arrays.fill(im, 0);
+			fft.transform(re, im);
+		}
+	}
+	/**
+	 * Transform the kernels, reversed for the forward correlation and as is for the backward
+	 * convolution, if weights changed.
+	 *
+	 * @param backward A boolean that indicates whether the backward spectra are required.
+	 */
+	private void transformKernels(boolean backward) {
+		int n = fft.size();
+		if (kernelsDirty) {
+			for (int fc = 0; fc < filters * channels; fc++) {
+				double[] re = kernelRe[fc];
+				double[] im = kernelIm[fc];
+				Arrays.fill(re, 0);
+				Arrays.fill(im, 0);
+				int base = fc * kernelSize;
+				for (int k = 0; k < kernelSize; k++) re[kernelSize - 1 - k] = weights[base + k];
+				fft.transform(re, im);
+			}
+		}
+		if (backward) {
+			if (kernelBwdRe == null) {
+				kernelBwdRe = new double[filters * channels][n];
+				kernelBwdIm = new double[filters * channels][n];
+			}
+			for (int fc = 0; fc < filters * channels; fc++) {
+				double[] re = kernelBwdRe[fc];
+				double[] im = kernelBwdIm[fc];
+				Arrays.fill(re, 0);
+				Arrays.fill(im, 0);
+				System.arraycopy(weights, fc * kernelSize, re, 0, kernelSize);
+				fft.transform(re, im);
+			}
+		}
+		kernelsDirty = false;
+	}
+	/**
+	 * @param input  Input series.
+	 * @param output Output series.
+	 */
+	private void forwardFFT(double[] input, double[] output) {
+		allocateFFT();
+		transformInput(input);
+		transformKernels(false);
+		for (int f = 0; f < filters; f++) {
+			Arrays.fill(accRe, 0);
+			Arrays.fill(accIm, 0);
+			for (int c = 0; c < channels; c++) {
+				int fc = f * channels + c;
+				multiplyAccumulate(inputRe[c], inputIm[c], kernelRe[fc], kernelIm[fc]);
+			}
+			fft.inverse(accRe, accIm);
+			/* Linear correlation at lag t sits at index t + kernelSize - 1 of the convolution. */
+			int base = f * outputLength;
+			for (int t = 0; t < outputLength; t++) {
+				output[base + t] = accRe[t + kernelSize - 1] + biases[f];
+			}
+		}
+	}
+	/**
+	 * @param input       Input series.
+	 * @param deltas      Output deltas.
+	 * @param inputDeltas Input deltas to calculate.
+	 */
+	private void backwardFFT(double[] input, double[] deltas, double[] inputDeltas) {
+		allocateFFT();
+		int n = fft.size();
+		transformInput(input);
+		transformKernels(true);
+		if (deltaRe == null) {
+			deltaRe = new double[filters][n];
+			deltaIm = new double[filters][n];
+			reversedRe = new double[filters][n];
+			reversedIm = new double[filters][n];
+		}
+		for (int f = 0; f < filters; f++) {
+			Arrays.fill(deltaRe[f], 0);
+			Arrays.fill(deltaIm[f], 0);
+			Arrays.fill(reversedRe[f], 0);
+			Arrays.fill(reversedIm[f], 0);
+			int base = f * outputLength;
+			for (int t = 0; t < outputLength; t++) {
+				deltaRe[f][t] = deltas[base + t];
+				reversedRe[f][outputLength - 1 - t] = deltas[base + t];
+			}
+			fft.transform(deltaRe[f], deltaIm[f]);
+			fft.transform(reversedRe[f], reversedIm[f]);
+		}
+		/* Input deltas: full convolution of the deltas with the kernels, summed over filters. */
+		for (int c = 0; c < channels; c++) {
+			Arrays.fill(accRe, 0);
+			Arrays.fill(accIm, 0);
+			for (int f = 0; f < filters; f++) {
+				int fc = f * channels + c;
+				multiplyAccumulate(deltaRe[f], deltaIm[f], kernelBwdRe[fc], kernelBwdIm[fc]);
+			}
+			fft.inverse(accRe, accIm);
+			System.arraycopy(accRe, 0, inputDeltas, c * length, length);
+		}
+		/* Weight deltas: correlation of the input with the deltas at lags 0 to kernelSize - 1. */
+		for (int f = 0; f < filters; f++) {
+			for (int c = 0; c < channels; c++) {
+				Arrays.fill(accRe, 0);
+				Arrays.fill(accIm, 0);
+				multiplyAccumulate(inputRe[c], inputIm[c], reversedRe[f], reversedIm[f]);
+				fft.inverse(accRe, accIm);
+				int base = (f * channels + c) * kernelSize;
+				for (int k = 0; k < kernelSize; k++) {
+					weightDeltas[base + k] = accRe[k + outputLength - 1];
+				}
+			}
+		}
+	}
+	/**
+	 * Accumulate the complex product of a and b into the accumulator buffers.
+	 *
+	 * @param aRe Real parts of a.
+	 * @param aIm Imaginary parts of a.
+	 * @param bRe Real parts of b.
+	 * @param bIm Imaginary parts of b.
+	 */
+	private void multiplyAccumulate(double[] aRe, double[] aIm, double[] bRe, double[] bIm) {
+		int n = fft.size();
+		for (int i = 0; i < n; i++) {
+			accRe[i] += aRe[i] * bRe[i] - aIm[i] * bIm[i];
+			accIm[i] += aRe[i] * bIm[i] + aIm[i] * bRe[i];
+		}
+	}
+}
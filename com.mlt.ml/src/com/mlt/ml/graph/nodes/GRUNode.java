@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+/**
+ * Fused gated recurrent unit node. The rows of the concatenated weights are, in order, the reset
+ * and update gates, and the candidate. The reset gate scales the recurrent part of the candidate
+ * pre-activation, <code>n = tanh(Wx x + b + r * (Wh h))</code>, which is why the base node returns
+ * both parts separately.
+ *
+ * @author Miquel Sas
+ */
+public class GRUNode extends RecurrentNode {
+
+	/** Ring of gate activations per step, reset, update and candidate. */
+	private double[][] gates;
+	/** Ring of the recurrent part of the candidate pre-activation per step. */
+	private double[][] candidateHidden;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public GRUNode() {}
+	/**
+	 * @param inputSize  Input size.
+	 * @param hiddenSize Hidden size.
+	 * @param steps      Number of time steps of the truncated back propagation.
+	 */
+	public GRUNode(int inputSize, int hiddenSize, int steps) {
+		super(inputSize, hiddenSize, steps);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-gru"; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getGates() { return 3; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void allocate() {
+		gates = new double[steps][3 * hiddenSize];
+		candidateHidden = new double[steps][hiddenSize];
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void clearState() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void activate(
+		int slot, double[] preInput, double[] preHidden, double[] previous, double[] hidden) {
+		int h = hiddenSize;
+		double[] g = gates[slot];
+		for (int r = 0; r < 2 * h; r++) g[r] = 1 / (1 + Math.exp(-(preInput[r] + preHidden[r])));
+		for (int j = 0; j < h; j++) {
+			candidateHidden[slot][j] = preHidden[2 * h + j];
+			g[2 * h + j] = Math.tanh(preInput[2 * h + j] + g[j] * preHidden[2 * h + j]);
+			double update = g[h + j];
+			hidden[j] = (1 - update) * g[2 * h + j] + update * previous[j];
+		}
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void startBackward() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void derivate(
+		int slot,
+		double[] hiddenDeltas,
+		double[] previous,
+		double[] deltasInput,
+		double[] deltasHidden,
+		double[] previousDeltas) {
+		int h = hiddenSize;
+		double[] g = gates[slot];
+		for (int j = 0; j < h; j++) {
+			double reset = g[j];
+			double update = g[h + j];
+			double candidate = g[2 * h + j];
+			double delta = hiddenDeltas[j];
+			double candidateDelta = delta * (1 - update) * (1 - candidate * candidate);
+			double resetDelta = candidateDelta * candidateHidden[slot][j] * reset * (1 - reset);
+			double updateDelta = delta * (previous[j] - candidate) * update * (1 - update);
+			deltasInput[j] = resetDelta;
+			deltasHidden[j] = resetDelta;
+			deltasInput[h + j] = updateDelta;
+			deltasHidden[h + j] = updateDelta;
+			deltasInput[2 * h + j] = candidateDelta;
+			deltasHidden[2 * h + j] = candidateDelta * reset;
+			previousDeltas[j] = delta * update;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import java.util.Arrays;
+
+/**
+ * Fused long short-term memory node. The rows of the concatenated weights are, in order, the
+ * input, forget and output gates, and the cell candidate.
+ *
+ * @author Miquel Sas
+ */
+public class LSTMNode extends RecurrentNode {
+
+	/** Ring of gate activations per step, input, forget, output and candidate. */
+	private double[][] gates;
+	/** Ring of previous cell states per step. */
+	private double[][] previousCells;
+	/** Ring of the hyperbolic tangent of the cell states per step. */
+	private double[][] tanhCells;
+	/** Current cell state. */
+	private double[] cell;
+	/** Cell deltas carried back through the steps. */
+	private double[] cellDeltas;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public LSTMNode() {}
+	/**
+	 * @param inputSize  Input size.
+	 * @param hiddenSize Hidden size.
+	 * @param steps      Number of time steps of the truncated back propagation.
+	 */
+	public LSTMNode(int inputSize, int hiddenSize, int steps) {
+		super(inputSize, hiddenSize, steps);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-lstm"; }
+
+	/**
+	 * Initialize weights and set the forget gate biases to one.
+	 */
+	@Override
+	public void initialize() {
+		super.initialize();
+		int columns = getColumns();
+		for (int j = 0; j < hiddenSize; j++) {
+			weights[(hiddenSize + j) * columns + columns - 1] = 1.0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getGates() { return 4; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void allocate() {
+		gates = new double[steps][4 * hiddenSize];
+		previousCells = new double[steps][hiddenSize];
+		tanhCells = new double[steps][hiddenSize];
+		cell = new double[hiddenSize];
+		cellDeltas = new double[hiddenSize];
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void clearState() {
+		Arrays.fill(cell, 0);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void activate(
+		int slot, double[] preInput, double[] preHidden, double[] previous, double[] hidden) {
+		int h = hiddenSize;
+		double[] g = gates[slot];
+		for (int r = 0; r < 4 * h; r++) {
+			double a = preInput[r] + preHidden[r];
+			g[r] = (r < 3 * h) ? 1 / (1 + Math.exp(-a)) : Math.tanh(a);
+		}
+		for (int j = 0; j < h; j++) {
+			previousCells[slot][j] = cell[j];
+			cell[j] = g[h + j] * cell[j] + g[j] * g[3 * h + j];
+			tanhCells[slot][j] = Math.tanh(cell[j]);
+			hidden[j] = g[2 * h + j] * tanhCells[slot][j];
+		}
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void startBackward() {
+		Arrays.fill(cellDeltas, 0);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void derivate(
+		int slot,
+		double[] hiddenDeltas,
+		double[] previous,
+		double[] deltasInput,
+		double[] deltasHidden,
+		double[] previousDeltas) {
+		int h = hiddenSize;
+		double[] g = gates[slot];
+		for (int j = 0; j < h; j++) {
+			double in = g[j];
+			double forget = g[h + j];
+			double out = g[2 * h + j];
+			double candidate = g[3 * h + j];
+			double tanhCell = tanhCells[slot][j];
+			double cellDelta = hiddenDeltas[j] * out * (1 - tanhCell * tanhCell) + cellDeltas[j];
+			deltasInput[j] = cellDelta * candidate * in * (1 - in);
+			deltasInput[h + j] = cellDelta * previousCells[slot][j] * forget * (1 - forget);
+			deltasInput[2 * h + j] = hiddenDeltas[j] * tanhCell * out * (1 - out);
+			deltasInput[3 * h + j] = cellDelta * in * (1 - candidate * candidate);
+			cellDeltas[j] = cellDelta * forget;
+		}
+		System.arraycopy(deltasInput, 0, deltasHidden, 0, 4 * h);
+	}
+}
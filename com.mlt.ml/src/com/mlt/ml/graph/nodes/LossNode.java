@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.function.Loss;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+
+/**
+ * A loss node, placed at the end of the graph. Can have only one input edge and one output edge,
+ * both of the same size.
+ * <p>
+ * Forward, the input values are transferred to the output edge, that normally is an output edge
+ * of the network. Backward, the data of the output edge is not a delta but the target values, and
+ * the node pushes to the input edge the deltas that the loss function calculates. Deltas are
+ * calculated into a buffer owned by the node, thus no allocation is done per sample.
+ *
+ * @author Miquel Sas
+ */
+public class LossNode extends Node {
+
+	/** Size of values. */
+	protected int size;
+	/** Loss function. */
+	protected Loss loss;
+	/** Deltas buffer. */
+	protected double[] deltas;
+	/** Loss of the last backward pass. */
+	protected double lastLoss;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public LossNode() {}
+	/**
+	 * @param size The size of values that flow throw the node.
+	 * @param loss The loss function.
+	 */
+	public LossNode(int size, Loss loss) {
+		this.size = size;
+		this.loss = loss;
+	}
+
+	/**
+	 * @return The loss function.
+	 */
+	public Loss getLoss() { return loss; }
+	/**
+	 * @return The loss calculated in the last backward pass.
+	 */
+	public double getLastLoss() { return lastLoss; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != size) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != size) throw new IllegalStateException("Invalid output edge size");
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-loss"; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() == 0) throw new IllegalStateException("Input edges empty");
+		if (inputEdges.size() > 1) throw new IllegalStateException("More than one input edge");
+		if (inputEdges.getLast().size() != size) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.size() == 0) throw new IllegalStateException("Output edges empty");
+		if (outputEdges.size() > 1) throw new IllegalStateException("More than one output edge");
+		if (outputEdges.getLast().size() != size) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		if (loss == null) throw new IllegalStateException("Loss is null");
+	}
+
+	/**
+	 * Transfer the input values to the output edge.
+	 */
+	@Override
+	public void forward() {
+		pushForward(inputEdges.getLast().getForwardData());
+	}
+	/**
+	 * Read the targets from the output edge, calculate the loss and push the deltas.
+	 */
+	@Override
+	public void backward() {
+		double[] targets = outputEdges.getLast().getBackwardData();
+		double[] outputs = outputEdges.getLast().getForwardData();
+		if (deltas == null) deltas = new double[size];
+		lastLoss = loss.loss(outputs, targets);
+		loss.deltas(outputs, targets, deltas);
+		pushBackward(deltas);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.data.Statistics;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+
+/**
+ * A normalization node, <code>y = (x - shift) * scale</code> per column, with the shift and scale
+ * taken from the statistics of the training data, so that normalization is part of the model.
+ * Parameters are not trained.
+ *
+ * @author Miquel Sas
+ */
+public class NormalizationNode extends Node {
+
+	/**
+	 * Normalization methods.
+	 */
+	public enum Method {
+		/** Zero mean and unit standard deviation. */
+		STANDARD,
+		/** Minimum to zero and maximum to one. */
+		RANGE
+	}
+
+	/** Shift per column. */
+	private double[] shift;
+	/** Scale per column. */
+	private double[] scale;
+
+	/**
+	 * Constructor used for restore.
+	 */
+	public NormalizationNode() {}
+	/**
+	 * @param statistics The statistics of the training data.
+	 * @param method     The method.
+	 */
+	public NormalizationNode(Statistics statistics, Method method) {
+		int size = statistics.getSize();
+		shift = new double[size];
+		scale = new double[size];
+		for (int i = 0; i < size; i++) {
+			double spread;
+			if (method == Method.STANDARD) {
+				shift[i] = statistics.getMean(i);
+				spread = statistics.getStdDev(i);
+			} else {
+				shift[i] = statistics.getMinimum(i);
+				spread = statistics.getMaximum(i) - statistics.getMinimum(i);
+			}
+			/* Constant columns are only shifted. */
+			scale[i] = spread > 0 ? 1.0 / spread : 1.0;
+		}
+	}
+
+	/**
+	 * @return The shift per column.
+	 */
+	public double[] getShift() { return shift; }
+	/**
+	 * @return The scale per column.
+	 */
+	public double[] getScale() { return scale; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != shift.length) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != shift.length) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-normalization"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+
+	/**
+	 * Shift and scale come from the statistics, nothing to initialize.
+	 */
+	@Override
+	public void initialize() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() != 1) throw new IllegalStateException("One input edge required");
+		if (outputEdges.size() != 1) throw new IllegalStateException("One output edge required");
+		if (shift.length != scale.length) throw new IllegalStateException("Invalid scale size");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void forward() {
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] output = getForwardBuffer(shift.length);
+		for (int i = 0; i < output.length; i++) output[i] = (input[i] - shift[i]) * scale[i];
+		pushForward(output);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] inputDeltas = getBackwardBuffer(scale.length);
+		for (int i = 0; i < inputDeltas.length; i++) inputDeltas[i] = deltas[i] * scale[i];
+		pushBackward(inputDeltas);
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Base of fused recurrent nodes. Can have only one input edge, that receives the input of a time
+ * step, and one output edge, to which the hidden state of the step is pushed.
+ * <p>
+ * All gates are computed with a single pass over one concatenated weights matrix, of
+ * <code>gates x hiddenSize</code> rows by <code>inputSize + hiddenSize + 1</code> columns, the
+ * last column being the bias. The pre-activations of each row are returned split in the input
+ * plus bias part and the recurrent part, so that gates that scale the recurrent part, like the
+ * GRU candidate, can still be fused.
+ * <p>
+ * The concatenated inputs of the last <code>steps</code> time steps are kept in preallocated ring
+ * buffers, and each backward pass propagates the deltas of the current step through them, that
+ * is, truncated back propagation through time. Only the input deltas of the current step are
+ * pushed to the input edge.
+ *
+ * @author Miquel Sas
+ */
+public abstract class RecurrentNode extends Node {
+
+	/** Input size. */
+	protected int inputSize;
+	/** Hidden size. */
+	protected int hiddenSize;
+	/** Number of time steps of the truncated back propagation. */
+	protected int steps;
+	/** Learning rate. */
+	private double learningRate = 0.01;
+
+	/** Concatenated weights, (gates x hiddenSize) x (inputSize + hiddenSize + 1). */
+	protected double[] weights;
+	/** Weight deltas accumulated along a backward pass. */
+	private double[] weightDeltas;
+
+	/** Ring of concatenated inputs, [x, h(t-1), 1], per step. */
+	private double[][] inputs;
+	/** Current hidden state. */
+	private double[] hidden;
+	/** Previous hidden state work buffer. */
+	private double[] previous;
+	/** Index of the slot of the last step. */
+	private int head = -1;
+	/** Number of valid slots. */
+	private int count = 0;
+
+	/** Pre-activations buffers, input plus bias part and recurrent part. */
+	private double[] preInput, preHidden;
+	/** Backward buffers. */
+	private double[] deltasInput, deltasHidden, hiddenDeltas, previousDeltas, inputDeltas;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public RecurrentNode() {}
+	/**
+	 * @param inputSize  Input size.
+	 * @param hiddenSize Hidden size.
+	 * @param steps      Number of time steps of the truncated back propagation.
+	 */
+	public RecurrentNode(int inputSize, int hiddenSize, int steps) {
+		if (inputSize < 1 || hiddenSize < 1 || steps < 1) {
+			throw new IllegalArgumentException("Invalid recurrent dimensions");
+		}
+		this.inputSize = inputSize;
+		this.hiddenSize = hiddenSize;
+		this.steps = steps;
+		this.weights = new double[getGates() * hiddenSize * getColumns()];
+	}
+
+	/**
+	 * @return The number of gates, each of hidden size.
+	 */
+	protected abstract int getGates();
+	/**
+	 * Allocate the ring buffers of the extender.
+	 */
+	protected abstract void allocate();
+	/**
+	 * Clear the recurrent state of the extender.
+	 */
+	protected abstract void clearState();
+	/**
+	 * Apply the gate functions to the pre-activations of a step and calculate the hidden state.
+	 *
+	 * @param slot      The ring slot of the step.
+	 * @param preInput  Pre-activations, input plus bias part, per row.
+	 * @param preHidden Pre-activations, recurrent part, per row.
+	 * @param previous  The previous hidden state.
+	 * @param hidden    The hidden state to calculate.
+	 */
+	protected abstract void activate(
+		int slot, double[] preInput, double[] preHidden, double[] previous, double[] hidden);
+	/**
+	 * Start a walk back through the steps.
+	 */
+	protected abstract void startBackward();
+	/**
+	 * Calculate the pre-activation deltas of a step given the deltas of its hidden state.
+	 *
+	 * @param slot           The ring slot of the step.
+	 * @param hiddenDeltas   Deltas of the hidden state of the step.
+	 * @param previous       The previous hidden state.
+	 * @param deltasInput    Pre-activation deltas to calculate, input plus bias part, per row.
+	 * @param deltasHidden   Pre-activation deltas to calculate, recurrent part, per row.
+	 * @param previousDeltas Direct deltas of the previous hidden state to calculate, those that do
+	 *                       not flow through the weights.
+	 */
+	protected abstract void derivate(
+		int slot,
+		double[] hiddenDeltas,
+		double[] previous,
+		double[] deltasInput,
+		double[] deltasHidden,
+		double[] previousDeltas);
+
+	/**
+	 * @return The number of columns of the weights matrix.
+	 */
+	protected int getColumns() { return inputSize + hiddenSize + 1; }
+	/**
+	 * @return The concatenated weights.
+	 */
+	public double[] getWeights() { return weights; }
+	/**
+	 * The input and the hidden state are copied to the ring and the pushed vectors are the planned
+	 * buffers.
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double[][] getParameters() { return new double[][] { weights }; }
+	/**
+	 * Adopt the arrays.
+	 */
+	@Override
+	public void setParameters(double[][] parameters) {
+		checkParameters(parameters);
+		weights = parameters[0];
+	}
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+	/**
+	 * @param back Number of steps back.
+	 * @return The ring slot of the step that is <code>back</code> steps before the last one.
+	 */
+	protected int slot(int back) { return (head - back + steps) % steps; }
+
+	/**
+	 * Clear the recurrent state and the step history, normally at the start of a sequence.
+	 */
+	public void resetState() {
+		head = -1;
+		count = 0;
+		if (inputs != null) {
+			Arrays.fill(hidden, 0);
+			clearState();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != inputSize) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != hiddenSize) throw new IllegalStateException("Invalid output edge size");
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * Initialize weights uniformly in the range of the inverse square root of the hidden size.
+	 */
+	@Override
+	public void initialize() {
+		Random random = new Random();
+		double range = 1.0 / Math.sqrt(hiddenSize);
+		for (int i = 0; i < weights.length; i++) weights[i] = (random.nextDouble() * 2 - 1) * range;
+		resetState();
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() == 0) throw new IllegalStateException("Input edges empty");
+		if (inputEdges.size() > 1) throw new IllegalStateException("More than one input edge");
+		if (inputEdges.getLast().size() != inputSize) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.size() == 0) throw new IllegalStateException("Output edges empty");
+		if (outputEdges.size() > 1) throw new IllegalStateException("More than one output edge");
+		if (outputEdges.getLast().size() != hiddenSize) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		if (weights.length != getGates() * hiddenSize * getColumns()) {
+			throw new IllegalStateException("Invalid weights size");
+		}
+	}
+
+	/**
+	 * Advance one time step and push the hidden state.
+	 */
+	@Override
+	public void forward() {
+		if (inputs == null) allocateBuffers();
+		head = (head + 1) % steps;
+		count = Math.min(count + 1, steps);
+
+		double[] z = inputs[head];
+		System.arraycopy(inputEdges.getLast().getForwardData(), 0, z, 0, inputSize);
+		System.arraycopy(hidden, 0, z, inputSize, hiddenSize);
+		System.arraycopy(hidden, 0, previous, 0, hiddenSize);
+		z[inputSize + hiddenSize] = 1;
+
+		/* Single pass over the concatenated weights. */
+		int columns = getColumns();
+		int rows = getGates() * hiddenSize;
+		for (int r = 0; r < rows; r++) {
+			int base = r * columns;
+			double sumInput = weights[base + inputSize + hiddenSize];
+			for (int i = 0; i < inputSize; i++) sumInput += weights[base + i] * z[i];
+			double sumHidden = 0;
+			for (int i = inputSize; i < inputSize + hiddenSize; i++) {
+				sumHidden += weights[base + i] * z[i];
+			}
+			preInput[r] = sumInput;
+			preHidden[r] = sumHidden;
+		}
+		activate(head, preInput, preHidden, previous, hidden);
+		double[] output = getForwardBuffer(hiddenSize);
+		System.arraycopy(hidden, 0, output, 0, hiddenSize);
+		pushForward(output);
+	}
+	/**
+	 * Propagate the deltas of the current step back through the stored steps, update the weights
+	 * and push the input deltas of the current step.
+	 */
+	@Override
+	public void backward() {
+		if (count == 0) throw new IllegalStateException("Backward without forward");
+		int columns = getColumns();
+		int rows = getGates() * hiddenSize;
+		Arrays.fill(weightDeltas, 0);
+		System.arraycopy(outputEdges.getLast().getBackwardData(), 0, hiddenDeltas, 0, hiddenSize);
+		startBackward();
+		for (int back = 0; back < count; back++) {
+			int slot = slot(back);
+			double[] z = inputs[slot];
+			System.arraycopy(z, inputSize, previous, 0, hiddenSize);
+			Arrays.fill(previousDeltas, 0);
+			derivate(slot, hiddenDeltas, previous, deltasInput, deltasHidden, previousDeltas);
+			if (back == 0) Arrays.fill(inputDeltas, 0);
+			for (int r = 0; r < rows; r++) {
+				int base = r * columns;
+				double dx = deltasInput[r];
+				double dh = deltasHidden[r];
+				for (int i = 0; i < inputSize; i++) {
+					weightDeltas[base + i] += dx * z[i];
+					if (back == 0) inputDeltas[i] += dx * weights[base + i];
+				}
+				for (int i = inputSize; i < inputSize + hiddenSize; i++) {
+					weightDeltas[base + i] += dh * z[i];
+					previousDeltas[i - inputSize] += dh * weights[base + i];
+				}
+				weightDeltas[base + inputSize + hiddenSize] += dx;
+			}
+			System.arraycopy(previousDeltas, 0, hiddenDeltas, 0, hiddenSize);
+		}
+		for (int i = 0; i < weights.length; i++) weights[i] += learningRate * weightDeltas[i];
+		double[] output = getBackwardBuffer(inputSize);
+		System.arraycopy(inputDeltas, 0, output, 0, inputSize);
+		pushBackward(output);
+	}
+
+	/**
+	 * Allocate the ring and work buffers.
+	 */
+	private void allocateBuffers() {
+		int rows = getGates() * hiddenSize;
+		inputs = new double[steps][getColumns()];
+		hidden = new double[hiddenSize];
+		previous = new double[hiddenSize];
+		preInput = new double[rows];
+		preHidden = new double[rows];
+		deltasInput = new double[rows];
+		deltasHidden = new double[rows];
+		hiddenDeltas = new double[hiddenSize];
+		previousDeltas = new double[hiddenSize];
+		inputDeltas = new double[inputSize];
+		weightDeltas = new double[weights.length];
+		allocate();
+	}
+}
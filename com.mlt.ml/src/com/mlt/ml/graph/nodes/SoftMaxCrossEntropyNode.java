@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.function.loss.LossCrossEntropy;
+
+/**
+ * Fused soft-max and cross-entropy loss node. The input edge carries the triggers (logits) and the
+ * soft-max probabilities are pushed to the output edge.
+ * <p>
+ * The soft-max subtracts the maximum trigger before exponentiation, and the loss is calculated
+ * from the log-sum-exp, thus there is no overflow nor logarithm of zero. Backward, loss and the
+ * deltas of the triggers, <code>target - probability</code>, are calculated in a single pass
+ * directly into the buffer pushed to the input edge. This is the delta that a soft-max
+ * activation node followed by a cross-entropy loss node assumes but cannot calculate, since the
+ * soft-max derivatives are not element wise.
+ *
+ * @author Miquel Sas
+ */
+public class SoftMaxCrossEntropyNode extends LossNode {
+
+	/** Maximum trigger of the last forward pass. */
+	private double maxTrigger;
+	/** Logarithm of the sum of the shifted exponentials of the last forward pass. */
+	private double logSum;
+	/** Probabilities pushed forward, reused each pass as the deltas are. */
+	private double[] probabilities;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public SoftMaxCrossEntropyNode() {}
+	/**
+	 * @param size The size of values that flow throw the node.
+	 */
+	public SoftMaxCrossEntropyNode(int size) {
+		super(size, new LossCrossEntropy());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-soft-max-cross-entropy"; }
+
+	/**
+	 * Calculate the soft-max probabilities and push them.
+	 */
+	@Override
+	public void forward() {
+		double[] triggers = inputEdges.getLast().getForwardData();
+		if (probabilities == null) probabilities = new double[size];
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) if (triggers[i] > max) max = triggers[i];
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			probabilities[i] = Math.exp(triggers[i] - max);
+			sum += probabilities[i];
+		}
+		for (int i = 0; i < size; i++) probabilities[i] /= sum;
+		maxTrigger = max;
+		logSum = Math.log(sum);
+		pushForward(probabilities);
+	}
+	/**
+	 * Calculate the loss and the trigger deltas in a single pass.
+	 */
+	@Override
+	public void backward() {
+		double[] targets = outputEdges.getLast().getBackwardData();
+		double[] probabilities = outputEdges.getLast().getForwardData();
+		double[] triggers = inputEdges.getLast().getForwardData();
+		if (deltas == null) deltas = new double[size];
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			double target = targets[i];
+			/* log(p) = trigger - max - log(sum(exp(trigger - max))) */
+			if (target != 0) sum -= target * (triggers[i] - maxTrigger - logSum);
+			deltas[i] = target - probabilities[i];
+		}
+		lastLoss = sum;
+		pushBackward(deltas);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.math.SparseMatrix;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A weights node with the weights stored in compressed sparse row format, obtained pruning a
+ * dense weights node. Has the same edges and forward contract than the dense node. The backward
+ * pass only updates the non zero weights, so the sparsity pattern is kept.
+ *
+ * @author Miquel Sas
+ */
+public class SparseWeightsNode extends Node {
+
+	/** Sparse weights, output size x input size. */
+	private SparseMatrix weights;
+	/** Learning rate. */
+	private double learningRate;
+	/** Pool of the parallel kernel, null to run sequentially. */
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public SparseWeightsNode() {}
+	/**
+	 * @param dense     The dense weights node.
+	 * @param threshold Weights with an absolute value less or equal are pruned.
+	 */
+	public SparseWeightsNode(WeightsNode dense, double threshold) {
+		this.weights = SparseMatrix.fromDense(
+			dense.getWeights(),
+			dense.getOutputSize(),
+			dense.getInputSize(),
+			threshold);
+		this.learningRate = dense.getLearningRate();
+	}
+
+	/**
+	 * @return The sparse weights.
+	 */
+	public SparseMatrix getWeights() { return weights; }
+	/**
+	 * @param pool The pool of the parallel kernel, null to run sequentially.
+	 */
+	public void setPool(ForkJoinPool pool) { this.pool = pool; }
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (weights != null && edge.size() != weights.getColumns()) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (weights != null && edge.size() != weights.getRows()) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-weights-sparse"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double[][] getParameters() { return new double[][] { weights.getValues() }; }
+
+	/**
+	 * Weights come from the pruned dense node, nothing to initialize.
+	 */
+	@Override
+	public void initialize() {}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() != 1) throw new IllegalStateException("One input edge required");
+		if (outputEdges.size() != 1) throw new IllegalStateException("One output edge required");
+		if (weights == null) throw new IllegalStateException("Weights not set");
+		if (inputEdges.getLast().size() != weights.getColumns()) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.getLast().size() != weights.getRows()) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void forward() {
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] output = getForwardBuffer(weights.getRows());
+		if (pool != null) weights.multiply(input, output, pool);
+		else weights.multiply(input, output);
+		pushForward(output);
+	}
+	/**
+	 * Push the input deltas and update the non zero weights.
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] inputDeltas = getBackwardBuffer(weights.getColumns());
+		weights.multiplyTranspose(deltas, inputDeltas);
+		double[] values = weights.getValues();
+		int[] columns = weights.getColumnIndexes();
+		int[] offsets = weights.getRowOffsets();
+		for (int r = 0; r < weights.getRows(); r++) {
+			double delta = learningRate * deltas[r];
+			if (delta == 0) continue;
+			for (int k = offsets[r]; k < offsets[r + 1]; k++) values[k] += delta * input[columns[k]];
+		}
+		pushBackward(inputDeltas);
+	}
+}
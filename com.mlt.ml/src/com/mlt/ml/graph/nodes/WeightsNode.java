@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.graph.nodes;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.math.Matrix;
+
+import java.util.Random;
+
+/**
+ * A dense weights node, <code>y = W x</code>, with W of output size rows by input size columns.
+ * Can have only one input edge and one output edge. Biases are added with a bias node and an
+ * addition node.
+ *
+ * @author Miquel Sas
+ */
+public class WeightsNode extends Node {
+
+	/** Input size. */
+	private int inputSize;
+	/** Output size. */
+	private int outputSize;
+	/** Weights, row major, outputSize x inputSize. */
+	private double[] weights;
+	/** Learning rate. */
+	private double learningRate = 0.01;
+
+	/**
+	 * Constructor used to restore.
+	 */
+	public WeightsNode() {}
+	/**
+	 * @param inputSize  Input size.
+	 * @param outputSize Output size.
+	 */
+	public WeightsNode(int inputSize, int outputSize) {
+		if (inputSize < 1 || outputSize < 1) throw new IllegalArgumentException("Invalid sizes");
+		this.inputSize = inputSize;
+		this.outputSize = outputSize;
+		this.weights = new double[inputSize * outputSize];
+	}
+
+	/**
+	 * @return The input size.
+	 */
+	public int getInputSize() { return inputSize; }
+	/**
+	 * @return The output size.
+	 */
+	public int getOutputSize() { return outputSize; }
+	/**
+	 * @return The weights, row major, output size x input size.
+	 */
+	public double[] getWeights() { return weights; }
+	/**
+	 * @param learningRate The learning rate.
+	 */
+	public void setLearningRate(double learningRate) { this.learningRate = learningRate; }
+	/**
+	 * @return The learning rate.
+	 */
+	public double getLearningRate() { return learningRate; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addInputEdge(Edge edge) {
+		if (inputEdges.size() > 0) throw new IllegalStateException("More than one input edge");
+		if (edge.size() != inputSize) throw new IllegalStateException("Invalid input edge size");
+		edge.setOutputNode(this);
+		inputEdges.addLast(edge);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void addOutputEdge(Edge edge) {
+		if (outputEdges.size() > 0) throw new IllegalStateException("More than one output edge");
+		if (edge.size() != outputSize) throw new IllegalStateException("Invalid output edge size");
+		edge.setInputNode(this);
+		outputEdges.addLast(edge);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() { return "node-weights"; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isPlannable() { return true; }
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double[][] getParameters() { return new double[][] { weights }; }
+	/**
+	 * Adopt the arrays.
+	 */
+	@Override
+	public void setParameters(double[][] parameters) {
+		checkParameters(parameters);
+		weights = parameters[0];
+	}
+
+	/**
+	 * Initialize weights with gaussians scaled by the inverse square root of the input size.
+	 */
+	@Override
+	public void initialize() {
+		Random random = new Random();
+		double scale = 1.0 / Math.sqrt(inputSize);
+		for (int i = 0; i < weights.length; i++) weights[i] = random.nextGaussian() * scale;
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void validate() {
+		if (inputEdges.size() == 0) throw new IllegalStateException("Input edges empty");
+		if (inputEdges.size() > 1) throw new IllegalStateException("More than one input edge");
+		if (inputEdges.getLast().size() != inputSize) {
+			throw new IllegalStateException("Invalid input edge size");
+		}
+		if (outputEdges.size() == 0) throw new IllegalStateException("Output edges empty");
+		if (outputEdges.size() > 1) throw new IllegalStateException("More than one output edge");
+		if (outputEdges.getLast().size() != outputSize) {
+			throw new IllegalStateException("Invalid output edge size");
+		}
+		if (weights.length != inputSize * outputSize) {
+			throw new IllegalStateException("Invalid weights size");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void forward() {
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] output = getForwardBuffer(outputSize);
+		multiply(input, output);
+		pushForward(output);
+	}
+	/**
+	 * Calculates <code>output = W input</code>, as row dot products.
+	 *
+	 * @param input  The input vector.
+	 * @param output The output vector.
+	 */
+	public void multiply(double[] input, double[] output) {
+		for (int r = 0; r < outputSize; r++) {
+			int base = r * inputSize;
+			double sum = 0;
+			for (int c = 0; c < inputSize; c++) sum += weights[base + c] * input[c];
+			output[r] = sum;
+		}
+	}
+	/**
+	 * Push the input deltas, <code>transpose(W) d</code>, and update the weights.
+	 */
+	@Override
+	public void backward() {
+		double[] deltas = outputEdges.getLast().getBackwardData();
+		double[] input = inputEdges.getLast().getForwardData();
+		double[] inputDeltas = getBackwardBuffer(inputSize);
+		Matrix.multiplyTransposeA(weights, deltas, inputDeltas, inputSize, outputSize, 1, false);
+		for (int r = 0; r < outputSize; r++) {
+			double delta = learningRate * deltas[r];
+			if (delta == 0) continue;
+			int base = r * inputSize;
+			for (int c = 0; c < inputSize; c++) weights[base + c] += delta * input[c];
+		}
+		pushBackward(inputDeltas);
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.math;
+
+/**
+ * In-place iterative radix-2 fast Fourier transform over split real and imaginary arrays. An
+ * instance precomputes the bit reversal permutation and the twiddle factors of a fixed size, and
+ * can be reused for any number of transforms of that size.
+ *
+ * @author Miquel Sas
+ */
+public class FFT {
+
+	/**
+	 * @param n A positive number.
+	 * @return The smallest power of two greater or equal than n.
+	 */
+	public static int nextPowerOfTwo(int n) {
+		if (n <= 1) return 1;
+		return Integer.highestOneBit(n - 1) << 1;
+	}
+
+	/** Size, a power of two. */
+	private int size;
+	/** Bit reversal permutation. */
+	private int[] reversed;
+	/** Cosine twiddle factors. */
+	private double[] cos;
+	/** Sine twiddle factors. */
+	private double[] sin;
+
+	/**
+	 * @param size The size of the transform, must be a power of two.
+	 */
+	public FFT(int size) {
+		if (size < 1 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("Size must be a power of two");
+		}
+		this.size = size;
+		this.reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		this.cos = new double[size / 2];
+		this.sin = new double[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			cos[i] = Math.cos(2 * Math.PI * i / size);
+			sin[i] = Math.sin(2 * Math.PI * i / size);
+		}
+	}
+
+	/**
+	 * @return The size of the transform.
+	 */
+	public int size() { return size; }
+
+	/**
+	 * Forward transform.
+	 *
+	 * @param re Real parts.
+	 * @param im Imaginary parts.
+	 */
+	public void transform(double[] re, double[] im) {
+		transform(re, im, false);
+	}
+	/**
+	 * Inverse transform, including the 1/n scaling.
+	 *
+	 * @param re Real parts.
+	 * @param im Imaginary parts.
+	 */
+	public void inverse(double[] re, double[] im) {
+		transform(re, im, true);
+		double scale = 1.0 / size;
+		for (int i = 0; i < size; i++) {
+			re[i] *= scale;
+			im[i] *= scale;
+		}
+	}
+
+	/**
+	 * @param re      Real parts.
+	 * @param im      Imaginary parts.
+	 * @param inverse A boolean indicating whether the transform is the inverse one.
+	 */
+	private void transform(double[] re, double[] im, boolean inverse) {
+		if (re.length < size || im.length < size) throw new IllegalArgumentException("Invalid size");
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		double sign = inverse ? 1 : -1;
+		for (int len = 2; len <= size; len <<= 1) {
+			int half = len / 2;
+			int step = size / len;
+			for (int i = 0; i < size; i += len) {
+				for (int j = 0; j < half; j++) {
+					double wr = cos[j * step];
+					double wi = sign * sin[j * step];
+					int p = i + j;
+					int q = p + half;
+					double tr = re[q] * wr - im[q] * wi;
+					double ti = re[q] * wi + im[q] * wr;
+					re[q] = re[p] - tr;
+					im[q] = im[p] - ti;
+					re[p] += tr;
+					im[p] += ti;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.math;
+
+/**
+ * 16 bit floating point storage formats. Values are stored as shorts, encoded rounding to the
+ * nearest even, and decoded to float inside the kernels, that accumulate in double.
+ *
+ * @author Miquel Sas
+ */
+public enum Float16 {
+	/** Brain float, 8 exponent bits and 7 mantissa bits, the range of a float. */
+	BFLOAT16 {
+		@Override
+		public short encode(double value) {
+			int bits = toFloatBits(value);
+			if ((bits & 0x7FFFFFFF) > 0x7F800000) return (short) ((bits >>> 16) | 0x0040);
+			bits += 0x7FFF + ((bits >>> 16) & 1);
+			return (short) (bits >>> 16);
+		}
+		@Override
+		public float decode(short bits) {
+			return Float.intBitsToFloat(bits << 16);
+		}
+		@Override
+		public double getEpsilon() { return 0x1.0p-8; }
+		@Override
+		public double getMaximum() { return 0x1.FEp127; }
+	},
+	/** IEEE half, 5 exponent bits and 10 mantissa bits, maximum 65504. */
+	HALF {
+		@Override
+		public short encode(double value) {
+			int bits = toFloatBits(value);
+			int sign = (bits >>> 16) & 0x8000;
+			int abs = bits & 0x7FFFFFFF;
+			if (abs >= 0x7F800000) return (short) (sign | (abs > 0x7F800000 ? 0x7E00 : 0x7C00));
+			/* From 65520 rounds to infinity. */
+			if (abs >= 0x477FF000) return (short) (sign | 0x7C00);
+			if (abs < 0x38800000) {
+				/* Subnormal or zero, less than 2^-14, units of 2^-24. */
+				if (abs < 0x33000000) return (short) sign;
+				int mantissa = (abs & 0x7FFFFF) | 0x800000;
+				int shift = 126 - (abs >>> 23);
+				return (short) (sign | round(mantissa, shift));
+			}
+			int exponent = (abs >>> 23) - 127 + 15;
+			int half = (exponent << 23) | (abs & 0x7FFFFF);
+			/* A carry of the mantissa rounding increments the exponent. */
+			return (short) (sign | round(half, 13));
+		}
+		@Override
+		public float decode(short bits) {
+			return TABLE[bits & 0xFFFF];
+		}
+		@Override
+		public double getEpsilon() { return 0x1.0p-11; }
+		@Override
+		public double getMaximum() { return 65504; }
+	};
+
+	/** Decoded half values, indexed by the unsigned bits. */
+	private static final float[] TABLE = new float[65536];
+	static {
+		for (int i = 0; i < TABLE.length; i++) {
+			int sign = (i & 0x8000) << 16;
+			int exponent = (i >>> 10) & 0x1F;
+			int mantissa = i & 0x3FF;
+			float value;
+			if (exponent == 0) {
+				value = mantissa * 0x1.0p-24f;
+				if (sign != 0) value = -value;
+			} else if (exponent == 31) {
+				value = Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+			} else {
+				value = Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+			}
+			TABLE[i] = value;
+		}
+	}
+
+	/**
+	 * @param value The value.
+	 * @return The bits of the value as a float, rounded to odd, so that rounding them again to
+	 * fewer bits gives the nearest to the value and not the nearest to the nearest float.
+	 */
+	private static int toFloatBits(double value) {
+		float nearest = (float) value;
+		int bits = Float.floatToRawIntBits(nearest);
+		if (nearest != value && !Double.isNaN(value) && (bits & 1) == 0) {
+			/* Inexact and even, take the neighbour towards the value. */
+			bits += Math.abs(value) > Math.abs(nearest) ? 1 : -1;
+		}
+		return bits;
+	}
+	/**
+	 * @param value The value.
+	 * @param shift The number of bits to discard.
+	 * @return The value shifted rounding to the nearest even.
+	 */
+	private static int round(int value, int shift) {
+		int result = value >>> shift;
+		int remainder = value & ((1 << shift) - 1);
+		int half = 1 << (shift - 1);
+		if (remainder > half || (remainder == half && (result & 1) != 0)) result++;
+		return result;
+	}
+
+	/**
+	 * @param value The value.
+	 * @return The bits of the nearest value in this format.
+	 */
+	public abstract short encode(double value);
+	/**
+	 * @param bits The bits.
+	 * @return The value.
+	 */
+	public abstract float decode(short bits);
+	/**
+	 * @return The unit roundoff, the maximum relative error of encoding a value in normal range.
+	 */
+	public abstract double getEpsilon();
+	/**
+	 * @return The maximum finite value.
+	 */
+	public abstract double getMaximum();
+
+	/**
+	 * @param values The values.
+	 * @return The encoded values.
+	 */
+	public short[] encode(double[] values) {
+		short[] bits = new short[values.length];
+		for (int i = 0; i < values.length; i++) bits[i] = encode(values[i]);
+		return bits;
+	}
+	/**
+	 * @param bits   The encoded values.
+	 * @param values The destination of the decoded values.
+	 */
+	public void decode(short[] bits, double[] values) {
+		for (int i = 0; i < bits.length; i++) values[i] = decode(bits[i]);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.math;
+
+/**
+ * Dense matrix kernels over flat row-major double arrays. Arrays are passed together with their
+ * dimensions so that callers can keep preallocated buffers and avoid per-call allocations.
+ *
+ * @author Miquel Sas
+ */
+public class Matrix {
+
+	/**
+	 * Calculates <code>c = a * b</code>, or <code>c += a * b</code> when accumulating.
+	 *
+	 * @param a          Matrix a, rows x inner.
+	 * @param b          Matrix b, inner x cols.
+	 * @param c          Result matrix c, rows x cols.
+	 * @param rows       Number of rows of a and c.
+	 * @param inner      Number of columns of a and rows of b.
+	 * @param cols       Number of columns of b and c.
+	 * @param accumulate A boolean indicating whether to add to the current content of c.
+	 */
+	public static void multiply(
+		double[] a, double[] b, double[] c, int rows, int inner, int cols, boolean accumulate) {
+		for (int i = 0; i < rows; i++) {
+			int rc = i * cols;
+			if (!accumulate) for (int j = 0; j < cols; j++) c[rc + j] = 0;
+			int ra = i * inner;
+			/* i-k-j order keeps the inner loop on contiguous memory of b and c. */
+			for (int k = 0; k < inner; k++) {
+				double aik = a[ra + k];
+				if (aik == 0) continue;
+				int rb = k * cols;
+				for (int j = 0; j < cols; j++) c[rc + j] += aik * b[rb + j];
+			}
+		}
+	}
+	/**
+	 * Calculates <code>c = transpose(a) * b</code>, or <code>c += transpose(a) * b</code>.
+	 *
+	 * @param a          Matrix a, inner x rows.
+	 * @param b          Matrix b, inner x cols.
+	 * @param c          Result matrix c, rows x cols.
+	 * @param rows       Number of columns of a and rows of c.
+	 * @param inner      Number of rows of a and b.
+	 * @param cols       Number of columns of b and c.
+	 * @param accumulate A boolean indicating whether to add to the current content of c.
+	 */
+	public static void multiplyTransposeA(
+		double[] a, double[] b, double[] c, int rows, int inner, int cols, boolean accumulate) {
+		if (!accumulate) for (int i = 0; i < rows * cols; i++) c[i] = 0;
+		for (int k = 0; k < inner; k++) {
+			int ra = k * rows;
+			int rb = k * cols;
+			for (int i = 0; i < rows; i++) {
+				double aki = a[ra + i];
+				if (aki == 0) continue;
+				int rc = i * cols;
+				for (int j = 0; j < cols; j++) c[rc + j] += aki * b[rb + j];
+			}
+		}
+	}
+	/**
+	 * Calculates <code>c = a * transpose(b)</code>, or <code>c += a * transpose(b)</code>.
+	 *
+	 * @param a          Matrix a, rows x inner.
+	 * @param b          Matrix b, cols x inner.
+	 * @param c          Result matrix c, rows x cols.
+	 * @param rows       Number of rows of a and c.
+	 * @param inner      Number of columns of a and b.
+	 * @param cols       Number of rows of b and columns of c.
+	 * @param accumulate A boolean indicating whether to add to the current content of c.
+	 */
+	public static void multiplyTransposeB(
+		double[] a, double[] b, double[] c, int rows, int inner, int cols, boolean accumulate) {
+		for (int i = 0; i < rows; i++) {
+			int ra = i * inner;
+			int rc = i * cols;
+			for (int j = 0; j < cols; j++) {
+				int rb = j * inner;
+				double sum = 0;
+				for (int k = 0; k < inner; k++) sum += a[ra + k] * b[rb + k];
+				if (accumulate) c[rc + j] += sum;
+				else c[rc + j] = sum;
+			}
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel sums of values and of vectors, in deterministic or fast mode.
+ * <p>
+ * In deterministic mode values are split in chunks of fixed size, each chunk is summed
+ * sequentially and chunk sums are combined by a binary tree whose shape depends only on the number
+ * of chunks. Vectors are summed element chunk by element chunk, combining the vectors pairwise in
+ * a tree whose shape depends only on the number of vectors. The order of floating point additions
+ * is thus fixed, and results are bit-reproducible whatever the number of threads and their
+ * scheduling.
+ * <p>
+ * In fast mode each thread accumulates the chunks or vectors it grabs, and thread partial results
+ * are combined in order of termination, thus results may differ in the last bits from run to run.
+ *
+ * @author Miquel Sas
+ */
+public class Reduction {
+
+	/**
+	 * Reduction modes.
+	 */
+	public enum Mode {
+		/** Fixed order of additions, bit-reproducible. */
+		DETERMINISTIC,
+		/** Order of additions depends on scheduling. */
+		FAST
+	}
+
+	/** Default chunk size. */
+	public static final int CHUNK_SIZE = 1024;
+
+	/** Mode. */
+	private Mode mode;
+	/** Chunk size. */
+	private int chunkSize = CHUNK_SIZE;
+	/** Pool. */
+	private ForkJoinPool pool;
+	/** Parallelism. */
+	private int parallelism;
+
+	/**
+	 * @param mode        The mode.
+	 * @param parallelism The number of threads.
+	 */
+	public Reduction(Mode mode, int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Invalid parallelism");
+		this.mode = mode;
+		this.parallelism = parallelism;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * @return The mode.
+	 */
+	public Mode getMode() { return mode; }
+	/**
+	 * @param chunkSize The chunk size. Results in deterministic mode depend on it, thus it must be
+	 *                  the same to reproduce a result.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) throw new IllegalArgumentException("Invalid chunk size");
+		this.chunkSize = chunkSize;
+	}
+	/**
+	 * Shutdown the pool.
+	 */
+	public void shutdown() { pool.shutdown(); }
+
+	/**
+	 * @param values The values.
+	 * @return The sum.
+	 */
+	public double sum(double[] values) {
+		int chunks = (values.length + chunkSize - 1) / chunkSize;
+		if (chunks == 0) return 0;
+		if (mode == Mode.DETERMINISTIC) {
+			return pool.invoke(new ChunkTree(values, 0, chunks));
+		}
+		AtomicInteger next = new AtomicInteger();
+		double[] total = new double[1];
+		runWorkers(() -> {
+			double sum = 0;
+			int chunk;
+			while ((chunk = next.getAndIncrement()) < chunks) sum += chunkSum(values, chunk);
+			synchronized (total) { total[0] += sum; }
+		});
+		return total[0];
+	}
+	/**
+	 * Element wise sum of vectors of the same size.
+	 *
+	 * @param vectors The vectors, in a fixed order.
+	 * @param result  The result vector.
+	 */
+	public void sum(double[][] vectors, double[] result) {
+		int size = result.length;
+		for (double[] vector : vectors) {
+			if (vector.length != size) throw new IllegalArgumentException("Invalid size");
+		}
+		if (vectors.length == 0) {
+			for (int i = 0; i < size; i++) result[i] = 0;
+			return;
+		}
+		int chunks = (size + chunkSize - 1) / chunkSize;
+		if (mode == Mode.DETERMINISTIC) {
+			pool.invoke(new VectorChunks(vectors, result, 0, chunks));
+			return;
+		}
+		for (int i = 0; i < size; i++) result[i] = 0;
+		AtomicInteger next = new AtomicInteger();
+		runWorkers(() -> {
+			double[] partial = new double[size];
+			int v;
+			while ((v = next.getAndIncrement()) < vectors.length) {
+				double[] vector = vectors[v];
+				for (int i = 0; i < size; i++) partial[i] += vector[i];
+			}
+			synchronized (result) { for (int i = 0; i < size; i++) result[i] += partial[i]; }
+		});
+	}
+
+	/**
+	 * @param values The values.
+	 * @param chunk  The chunk.
+	 * @return The sequential sum of the chunk.
+	 */
+	private double chunkSum(double[] values, int chunk) {
+		int start = chunk * chunkSize;
+		int end = Math.min(start + chunkSize, values.length);
+		double sum = 0;
+		for (int i = start; i < end; i++) sum += values[i];
+		return sum;
+	}
+	/**
+	 * Run one worker per thread and wait for all of them.
+	 *
+	 * @param worker The worker.
+	 */
+	private void runWorkers(Runnable worker) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int i = 0; i < parallelism; i++) tasks.add(pool.submit(worker));
+		for (ForkJoinTask<?> task : tasks) task.join();
+	}
+
+	/**
+	 * Binary tree over a range of chunks, split at the middle.
+	 */
+	@SuppressWarnings("serial")
+	private class ChunkTree extends RecursiveTask<Double> {
+		private double[] values;
+		private int from;
+		private int to;
+		private ChunkTree(double[] values, int from, int to) {
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected Double compute() {
+			if (to - from == 1) return chunkSum(values, from);
+			int middle = (from + to) >>> 1;
+			ChunkTree left = new ChunkTree(values, from, middle);
+			ChunkTree right = new ChunkTree(values, middle, to);
+			right.fork();
+			double sum = left.compute();
+			return sum + right.join();
+		}
+	}
+
+	/**
+	 * Parallel split of element chunks, each reduced pairwise over the vectors.
+	 */
+	@SuppressWarnings("serial")
+	private class VectorChunks extends RecursiveAction {
+		private double[][] vectors;
+		private double[] result;
+		private int from;
+		private int to;
+		private VectorChunks(double[][] vectors, double[] result, int from, int to) {
+			this.vectors = vectors;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(
+					new VectorChunks(vectors, result, from, middle),
+					new VectorChunks(vectors, result, middle, to));
+				return;
+			}
+			int start = from * chunkSize;
+			int length = Math.min(start + chunkSize, result.length) - start;
+			/*
+			 * Pairwise sum over the vectors driven by a binary counter: after adding vector v, the
+			 * stack holds the sums of blocks whose sizes are the bits of v + 1, thus the shape of
+			 * the tree depends only on the number of vectors.
+			 */
+			double[][] stack = new double[33][];
+			double[] carry = new double[length];
+			int top = 0;
+			for (int v = 0; v < vectors.length; v++) {
+				System.arraycopy(vectors[v], start, carry, 0, length);
+				for (int count = v; (count & 1) == 1; count >>>= 1) {
+					double[] block = stack[--top];
+					for (int i = 0; i < length; i++) carry[i] = block[i] + carry[i];
+				}
+				if (stack[top] == null) stack[top] = new double[length];
+				System.arraycopy(carry, 0, stack[top++], 0, length);
+			}
+			System.arraycopy(stack[--top], 0, carry, 0, length);
+			while (top > 0) {
+				double[] block = stack[--top];
+				for (int i = 0; i < length; i++) carry[i] = block[i] + carry[i];
+			}
+			System.arraycopy(carry, 0, result, start, length);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.math;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sparse matrix in compressed sparse row format, with sequential and parallel matrix-vector and
+ * matrix-matrix products. Parallel kernels split rows in blocks of balanced number of non zeros,
+ * each block writing its own rows of the result, thus without synchronization.
+ *
+ * @author Miquel Sas
+ */
+public class SparseMatrix {
+
+	/**
+	 * @param dense     Dense matrix, row major.
+	 * @param rows      Number of rows.
+	 * @param columns   Number of columns.
+	 * @param threshold Values with an absolute value less or equal are dropped.
+	 * @return The sparse matrix.
+	 */
+	public static SparseMatrix fromDense(double[] dense, int rows, int columns, double threshold) {
+		int count = 0;
+		for (double value : dense) if (Math.abs(value) > threshold) count++;
+		SparseMatrix matrix = new SparseMatrix(rows, columns, count);
+		int index = 0;
+		for (int r = 0; r < rows; r++) {
+			matrix.rowOffsets[r] = index;
+			for (int c = 0; c < columns; c++) {
+				double value = dense[r * columns + c];
+				if (Math.abs(value) > threshold) {
+					matrix.values[index] = value;
+					matrix.columnIndexes[index] = c;
+					index++;
+				}
+			}
+		}
+		matrix.rowOffsets[rows] = index;
+		return matrix;
+	}
+
+	/** Minimum non zeros of a parallel block. */
+	private static final int MIN_BLOCK = 4096;
+
+	/** Number of rows. */
+	private int rows;
+	/** Number of columns. */
+	private int columns;
+	/** Non zero values. */
+	private double[] values;
+	/** Column index of each value. */
+	private int[] columnIndexes;
+	/** Offset of the first value of each row, rows + 1. */
+	private int[] rowOffsets;
+
+	/**
+	 * @param rows     Number of rows.
+	 * @param columns  Number of columns.
+	 * @param nonZeros Number of non zero values.
+	 */
+	private SparseMatrix(int rows, int columns, int nonZeros) {
+		this.rows = rows;
+		this.columns = columns;
+		this.values = new double[nonZeros];
+		this.columnIndexes = new int[nonZeros];
+		this.rowOffsets = new int[rows + 1];
+	}
+
+	/**
+	 * @return The number of rows.
+	 */
+	public int getRows() { return rows; }
+	/**
+	 * @return The number of columns.
+	 */
+	public int getColumns() { return columns; }
+	/**
+	 * @return The number of non zero values.
+	 */
+	public int getNonZeros() { return values.length; }
+	/**
+	 * @return The fraction of zeros.
+	 */
+	public double getSparsity() {
+		return 1.0 - (double) values.length / ((double) rows * columns);
+	}
+	/**
+	 * @return The non zero values, modifiable in place.
+	 */
+	public double[] getValues() { return values; }
+	/**
+	 * @return The column index of each value.
+	 */
+	public int[] getColumnIndexes() { return columnIndexes; }
+	/**
+	 * @return The row offsets.
+	 */
+	public int[] getRowOffsets() { return rowOffsets; }
+
+	/**
+	 * Sequential <code>y = A x</code>.
+	 *
+	 * @param x Vector of size columns.
+	 * @param y Result vector of size rows.
+	 */
+	public void multiply(double[] x, double[] y) {
+		multiply(x, y, 0, rows);
+	}
+	/**
+	 * Parallel <code>y = A x</code>.
+	 *
+	 * @param x    Vector of size columns.
+	 * @param y    Result vector of size rows.
+	 * @param pool The pool.
+	 */
+	public void multiply(double[] x, double[] y, ForkJoinPool pool) {
+		int blocks = Math.max(1, Math.min(pool.getParallelism() * 4, values.length / MIN_BLOCK));
+		if (blocks == 1) {
+			multiply(x, y);
+			return;
+		}
+		pool.invoke(new Block(0, rows, blocks, (from, to) -> multiply(x, y, from, to)));
+	}
+	/**
+	 * Sequential <code>Y = A X</code> over a batch of vectors.
+	 *
+	 * @param xs Batch of vectors of size columns.
+	 * @param ys Batch of result vectors of size rows.
+	 */
+	public void multiply(double[][] xs, double[][] ys) {
+		multiply(xs, ys, 0, rows);
+	}
+	/**
+	 * Parallel <code>Y = A X</code> over a batch of vectors.
+	 *
+	 * @param xs   Batch of vectors of size columns.
+	 * @param ys   Batch of result vectors of size rows.
+	 * @param pool The pool.
+	 */
+	public void multiply(double[][] xs, double[][] ys, ForkJoinPool pool) {
+		long work = (long) values.length * xs.length;
+		int blocks = (int) Math.max(1, Math.min(pool.getParallelism() * 4, work / MIN_BLOCK));
+		if (blocks == 1) {
+			multiply(xs, ys);
+			return;
+		}
+		pool.invoke(new Block(0, rows, blocks, (from, to) -> multiply(xs, ys, from, to)));
+	}
+	/**
+	 * Sequential <code>y = transpose(A) x</code>.
+	 *
+	 * @param x Vector of size rows.
+	 * @param y Result vector of size columns.
+	 */
+	public void multiplyTranspose(double[] x, double[] y) {
+		for (int c = 0; c < columns; c++) y[c] = 0;
+		for (int r = 0; r < rows; r++) {
+			double xr = x[r];
+			if (xr == 0) continue;
+			for (int k = rowOffsets[r]; k < rowOffsets[r + 1]; k++) {
+				y[columnIndexes[k]] += values[k] * xr;
+			}
+		}
+	}
+
+	/**
+	 * @param x    Vector.
+	 * @param y    Result vector.
+	 * @param from First row, inclusive.
+	 * @param to   Last row, exclusive.
+	 */
+	private void multiply(double[] x, double[] y, int from, int to) {
+		for (int r = from; r < to; r++) {
+			double sum = 0;
+			for (int k = rowOffsets[r]; k < rowOffsets[r + 1]; k++) {
+				sum += values[k] * x[columnIndexes[k]];
+			}
+			y[r] = sum;
+		}
+	}
+	/**
+	 * @param xs   Batch of vectors.
+	 * @param ys   Batch of result vectors.
+	 * @param from First row, inclusive.
+	 * @param to   Last row, exclusive.
+	 */
+	private void multiply(double[][] xs, double[][] ys, int from, int to) {
+		int batch = xs.length;
+		for (int r = from; r < to; r++) {
+			for (int b = 0; b < batch; b++) ys[b][r] = 0;
+			for (int k = rowOffsets[r]; k < rowOffsets[r + 1]; k++) {
+				double value = values[k];
+				int column = columnIndexes[k];
+				for (int b = 0; b < batch; b++) ys[b][r] += value * xs[b][column];
+			}
+		}
+	}
+
+	/**
+	 * Kernel over a range of rows.
+	 */
+	private interface RowKernel {
+		void apply(int from, int to);
+	}
+	/**
+	 * Recursive split of rows in blocks of similar number of non zeros.
+	 */
+	@SuppressWarnings("serial")
+	private class Block extends RecursiveAction {
+		private int from;
+		private int to;
+		private int blocks;
+		private RowKernel kernel;
+		private Block(int from, int to, int blocks, RowKernel kernel) {
+			this.from = from;
+			this.to = to;
+			this.blocks = blocks;
+			this.kernel = kernel;
+		}
+		@Override
+		protected void compute() {
+			if (blocks <= 1 || to - from <= 1) {
+				kernel.apply(from, to);
+				return;
+			}
+			/* Split at the row where half of the non zeros of the range are reached. */
+			int half = (rowOffsets[from] + rowOffsets[to]) >>> 1;
+			int lo = from + 1;
+			int hi = to - 1;
+			while (lo < hi) {
+				int middle = (lo + hi) >>> 1;
+				if (rowOffsets[middle] < half) lo = middle + 1;
+				else hi = middle;
+			}
+			int split = lo;
+			invokeAll(
+				new Block(from, split, blocks / 2, kernel),
+				new Block(split, to, blocks - blocks / 2, kernel));
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.common.task.Task;
+import com.mlt.common.task.TaskExecutor;
+import com.mlt.ml.data.PatternSource;
+import com.mlt.ml.data.RangePatternSource;
+import com.mlt.ml.graph.Network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Cross-validation engine that trains one network per fold or walk-forward window in parallel.
+ * <p>
+ * All folds read from the same source through range views, so the dataset is held once whatever
+ * the number of folds, and the source must be safe for concurrent reads. K-fold test ranges are
+ * contiguous, but every fold but the last trains on patterns that follow its test range, thus on
+ * time series there is look-ahead and <code>walkForward</code> windows, that train only on the
+ * past, should be used instead. Metrics are aggregated as folds finish, and an optional listener
+ * is notified of each fold result.
+ *
+ * @author Miquel Sas
+ */
+public class CrossValidation {
+
+	/**
+	 * A fold, training ranges and a test range over the source.
+	 */
+	public static class Fold {
+		/** Name. */
+		private String name;
+		/** Training ranges, pairs of start inclusive and end exclusive. */
+		private int[] training;
+		/** Test start, inclusive. */
+		private int testStart;
+		/** Test end, exclusive. */
+		private int testEnd;
+		/**
+		 * @param name      Name.
+		 * @param training  Training ranges, pairs of start inclusive and end exclusive.
+		 * @param testStart Test start, inclusive.
+		 * @param testEnd   Test end, exclusive.
+		 */
+		public Fold(String name, int[] training, int testStart, int testEnd) {
+			this.name = name;
+			this.training = training;
+			this.testStart = testStart;
+			this.testEnd = testEnd;
+		}
+		/**
+		 * @return The name.
+		 */
+		public String getName() { return name; }
+		/**
+		 * @return The training ranges.
+		 */
+		public int[] getTraining() { return training; }
+		/**
+		 * @return The test start, inclusive.
+		 */
+		public int getTestStart() { return testStart; }
+		/**
+		 * @return The test end, exclusive.
+		 */
+		public int getTestEnd() { return testEnd; }
+	}
+
+	/**
+	 * Result of a fold.
+	 */
+	public static class Result {
+		/** Fold. */
+		private Fold fold;
+		/** Mean loss of the last training epoch. */
+		private double trainingLoss;
+		/** Mean test loss. */
+		private double testLoss;
+		/** Trained network. */
+		private Network network;
+		/**
+		 * @return The fold.
+		 */
+		public Fold getFold() { return fold; }
+		/**
+		 * @return The mean loss of the last training epoch.
+		 */
+		public double getTrainingLoss() { return trainingLoss; }
+		/**
+		 * @return The mean test loss.
+		 */
+		public double getTestLoss() { return testLoss; }
+		/**
+		 * @return The trained network.
+		 */
+		public Network getNetwork() { return network; }
+	}
+
+	/**
+	 * @param size Size of the source.
+	 * @param k    Number of folds.
+	 * @return The k contiguous folds, each tested on one k-th and trained on the rest, before and
+	 *         after it, not suitable for time series.
+	 */
+	public static List<Fold> kFold(int size, int k) {
+		if (k < 2 || k > size) throw new IllegalArgumentException("Invalid number of folds");
+		List<Fold> folds = new ArrayList<>();
+		for (int i = 0; i < k; i++) {
+			int start = (int) ((long) size * i / k);
+			int end = (int) ((long) size * (i + 1) / k);
+			int[] training = new int[] { 0, start, end, size };
+			folds.add(new Fold("fold-" + i, training, start, end));
+		}
+		return folds;
+	}
+	/**
+	 * @param size         Size of the source.
+	 * @param trainingSize Size of the training window, or of the first one if anchored.
+	 * @param testSize     Size of the test window, also the step between windows.
+	 * @param anchored     A boolean indicating whether training windows all start at zero and
+	 *                     grow, instead of rolling.
+	 * @return The walk-forward windows.
+	 */
+	public static List<Fold> walkForward(
+		int size, int trainingSize, int testSize, boolean anchored) {
+		if (trainingSize < 1 || testSize < 1) throw new IllegalArgumentException("Invalid windows");
+		List<Fold> folds = new ArrayList<>();
+		for (int end = trainingSize; end + testSize <= size; end += testSize) {
+			int start = anchored ? 0 : end - trainingSize;
+			int[] training = new int[] { start, end };
+			folds.add(new Fold("window-" + folds.size(), training, end, end + testSize));
+		}
+		return folds;
+	}
+
+	/**
+	 * Task that trains and tests a fold.
+	 */
+	private class FoldTask extends Task {
+		private Fold fold;
+		private FoldTask(Fold fold) { this.fold = fold; }
+		@Override
+		public void execute() throws Throwable {
+			Network network = factory.get();
+			network.initialize();
+			Trainer trainer = new Trainer(network);
+			PatternSource training = new RangePatternSource(source, fold.training);
+			PatternSource test = new RangePatternSource(source, fold.testStart, fold.testEnd);
+			Result result = new Result();
+			result.fold = fold;
+			result.network = network;
+			for (int epoch = 0; epoch < epochs; epoch++) {
+				if (shouldCancel()) {
+					setCancelled();
+					return;
+				}
+				result.trainingLoss = trainer.train(training);
+			}
+			result.testLoss = trainer.evaluate(test);
+			aggregate(result);
+		}
+	}
+
+	/** Factory of new, not yet initialized, networks. */
+	private Supplier<Network> factory;
+	/** Shared source. */
+	private PatternSource source;
+	/** Epochs to train each fold. */
+	private int epochs = 1;
+	/** Maximum number of folds trained concurrently. */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	/** Optional listener notified as folds finish. */
+	private Consumer<Result> listener;
+
+	/** Results in order of termination. */
+	private List<Result> results = new ArrayList<>();
+	/** Running mean of the test loss. */
+	private double mean;
+	/** Running sum of squared deviations of the test loss. */
+	private double m2;
+
+	/**
+	 * @param factory Factory of new, not yet initialized, networks.
+	 * @param source  Shared source.
+	 */
+	public CrossValidation(Supplier<Network> factory, PatternSource source) {
+		this.factory = factory;
+		this.source = source;
+	}
+
+	/**
+	 * @param epochs Epochs to train each fold.
+	 */
+	public void setEpochs(int epochs) { this.epochs = epochs; }
+	/**
+	 * @param parallelism Maximum number of folds trained concurrently.
+	 */
+	public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+	/**
+	 * @param listener Listener notified as folds finish, called from the worker threads.
+	 */
+	public void setListener(Consumer<Result> listener) { this.listener = listener; }
+
+	/**
+	 * Train and test all folds, waiting for termination.
+	 *
+	 * @param folds The folds.
+	 * @return The results in order of termination.
+	 */
+	public List<Result> run(List<Fold> folds) {
+		synchronized (this) {
+			results.clear();
+			mean = 0;
+			m2 = 0;
+		}
+		List<FoldTask> tasks = new ArrayList<>();
+		for (Fold fold : folds) tasks.add(new FoldTask(fold));
+		TaskExecutor executor = new TaskExecutor(Math.max(1, Math.min(parallelism, tasks.size())));
+		try {
+			executor.submitAndWaitForTermination(tasks);
+		} finally {
+			executor.shutdown();
+		}
+		for (FoldTask task : tasks) {
+			if (task.hasFailed()) {
+				String message = "Fold " + task.fold.name + " failed";
+				throw new IllegalStateException(message, task.getException());
+			}
+		}
+		return getResults();
+	}
+
+	/**
+	 * @return The results finished so far, in order of termination.
+	 */
+	public synchronized List<Result> getResults() { return new ArrayList<>(results); }
+	/**
+	 * @return The mean test loss of the folds finished so far.
+	 */
+	public synchronized double getMeanTestLoss() { return mean; }
+	/**
+	 * @return The standard deviation of the test loss of the folds finished so far.
+	 */
+	public synchronized double getStdDevTestLoss() {
+		return results.size() < 2 ? 0 : Math.sqrt(m2 / (results.size() - 1));
+	}
+
+	/**
+	 * @param result The result of a fold just finished.
+	 */
+	private void aggregate(Result result) {
+		synchronized (this) {
+			results.add(result);
+			double delta = result.testLoss - mean;
+			mean += delta / results.size();
+			m2 += delta * (result.testLoss - mean);
+		}
+		if (listener != null) listener.accept(result);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.ml.data.PatternSource;
+import com.mlt.ml.graph.Network;
+
+/**
+ * A trial that trains a network over a training source and scores it with the mean loss over a
+ * validation source. Training is sequential, thus the core budget is not used.
+ *
+ * @author Miquel Sas
+ */
+public class NetworkTrial extends Trial {
+
+	/** Trainer. */
+	private Trainer trainer;
+	/** Training source. */
+	private PatternSource training;
+	/** Validation source. */
+	private PatternSource validation;
+
+	/**
+	 * @param name       Name or description of the hyperparameters.
+	 * @param network    The network, already initialized.
+	 * @param training   Training source.
+	 * @param validation Validation source.
+	 */
+	public NetworkTrial(
+		String name, Network network, PatternSource training, PatternSource validation) {
+		super(name);
+		this.trainer = new Trainer(network);
+		this.training = training;
+		this.validation = validation;
+	}
+
+	/**
+	 * @return The trainer.
+	 */
+	public Trainer getTrainer() { return trainer; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void train(int epochs, int cores) {
+		for (int i = 0; i < epochs; i++) trainer.train(training);
+	}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected double evaluate() {
+		return trainer.evaluate(validation);
+	}
+}
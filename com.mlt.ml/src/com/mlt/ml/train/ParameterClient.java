@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.ml.data.Pattern;
+import com.mlt.ml.graph.Network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Client of a parameter server, that synchronizes a network replica. Each synchronization pushes
+ * the delta of the local parameters since the previous one, compressed dropping values with an
+ * absolute value less or equal than a threshold and carrying them over to the next push, and sets
+ * the replica parameters to the global parameters answered by the server.
+ *
+ * @author Miquel Sas
+ */
+public class ParameterClient implements Closeable {
+
+	/** Network replica. */
+	private Network network;
+	/** Parameter arrays of the network. */
+	private List<double[]> arrays;
+	/** Local parameters, flat. */
+	private double[] parameters;
+	/** Parameters as last received from the server. */
+	private double[] view;
+	/** Delta not sent yet. */
+	private double[] residual;
+	/** Threshold of pushed deltas. */
+	private double threshold = 0;
+
+	/** Socket. */
+	private Socket socket;
+	/** Input. */
+	private DataInputStream in;
+	/** Output. */
+	private DataOutputStream out;
+	/** Replica id assigned by the server. */
+	private int id;
+	/** Global version of the last answer. */
+	private long version;
+
+	/**
+	 * @param network The network replica, with the same structure than that of the server.
+	 */
+	public ParameterClient(Network network) {
+		this.network = network;
+	}
+
+	/**
+	 * @param threshold The threshold of pushed deltas, values less or equal are carried over.
+	 */
+	public void setThreshold(double threshold) { this.threshold = threshold; }
+	/**
+	 * @return The replica id assigned by the server.
+	 */
+	public int getId() { return id; }
+	/**
+	 * @return The global version of the last answer of the server.
+	 */
+	public long getVersion() { return version; }
+	/**
+	 * @return The bytes sent to the server.
+	 */
+	public long getBytesSent() { return out == null ? 0 : out.size(); }
+
+	/**
+	 * Connect to the server and set the replica parameters to the global parameters.
+	 *
+	 * @param host The server host.
+	 * @param port The server port.
+	 * @throws IOException If an I/O error occurs or the server rejects the replica.
+	 */
+	public void connect(String host, int port) throws IOException {
+		arrays = network.getParameters();
+		int count = ParameterCodec.count(arrays);
+		parameters = new double[count];
+		view = new double[count];
+		residual = new double[count];
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		out.writeByte(ParameterCodec.HELLO);
+		out.writeInt(count);
+		out.flush();
+		readStatus();
+		id = in.readInt();
+		version = in.readLong();
+		for (int i = 0; i < count; i++) view[i] = in.readDouble();
+		ParameterCodec.scatter(view, arrays);
+	}
+	/**
+	 * Push the local delta and pull the global parameters. May block while other replicas are
+	 * more than the staleness bound behind.
+	 *
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void synchronize() throws IOException {
+		if (socket == null) throw new IllegalStateException("Not connected");
+		ParameterCodec.gather(arrays, parameters);
+		double[] delta = parameters;
+		for (int i = 0; i < delta.length; i++) delta[i] = delta[i] - view[i] + residual[i];
+		out.writeByte(ParameterCodec.PUSH);
+		ParameterCodec.encode(out, delta, threshold, residual);
+		for (int i = 0; i < delta.length; i++) residual[i] = delta[i] - residual[i];
+		out.flush();
+		readStatus();
+		version = in.readLong();
+		double[] difference = parameters;
+		ParameterCodec.decode(in, difference);
+		for (int i = 0; i < view.length; i++) view[i] += difference[i];
+		/* Fetched again so that nodes with derived state know their parameters change. */
+		arrays = network.getParameters();
+		ParameterCodec.scatter(view, arrays);
+	}
+	/**
+	 * Train an epoch synchronizing at regular intervals and at the end.
+	 *
+	 * @param trainer  The trainer of the replica.
+	 * @param patterns The patterns of the epoch.
+	 * @param interval The number of patterns between synchronizations.
+	 * @return The mean loss over the epoch.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public double train(Trainer trainer, Iterator<Pattern> patterns, int interval)
+		throws IOException {
+		if (trainer.getNetwork() != network) throw new IllegalArgumentException("Not the replica");
+		double loss = 0;
+		int count = 0;
+		while (patterns.hasNext()) {
+			loss += trainer.train(patterns.next());
+			count++;
+			if (count % interval == 0) synchronize();
+		}
+		if (count % interval != 0) synchronize();
+		return count == 0 ? 0 : loss / count;
+	}
+
+	/**
+	 * Leave the server and close the connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (socket == null) return;
+		try {
+			out.writeByte(ParameterCodec.BYE);
+			out.flush();
+		} finally {
+			socket.close();
+			socket = null;
+		}
+	}
+
+	/**
+	 * @throws IOException If the answer is an error.
+	 */
+	private void readStatus() throws IOException {
+		byte status = in.readByte();
+		if (status == ParameterCodec.ERROR) throw new IOException(in.readUTF());
+		if (status != ParameterCodec.OK) throw new IOException("Invalid answer " + status);
+	}
+}
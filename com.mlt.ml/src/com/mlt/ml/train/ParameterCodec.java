@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Wire format of the parameter server protocol. Messages are a type byte followed by the message
+ * body, big endian. Vectors of parameters or deltas are sent as floats, either dense or sparse
+ * with variable length index gaps, whichever is smaller, dropping values with an absolute value
+ * less or equal than a threshold. The values actually sent are returned to the caller, so that
+ * the part not sent can be carried over to the next message.
+ *
+ * @author Miquel Sas
+ */
+class ParameterCodec {
+
+	/** Hello, the client announces its parameter count. */
+	static final byte HELLO = 1;
+	/** Push of a delta, answered with the difference to the global parameters. */
+	static final byte PUSH = 2;
+	/** The client leaves. */
+	static final byte BYE = 3;
+	/** Successful reply. */
+	static final byte OK = 10;
+	/** Error reply, followed by a message. */
+	static final byte ERROR = 11;
+
+	/** Dense vector encoding. */
+	private static final byte DENSE = 0;
+	/** Sparse vector encoding. */
+	private static final byte SPARSE = 1;
+
+	/**
+	 * @param parameters The parameter arrays.
+	 * @return The total number of parameters.
+	 */
+	static int count(List<double[]> parameters) {
+		int count = 0;
+		for (double[] array : parameters) count += array.length;
+		return count;
+	}
+	/**
+	 * @param parameters The parameter arrays.
+	 * @param flat       The destination flat vector.
+	 */
+	static void gather(List<double[]> parameters, double[] flat) {
+		int offset = 0;
+		for (double[] array : parameters) {
+			System.arraycopy(array, 0, flat, offset, array.length);
+			offset += array.length;
+		}
+	}
+	/**
+	 * @param flat       The flat vector.
+	 * @param parameters The destination parameter arrays.
+	 */
+	static void scatter(double[] flat, List<double[]> parameters) {
+		int offset = 0;
+		for (double[] array : parameters) {
+			System.arraycopy(flat, offset, array, 0, array.length);
+			offset += array.length;
+		}
+	}
+
+	/**
+	 * Encode a vector.
+	 *
+	 * @param out       The output.
+	 * @param values    The values.
+	 * @param threshold Values with an absolute value less or equal are not sent.
+	 * @param sent      Destination of the values as decoded by the receiver.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static void encode(DataOutputStream out, double[] values, double threshold, double[] sent)
+		throws IOException {
+		int nonZeros = 0;
+		for (double value : values) if (Math.abs(value) > threshold) nonZeros++;
+		/* Sparse costs at least one gap byte and a float per value. */
+		if ((long) nonZeros * 6 < (long) values.length * 4) {
+			out.writeByte(SPARSE);
+			out.writeInt(values.length);
+			out.writeInt(nonZeros);
+			int previous = -1;
+			for (int i = 0; i < values.length; i++) {
+				if (Math.abs(values[i]) > threshold) {
+					float value = (float) values[i];
+					writeVarInt(out, i - previous - 1);
+					out.writeFloat(value);
+					sent[i] = value;
+					previous = i;
+				} else {
+					sent[i] = 0;
+				}
+			}
+		} else {
+			out.writeByte(DENSE);
+			out.writeInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				float value = (float) values[i];
+				out.writeFloat(value);
+				sent[i] = value;
+			}
+		}
+	}
+	/**
+	 * Decode a vector.
+	 *
+	 * @param in     The input.
+	 * @param values The destination values.
+	 * @throws IOException If an I/O error occurs or the vector is not valid.
+	 */
+	static void decode(DataInputStream in, double[] values) throws IOException {
+		byte encoding = in.readByte();
+		int length = in.readInt();
+		if (length != values.length) throw new IOException("Invalid vector length " + length);
+		if (encoding == DENSE) {
+			for (int i = 0; i < length; i++) values[i] = in.readFloat();
+		} else if (encoding == SPARSE) {
+			int nonZeros = in.readInt();
+			Arrays.fill(values, 0);
+			int index = -1;
+			for (int k = 0; k < nonZeros; k++) {
+				index += readVarInt(in) + 1;
+				if (index >= length) throw new IOException("Invalid sparse index " + index);
+				values[index] = in.readFloat();
+			}
+		} else {
+			throw new IOException("Invalid vector encoding " + encoding);
+		}
+	}
+
+	/**
+	 * @param out   The output.
+	 * @param value The non negative value, written in groups of 7 bits.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	/**
+	 * @param in The input.
+	 * @return The value.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Invalid variable length integer");
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.common.logging.Logs;
+import com.mlt.ml.graph.Network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parameter server of data parallel training over TCP. Replicas of a network, in the same or
+ * in other processes or hosts, train locally and periodically push the delta of their parameters,
+ * that the server adds to the global parameters, answering with the difference between the global
+ * parameters and the parameters the replica has.
+ * <p>
+ * Staleness is bounded: each push advances the clock of the replica, and the answer to a push is
+ * delayed until the slowest active replica is at most <i>staleness</i> clocks behind.
+ * <p>
+ * One thread serves each replica.
+ *
+ * @author Miquel Sas
+ */
+public class ParameterServer implements Closeable {
+
+	/**
+	 * State of a connected replica.
+	 */
+	private static class Replica {
+		/** Clock, number of pushes. */
+		private long clock;
+		/** Parameters the replica has, as sent by this server. */
+		private double[] parameters;
+	}
+
+	/** Global parameters. */
+	private double[] parameters;
+	/** Scale applied to pushed deltas. */
+	private double scale = 1.0;
+	/** Maximum clock difference between replicas. */
+	private int staleness = 2;
+	/** Threshold of the answers, values less or equal are carried over. */
+	private double threshold = 0;
+	/** Version, number of pushes applied. */
+	private long version;
+	/** Connected replicas by id. */
+	private Map<Integer, Replica> replicas = new HashMap<>();
+	/** Next replica id. */
+	private int nextId;
+	/** Bytes received. */
+	private long bytesReceived;
+	/** Bytes sent. */
+	private long bytesSent;
+
+	/** Server socket. */
+	private ServerSocket serverSocket;
+	/** Open connections. */
+	private List<Socket> sockets = new ArrayList<>();
+
+	/**
+	 * @param network The network with the initial parameters.
+	 */
+	public ParameterServer(Network network) {
+		List<double[]> arrays = network.getParameters();
+		this.parameters = new double[ParameterCodec.count(arrays)];
+		ParameterCodec.gather(arrays, parameters);
+	}
+
+	/**
+	 * @param scale The scale applied to pushed deltas, for instance the inverse of the number of
+	 *              replicas to average them.
+	 */
+	public void setScale(double scale) { this.scale = scale; }
+	/**
+	 * @param staleness The maximum clock difference between replicas, zero for synchronous.
+	 */
+	public void setStaleness(int staleness) {
+		if (staleness < 0) throw new IllegalArgumentException("Invalid staleness");
+		this.staleness = staleness;
+	}
+	/**
+	 * @param threshold The threshold of the answers, values less or equal are carried over.
+	 */
+	public void setThreshold(double threshold) { this.threshold = threshold; }
+
+	/**
+	 * Start listening.
+	 *
+	 * @param address The address to bind, null for all.
+	 * @param port    The port, zero for any free port.
+	 * @throws IOException If the socket can not be bound.
+	 */
+	public void start(InetAddress address, int port) throws IOException {
+		if (serverSocket != null) throw new IllegalStateException("Already started");
+		serverSocket = new ServerSocket(port, 50, address);
+		Thread thread = new Thread(this::accept, "parameter-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * @return The port the server listens.
+	 */
+	public int getPort() { return serverSocket.getLocalPort(); }
+	/**
+	 * @return A copy of the global parameters.
+	 */
+	public synchronized double[] getParameters() { return parameters.clone(); }
+	/**
+	 * @param network A network with the same structure, whose parameters are set to the global
+	 *                parameters.
+	 */
+	public synchronized void copyTo(Network network) {
+		List<double[]> arrays = network.getParameters();
+		if (ParameterCodec.count(arrays) != parameters.length) {
+			throw new IllegalArgumentException("Invalid network parameter count");
+		}
+		ParameterCodec.scatter(parameters, arrays);
+	}
+	/**
+	 * @return The number of pushes applied.
+	 */
+	public synchronized long getVersion() { return version; }
+	/**
+	 * @return The number of connected replicas.
+	 */
+	public synchronized int getReplicas() { return replicas.size(); }
+	/**
+	 * @return The bytes received from replicas.
+	 */
+	public synchronized long getBytesReceived() { return bytesReceived; }
+	/**
+	 * @return The bytes sent to replicas.
+	 */
+	public synchronized long getBytesSent() { return bytesSent; }
+
+	/**
+	 * Stop listening and close all connections.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (serverSocket != null) serverSocket.close();
+		synchronized (this) {
+			for (Socket socket : sockets) socket.close();
+			sockets.clear();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Accept connections until closed.
+	 */
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				synchronized (this) {
+					sockets.add(socket);
+				}
+				Thread thread = new Thread(() -> serve(socket), "parameter-server-replica");
+				thread.setDaemon(true);
+				thread.start();
+			} catch (SocketException exc) {
+				return;
+			} catch (IOException exc) {
+				Logs.catching(exc);
+			}
+		}
+	}
+	/**
+	 * Serve a replica until it leaves or the connection is closed.
+	 *
+	 * @param socket The socket.
+	 */
+	private void serve(Socket socket) {
+		Integer id = null;
+		try (socket) {
+			CountingInputStream counter = new CountingInputStream(socket);
+			DataInputStream in = new DataInputStream(counter);
+			ByteArrayOutputStream reply = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(reply);
+			OutputStream output = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+			while (true) {
+				byte type = in.readByte();
+				if (type == ParameterCodec.HELLO) {
+					int count = in.readInt();
+					if (count != parameters.length) {
+						out.writeByte(ParameterCodec.ERROR);
+						out.writeUTF("Invalid parameter count " + count);
+						reply.writeTo(output);
+						output.flush();
+						return;
+					}
+					id = hello(out);
+				} else if (type == ParameterCodec.PUSH) {
+					if (id == null) throw new IOException("Push before hello");
+					push(id, in, out);
+				} else if (type == ParameterCodec.BYE) {
+					return;
+				} else {
+					throw new IOException("Invalid message type " + type);
+				}
+				synchronized (this) {
+					bytesSent += reply.size();
+					bytesReceived += counter.take();
+				}
+				reply.writeTo(output);
+				reply.reset();
+				output.flush();
+			}
+		} catch (SocketException exc) {
+			/* Closed connection. */
+		} catch (IOException exc) {
+			Logs.catching(exc);
+		} finally {
+			synchronized (this) {
+				if (id != null) replicas.remove(id);
+				sockets.remove(socket);
+				notifyAll();
+			}
+		}
+	}
+	/**
+	 * Register a replica and send it the global parameters.
+	 *
+	 * @param out The output.
+	 * @return The replica id.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private synchronized Integer hello(DataOutputStream out) throws IOException {
+		Replica replica = new Replica();
+		replica.parameters = parameters.clone();
+		/* A new replica starts at the clock of the slowest one, not to hold the others. */
+		replica.clock = minimumClock();
+		Integer id = nextId++;
+		replicas.put(id, replica);
+		out.writeByte(ParameterCodec.OK);
+		out.writeInt(id);
+		out.writeLong(version);
+		for (double value : parameters) out.writeDouble(value);
+		return id;
+	}
+	/**
+	 * Apply a pushed delta, wait for the staleness bound and answer the difference. The answer is
+	 * written to memory, the socket is written out of the lock.
+	 *
+	 * @param id  The replica id.
+	 * @param in  The input.
+	 * @param out The output.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void push(Integer id, DataInputStream in, DataOutputStream out) throws IOException {
+		double[] delta = new double[parameters.length];
+		ParameterCodec.decode(in, delta);
+		double[] difference = new double[parameters.length];
+		double[] sent = new double[parameters.length];
+		synchronized (this) {
+			Replica replica = replicas.get(id);
+			for (int i = 0; i < parameters.length; i++) parameters[i] += scale * delta[i];
+			version++;
+			replica.clock++;
+			notifyAll();
+			while (!serverSocket.isClosed() && replica.clock - minimumClock() > staleness) {
+				try {
+					wait();
+				} catch (InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted");
+				}
+			}
+			for (int i = 0; i < parameters.length; i++) {
+				difference[i] = parameters[i] - replica.parameters[i];
+			}
+			out.writeByte(ParameterCodec.OK);
+			out.writeLong(version);
+			ParameterCodec.encode(out, difference, threshold, sent);
+			for (int i = 0; i < parameters.length; i++) replica.parameters[i] += sent[i];
+		}
+	}
+	/**
+	 * @return The minimum clock of the connected replicas.
+	 */
+	private long minimumClock() {
+		long minimum = Long.MAX_VALUE;
+		for (Replica replica : replicas.values()) minimum = Math.min(minimum, replica.clock);
+		return minimum == Long.MAX_VALUE ? 0 : minimum;
+	}
+
+	/**
+	 * Buffered socket input that counts the bytes read.
+	 */
+	private static class CountingInputStream extends BufferedInputStream {
+		private long count;
+		private CountingInputStream(Socket socket) throws IOException {
+			super(socket.getInputStream(), 1 << 16);
+		}
+		@Override
+		public synchronized int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count++;
+			return b;
+		}
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) count += read;
+			return read;
+		}
+		private long take() {
+			long taken = count;
+			count = 0;
+			return taken;
+		}
+	}
+}
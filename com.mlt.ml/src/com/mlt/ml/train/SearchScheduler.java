@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.common.logging.Logs;
+import com.mlt.common.task.Task;
+import com.mlt.common.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hyperparameter search scheduler that runs trials concurrently on a task executor and prunes
+ * them by successive halving.
+ * <p>
+ * At rung <code>k</code> all surviving trials are trained up to
+ * <code>minEpochs * reduction^k</code> epochs and evaluated, and only the best
+ * <code>1 / reduction</code> of them survive to the next rung, until one survivor is left or the
+ * maximum number of epochs is reached. The total cores are shared among the survivors of each
+ * rung, thus pruned trials free their cores for the survivors: the number of concurrent trials is
+ * <code>cores / budget</code>, where the per trial budget grows as trials are pruned.
+ *
+ * @author Miquel Sas
+ */
+public class SearchScheduler {
+
+	/**
+	 * Task that runs a rung of a trial.
+	 */
+	private static class RungTask extends Task {
+		private Trial trial;
+		private int epochs;
+		private int cores;
+		private int rung;
+		private RungTask(Trial trial, int epochs, int cores, int rung) {
+			this.trial = trial;
+			this.epochs = epochs;
+			this.cores = cores;
+			this.rung = rung;
+		}
+		@Override
+		public void execute() throws Throwable {
+			trial.runRung(epochs, cores, rung);
+		}
+	}
+
+	/** Epochs of the first rung. */
+	private int minEpochs = 1;
+	/** Maximum epochs a trial can reach. */
+	private int maxEpochs = Integer.MAX_VALUE;
+	/** Reduction factor, the fraction of survivors of a rung is its inverse. */
+	private int reduction = 2;
+	/** Total cores available. */
+	private int cores = Runtime.getRuntime().availableProcessors();
+	/** Minimum cores per trial. */
+	private int coresPerTrial = 1;
+
+	/**
+	 * Constructor.
+	 */
+	public SearchScheduler() {}
+
+	/**
+	 * @param minEpochs Epochs of the first rung.
+	 */
+	public void setMinEpochs(int minEpochs) {
+		if (minEpochs < 1) throw new IllegalArgumentException("Invalid minimum epochs");
+		this.minEpochs = minEpochs;
+	}
+	/**
+	 * @param maxEpochs Maximum epochs a trial can reach.
+	 */
+	public void setMaxEpochs(int maxEpochs) {
+		if (maxEpochs < 1) throw new IllegalArgumentException("Invalid maximum epochs");
+		this.maxEpochs = maxEpochs;
+	}
+	/**
+	 * @param reduction Reduction factor, 2 for halving.
+	 */
+	public void setReduction(int reduction) {
+		if (reduction < 2) throw new IllegalArgumentException("Reduction must be at least 2");
+		this.reduction = reduction;
+	}
+	/**
+	 * @param cores Total cores available.
+	 */
+	public void setCores(int cores) {
+		if (cores < 1) throw new IllegalArgumentException("Invalid cores");
+		this.cores = cores;
+	}
+	/**
+	 * @param coresPerTrial Minimum cores per trial.
+	 */
+	public void setCoresPerTrial(int coresPerTrial) {
+		if (coresPerTrial < 1) throw new IllegalArgumentException("Invalid cores per trial");
+		this.coresPerTrial = coresPerTrial;
+	}
+
+	/**
+	 * Run the search.
+	 *
+	 * @param trials The trials.
+	 * @return All the trials sorted by the rung reached, descending, and then by score.
+	 */
+	public List<Trial> search(List<? extends Trial> trials) {
+		List<Trial> survivors = new ArrayList<>(trials);
+		int epochs = Math.min(minEpochs, maxEpochs);
+		int rung = 0;
+		while (!survivors.isEmpty()) {
+			int budget = Math.max(coresPerTrial, cores / survivors.size());
+			int parallelism = Math.max(1, Math.min(survivors.size(), cores / budget));
+			List<RungTask> tasks = new ArrayList<>();
+			for (Trial trial : survivors) tasks.add(new RungTask(trial, epochs, budget, rung));
+
+			TaskExecutor executor = new TaskExecutor(parallelism);
+			try {
+				executor.submit(tasks, false);
+				executor.waitForTermination(tasks);
+			} finally {
+				executor.shutdown();
+			}
+
+			survivors.removeIf(Trial::hasFailed);
+			survivors.sort(Comparator.comparingDouble(Trial::getScore));
+			Logs.info(
+				"Rung " + rung + ", epochs " + epochs + ", trials " + tasks.size() +
+					", cores per trial " + budget +
+					(survivors.isEmpty() ? "" : ", best " + survivors.get(0)));
+			if (survivors.size() <= 1 || epochs >= maxEpochs) break;
+
+			int keep = Math.max(1, survivors.size() / reduction);
+			survivors = new ArrayList<>(survivors.subList(0, keep));
+			epochs = (int) Math.min((long) epochs * reduction, maxEpochs);
+			rung++;
+		}
+		List<Trial> result = new ArrayList<>(trials);
+		result.sort(
+			Comparator.comparingInt(Trial::getRung).reversed()
+				.thenComparingDouble(Trial::getScore));
+		return result;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+import com.mlt.ml.data.Pattern;
+import com.mlt.ml.data.PatternSource;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.graph.nodes.LossNode;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Trains a network with one input edge and one output edge, fed by a loss node, sample by sample:
+ * a forward pass with the pattern input followed by a backward pass with the pattern output as
+ * target, nodes updating their parameters in the backward pass.
+ *
+ * @author Miquel Sas
+ */
+public class Trainer {
+
+	/** Network. */
+	private Network network;
+	/** Loss node that feeds the output edge. */
+	private LossNode lossNode;
+	/** A boolean that indicates whether to shuffle patterns each epoch. */
+	private boolean shuffle = true;
+	/** Random generator used to shuffle. */
+	private Random random = new Random();
+	/** Number of epochs trained. */
+	private int epochs = 0;
+
+	/**
+	 * @param network The network, already initialized.
+	 */
+	public Trainer(Network network) {
+		this.network = network;
+		if (network.getInputEdges().length != 1) {
+			throw new IllegalArgumentException("Only one input edge supported");
+		}
+		Edge[] outputEdges = network.getOutputEdges();
+		if (outputEdges.length != 1) {
+			throw new IllegalArgumentException("Only one output edge supported");
+		}
+		Node node = outputEdges[0].getInputNode();
+		if (!(node instanceof LossNode)) {
+			throw new IllegalArgumentException("Output edge not fed by a loss node");
+		}
+		this.lossNode = (LossNode) node;
+	}
+
+	/**
+	 * @return The network.
+	 */
+	public Network getNetwork() { return network; }
+	/**
+	 * @return The number of epochs trained.
+	 */
+	public int getEpochs() { return epochs; }
+	/**
+	 * @param shuffle A boolean that indicates whether to shuffle patterns each epoch.
+	 */
+	public void setShuffle(boolean shuffle) { this.shuffle = shuffle; }
+	/**
+	 * @param seed The seed of the random generator used to shuffle.
+	 */
+	public void setSeed(long seed) { this.random = new Random(seed); }
+
+	/**
+	 * Train one epoch.
+	 *
+	 * @param source The training source.
+	 * @return The mean loss over the epoch.
+	 */
+	public double train(PatternSource source) {
+		int size = source.size();
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) order[i] = i;
+		if (shuffle) {
+			for (int i = size - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+		}
+		double loss = 0;
+		for (int i = 0; i < size; i++) loss += train(source.get(order[i]));
+		epochs++;
+		return size == 0 ? 0 : loss / size;
+	}
+	/**
+	 * Train one epoch over patterns delivered in the order to train, for instance by an out of
+	 * core shuffle.
+	 *
+	 * @param patterns The patterns of the epoch.
+	 * @return The mean loss over the epoch.
+	 */
+	public double train(Iterator<Pattern> patterns) {
+		double loss = 0;
+		int count = 0;
+		while (patterns.hasNext()) {
+			loss += train(patterns.next());
+			count++;
+		}
+		epochs++;
+		return count == 0 ? 0 : loss / count;
+	}
+	/**
+	 * Train one pattern.
+	 *
+	 * @param pattern The pattern.
+	 * @return The loss.
+	 */
+	public double train(Pattern pattern) {
+		network.forward(pattern.getInput());
+		network.backward(pattern.getOutput());
+		return lossNode.getLastLoss();
+	}
+	/**
+	 * @param source The source to evaluate.
+	 * @return The mean loss over the source, without training.
+	 */
+	public double evaluate(PatternSource source) {
+		int size = source.size();
+		double loss = 0;
+		for (int i = 0; i < size; i++) loss += evaluate(source.get(i));
+		return size == 0 ? 0 : loss / size;
+	}
+	/**
+	 * @param pattern The pattern to evaluate.
+	 * @return The loss, without training.
+	 */
+	public double evaluate(Pattern pattern) {
+		double[] outputs = network.forward(pattern.getInput())[0];
+		return lossNode.getLoss().loss(outputs, pattern.getOutput());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.mlt.ml.train;
+
+/**
+ * A trial of a hyperparameter search, a training job that can be resumed epoch after epoch and
+ * evaluated between rungs. Lower scores are better.
+ *
+ * @author Miquel Sas
+ */
+public abstract class Trial {
+
+	/** Name or description of the hyperparameters. */
+	private String name;
+	/** Epochs trained so far. */
+	private int epochs = 0;
+	/** Last score, NaN if not yet evaluated. */
+	private double score = Double.NaN;
+	/** Last rung reached. */
+	private int rung = -1;
+	/** Exception that made the trial fail, if any. */
+	private Throwable exception;
+
+	/**
+	 * @param name Name or description of the hyperparameters.
+	 */
+	public Trial(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Continue training the given number of epochs.
+	 *
+	 * @param epochs Number of epochs to train.
+	 * @param cores  Number of cores the trial may use, for trials with internal parallelism.
+	 * @throws Throwable If any error occurs.
+	 */
+	protected abstract void train(int epochs, int cores) throws Throwable;
+	/**
+	 * @return The current score, lower is better.
+	 * @throws Throwable If any error occurs.
+	 */
+	protected abstract double evaluate() throws Throwable;
+
+	/**
+	 * Train up to the given number of epochs and evaluate. Called by the scheduler.
+	 *
+	 * @param epochs Total number of epochs to reach.
+	 * @param cores  Number of cores the trial may use.
+	 * @param rung   Rung.
+	 */
+	void runRung(int epochs, int cores, int rung) {
+		try {
+			if (epochs > this.epochs) train(epochs - this.epochs, cores);
+			this.epochs = Math.max(epochs, this.epochs);
+			this.score = evaluate();
+			this.rung = rung;
+		} catch (Throwable exc) {
+			this.exception = exc;
+			this.score = Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * @return The name.
+	 */
+	public String getName() { return name; }
+	/**
+	 * @return The number of epochs trained.
+	 */
+	public int getEpochs() { return epochs; }
+	/**
+	 * @return The last score.
+	 */
+	public double getScore() { return score; }
+	/**
+	 * @return The last rung reached.
+	 */
+	public int getRung() { return rung; }
+	/**
+	 * @return The exception that made the trial fail, or null.
+	 */
+	public Throwable getException() { return exception; }
+	/**
+	 * @return A boolean indicating whether the trial has failed.
+	 */
+	public boolean hasFailed() { return exception != null; }
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return name + " [rung " + rung + ", epochs " + epochs + ", score " + score + "]";
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.AttentionNode;
+
+import java.util.List;
+import java.util.Random;
+
+public class TestAttention {
+
+	static int length = 37;
+	static int size = 8;
+	static int heads = 2;
+
+	public static void main(String[] args) {
+		System.out.println("Full max diff:   " + check(false));
+		System.out.println("Causal max diff: " + check(true));
+
+		AttentionNode node = new AttentionNode(4096, 64, 4);
+		Network network = network(node);
+		double[] x = random(new Random(2), node.getInputSize());
+		long start = System.nanoTime();
+		network.forward(x);
+		network.backward(x);
+		long used = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		System.out.println("Length 4096: " + (System.nanoTime() - start) / 1000000 + " ms, heap " + used / 1024 / 1024 + " MB");
+	}
+
+	private static Network network(AttentionNode node) {
+		node.addInputEdge(new Edge(node.getInputSize()));
+		node.addOutputEdge(new Edge(node.getInputSize()));
+		Network network = new Network();
+		network.addNode(node);
+		network.initialize();
+		return network;
+	}
+
+	private static double[] random(Random random, int size) {
+		double[] values = new double[size];
+		for (int i = 0; i < size; i++) values[i] = random.nextGaussian();
+		return values;
+	}
+
+	/* Loss is sum(g * y), deltas are -g, compared with central differences. */
+	private static double check(boolean causal) {
+		AttentionNode node = new AttentionNode(length, size, heads);
+		node.setBlockSize(5);
+		node.setCausal(causal);
+		Network network = network(node);
+		Edge input = network.getInputEdges()[0];
+		Random random = new Random(1);
+		double[] x = random(random, node.getInputSize());
+		double[] g = random(random, node.getInputSize());
+		double[] deltas = new double[g.length];
+		for (int i = 0; i < g.length; i++) deltas[i] = -g[i];
+
+		double rate = 1e-7;
+		node.setLearningRate(rate);
+		List<double[]> parameters = network.getParameters();
+		double[][] before = new double[parameters.size()][];
+		for (int i = 0; i < before.length; i++) before[i] = parameters.get(i).clone();
+		network.forward(x);
+		network.backward(deltas);
+		double[] inputDeltas = input.getBackwardData().clone();
+		double[][] weightDeltas = new double[before.length][];
+		for (int i = 0; i < before.length; i++) {
+			double[] p = parameters.get(i);
+			weightDeltas[i] = new double[p.length];
+			for (int j = 0; j < p.length; j++) weightDeltas[i][j] = (p[j] - before[i][j]) / rate;
+			System.arraycopy(before[i], 0, p, 0, p.length);
+		}
+		node.setLearningRate(0);
+
+		double eps = 1e-6;
+		double diff = 0;
+		for (int n = 0; n < 30; n++) {
+			int i = random.nextInt(x.length);
+			double value = x[i];
+			x[i] = value + eps;
+			double plus = loss(network, x, g);
+			x[i] = value - eps;
+			double minus = loss(network, x, g);
+			x[i] = value;
+			diff = Math.max(diff, Math.abs(-(plus - minus) / (2 * eps) - inputDeltas[i]));
+		}
+		for (int k = 0; k < before.length; k++) {
+			double[] p = parameters.get(k);
+			for (int n = 0; n < 10; n++) {
+				int i = random.nextInt(p.length);
+				double value = p[i];
+				p[i] = value + eps;
+				double plus = loss(network, x, g);
+				p[i] = value - eps;
+				double minus = loss(network, x, g);
+				p[i] = value;
+				diff = Math.max(diff, Math.abs(-(plus - minus) / (2 * eps) - weightDeltas[k][i]));
+			}
+		}
+		return diff;
+	}
+
+	private static double loss(Network network, double[] x, double[] g) {
+		double[] y = network.forward(x)[0];
+		double loss = 0;
+		for (int i = 0; i < y.length; i++) loss += g[i] * y[i];
+		return loss;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.nodes.Convolution1DNode;
+
+import java.util.Random;
+
+public class TestConvolution1D {
+	public static void main(String[] args) {
+		int channels = 3;
+		int length = 200;
+		int filters = 4;
+		int kernelSize = 40;
+
+		Convolution1DNode direct = new Convolution1DNode(channels, length, filters, kernelSize);
+		direct.setAlgorithm(Convolution1DNode.Algorithm.DIRECT);
+		Convolution1DNode fft = new Convolution1DNode(channels, length, filters, kernelSize);
+		fft.setAlgorithm(Convolution1DNode.Algorithm.FFT);
+		direct.initialize();
+		fft.initialize();
+		System.arraycopy(direct.getWeights(), 0, fft.getWeights(), 0, direct.getWeights().length);
+
+		Edge inDirect = new Edge(direct.getInputSize());
+		Edge outDirect = new Edge(direct.getOutputSize());
+		direct.addInputEdge(inDirect);
+		direct.addOutputEdge(outDirect);
+		Edge inFFT = new Edge(fft.getInputSize());
+		Edge outFFT = new Edge(fft.getOutputSize());
+		fft.addInputEdge(inFFT);
+		fft.addOutputEdge(outFFT);
+
+		Random random = new Random(1);
+		double[] input = new double[direct.getInputSize()];
+		for (int i = 0; i < input.length; i++) input[i] = random.nextGaussian();
+		double[] deltas = new double[direct.getOutputSize()];
+		for (int i = 0; i < deltas.length; i++) deltas[i] = random.nextGaussian();
+
+		inDirect.pushForward(input);
+		inFFT.pushForward(input);
+		direct.forward();
+		fft.forward();
+		System.out.println("Forward max diff:  " + maxDiff(outDirect.getForwardData(), outFFT.getForwardData()));
+
+		outDirect.pushBackward(deltas);
+		outFFT.pushBackward(deltas);
+		direct.backward();
+		fft.backward();
+		System.out.println("Backward max diff: " + maxDiff(inDirect.getBackwardData(), inFFT.getBackwardData()));
+		System.out.println("Weights max diff:  " + maxDiff(direct.getWeights(), fft.getWeights()));
+
+		Convolution1DNode auto = new Convolution1DNode(channels, 4096, filters, 3);
+		auto.initialize();
+		System.out.println("Auto, kernel 3:    " + auto.getAlgorithm());
+		auto = new Convolution1DNode(channels, 4096, filters, 512);
+		auto.initialize();
+		System.out.println("Auto, kernel 512:  " + auto.getAlgorithm());
+		auto = new Convolution1DNode(channels, 4096, filters, 512);
+		auto.setBenchmark(true);
+		auto.initialize();
+		System.out.println("Bench, kernel 512: " + auto.getAlgorithm());
+	}
+
+	private static double maxDiff(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+}
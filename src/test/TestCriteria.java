@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.db.Criteria;
+import com.mlt.db.Document;
+import com.mlt.db.Field;
+import com.mlt.db.Schema;
+import com.mlt.db.Type;
+import com.mlt.db.Value;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.function.Predicate;
+
+public class TestCriteria {
+	public static void main(String[] args) {
+		Schema schema = new Schema("bars", null);
+		Field id = new Field("id", Type.LONG);
+		Field price = new Field("price", Type.DOUBLE);
+		Field qty = new Field("qty", Type.INTEGER);
+		Field amount = new Field("amount", Type.DECIMAL, 10, 2);
+		Field name = new Field("name", Type.STRING);
+		Field day = new Field("day", Type.DATE);
+		schema.fields().putField(id);
+		schema.fields().putField(price);
+		schema.fields().putField(qty);
+		schema.fields().putField(amount);
+		schema.fields().putField(name);
+		schema.fields().putField(day);
+
+		Random random = new Random(7);
+		String[] names = { "AAPL", "AMZN", "GOOG", "MSFT", "NVDA", "TSLA" };
+		LocalDate start = LocalDate.of(2010, 1, 1);
+		Document[] documents = new Document[1_000_000];
+		for (int i = 0; i < documents.length; i++) {
+			Value[] values = new Value[6];
+			values[0] = new Value((long) i);
+			values[1] = new Value(random.nextDouble() * 100);
+			values[2] = new Value(random.nextInt(10));
+			values[3] = new Value(random.nextInt(5) == 0 ? null : BigDecimal.valueOf(random.nextInt(2000), 2));
+			values[4] = new Value(names[random.nextInt(names.length)]);
+			values[5] = new Value(start.plusDays(random.nextInt(4000)));
+			documents[i] = new Document(schema, values);
+		}
+
+		/* id > 500000 AND price <= 50 OR name STARTS WITH 'AM' */
+		Criteria first = new Criteria();
+		first.add(id, "GT", new Value(500_000L));
+		first.add("AND", price, "LE", new Value(50.0));
+		first.add("OR", name, "STARTS WITH", new Value("AM"));
+		check(first, documents, d ->
+			(d.getValue("id").getLong() > 500_000 && d.getValue("price").getDouble() <= 50) ||
+				d.getValue("name").getString().startsWith("AM"));
+
+		/* (qty IN (1, 3, 5) AND NOT name EQ 'TSLA') OR (amount IS NULL) */
+		Criteria second = new Criteria();
+		second.add(qty, "IN", new Value(1), new Value(3), new Value(5));
+		second.add("AND NOT", name, "EQ", new Value("TSLA"));
+		second.addSegment("OR");
+		second.add(amount, "IS NULL");
+		check(second, documents, d -> {
+			int q = d.getValue("qty").getInteger();
+			boolean in = q == 1 || q == 3 || q == 5;
+			return (in && !d.getValue("name").getString().equals("TSLA")) ||
+				d.getValue("amount").isNull();
+		});
+
+		/* day LT 2015-01-01 AND amount GE 10.50, nulls never match */
+		Criteria nested = new Criteria();
+		nested.add(amount, "GE", new Value(new BigDecimal("10.50")));
+		Criteria third = new Criteria();
+		third.add(day, "LT", new Value(LocalDate.of(2015, 1, 1)));
+		third.add("AND", nested);
+		check(third, documents, d -> {
+			Value a = d.getValue("amount");
+			return d.getValue("day").getDate().isBefore(LocalDate.of(2015, 1, 1)) &&
+				!a.isNull() && a.getDecimal().compareTo(new BigDecimal("10.50")) >= 0;
+		});
+	}
+
+	private static void check(Criteria criteria, Document[] documents, Predicate<Document> expected) {
+		Predicate<Document> predicate = criteria.compile(documents[0].getSchema().fields());
+		int mismatches = 0;
+		int count = 0;
+		for (Document document : documents) {
+			boolean result = predicate.test(document);
+			if (result != expected.test(document)) mismatches++;
+			if (result) count++;
+		}
+		com.sun.management.ThreadMXBean bean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		for (int i = 0; i < 5; i++) for (Document document : documents) predicate.test(document);
+		long bytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long nanos = System.nanoTime();
+		for (Document document : documents) predicate.test(document);
+		nanos = System.nanoTime() - nanos;
+		bytes = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+		System.out.println(criteria);
+		System.out.println(
+			"  matches " + count + ", mismatches " + mismatches + ", " +
+				(documents.length * 1000L / Math.max(1, nanos / 1000)) + " documents/ms, " +
+				"allocated " + bytes + " bytes");
+	}
+}
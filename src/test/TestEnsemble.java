@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.Activation;
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Ensemble;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.Random;
+
+public class TestEnsemble {
+
+	static int inputSize = 8;
+	static int outputSize = 4;
+	static int samples = 50;
+
+	public static void main(String[] args) {
+		Random random = new Random(3);
+		double[][] inputs = new double[samples][inputSize];
+		for (double[] x : inputs) for (int i = 0; i < inputSize; i++) x[i] = random.nextGaussian();
+		Ensemble.Preprocessor scale = input -> {
+			double[] output = new double[input.length];
+			for (int i = 0; i < input.length; i++) output[i] = input[i] * 0.5;
+			return output;
+		};
+		Network[] networks = { build(null), build(null), build(null) };
+		Ensemble.Preprocessor[] preprocessors = { null, scale, scale };
+		double[] weights = { 0.5, 0.3, 0.2 };
+
+		for (Ensemble.Combination combination : Ensemble.Combination.values()) {
+			Ensemble ensemble = new Ensemble();
+			ensemble.setCombination(combination);
+			for (int m = 0; m < networks.length; m++) {
+				ensemble.addMember(networks[m], preprocessors[m], weights[m]);
+			}
+			double[][] combined = ensemble.predict(inputs);
+			double diff = 0;
+			for (int s = 0; s < samples; s++) {
+				double[] expected = new double[outputSize];
+				for (int m = 0; m < networks.length; m++) {
+					double[] input = inputs[s];
+					if (preprocessors[m] != null) input = preprocessors[m].process(input);
+					double[] output = networks[m].forward(input)[0];
+					combine(combination, output, weights[m], networks.length, expected);
+				}
+				diff = Math.max(diff, diff(expected, combined[s]));
+				diff = Math.max(diff, diff(expected, ensemble.predict(inputs[s])));
+			}
+			ensemble.shutdown();
+			System.out.println(combination + " diff: " + diff);
+		}
+
+		Ensemble ensemble = new Ensemble();
+		ensemble.addMember(build(null));
+		ensemble.addMember(build(new Failing()));
+		ensemble.addMember(build(null));
+		try {
+			ensemble.predict(inputs);
+			System.out.println("Failure not thrown");
+		} catch (IllegalStateException exc) {
+			Throwable cause = exc.getCause();
+			System.out.println("Failure thrown: " + exc.getMessage() + ", cause: "
+				+ (cause == null ? null : cause.getMessage()));
+		} finally {
+			ensemble.shutdown();
+		}
+	}
+
+	private static void combine(
+		Ensemble.Combination combination,
+		double[] output,
+		double weight,
+		int members,
+		double[] result) {
+		switch (combination) {
+		case AVERAGE:
+			for (int i = 0; i < output.length; i++) result[i] += output[i] / members;
+			break;
+		case VOTE:
+			int max = 0;
+			for (int i = 1; i < output.length; i++) if (output[i] > output[max]) max = i;
+			result[max] += 1.0 / members;
+			break;
+		case WEIGHTED_SUM:
+			for (int i = 0; i < output.length; i++) result[i] += output[i] * weight;
+			break;
+		}
+	}
+
+	private static Network build(Activation activation) {
+		Edge input = new Edge(inputSize);
+		Edge trigger = new Edge(outputSize);
+		Edge output = new Edge(outputSize);
+		WeightsNode weights = new WeightsNode(inputSize, outputSize);
+		weights.addInputEdge(input);
+		weights.addOutputEdge(trigger);
+		if (activation == null) activation = new ActivationSigmoid();
+		ActivationNode node = new ActivationNode(outputSize, activation);
+		node.addInputEdge(trigger);
+		node.addOutputEdge(output);
+		Network network = new Network();
+		network.addNodes(weights, node);
+		network.initialize();
+		return network;
+	}
+
+	private static double diff(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+
+	private static class Failing extends ActivationSigmoid {
+		@Override
+		public void activations(double[] triggers, double[] outputs) {
+			throw new ArithmeticException("Member failure");
+		}
+	}
+}
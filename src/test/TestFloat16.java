@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.CompactWeightsNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+import com.mlt.ml.math.Float16;
+
+import java.util.List;
+import java.util.Random;
+
+public class TestFloat16 {
+	public static void main(String[] args) {
+		Random random = new Random(5);
+		for (Float16 format : Float16.values()) {
+			System.out.println(format);
+
+			/* Every finite encoding decodes and encodes back to itself. */
+			int mismatches = 0;
+			for (int bits = 0; bits < 65536; bits++) {
+				float value = format.decode((short) bits);
+				if (Float.isNaN(value)) continue;
+				if ((format.encode(value) & 0xFFFF) != bits) mismatches++;
+			}
+			System.out.println("  round trip mismatches " + mismatches);
+
+			/* Relative error within the unit roundoff in normal range, and encoding is the nearest. */
+			double maxError = 0;
+			int notNearest = 0;
+			for (int i = 0; i < 1_000_000; i++) {
+				double value = random.nextGaussian() * Math.pow(2, random.nextInt(20) - 10);
+				short bits = format.encode(value);
+				double decoded = format.decode(bits);
+				double error = Math.abs(decoded - value);
+				if (Math.abs(value) >= 0x1.0p-14) maxError = Math.max(maxError, error / Math.abs(value));
+				double below = format.decode((short) (bits - 1));
+				double above = format.decode((short) (bits + 1));
+				if (Math.abs(below - value) < error || Math.abs(above - value) < error) notNearest++;
+			}
+			System.out.println(
+				"  max relative error " + maxError + " (epsilon " + format.getEpsilon() +
+					"), not nearest " + notNearest);
+			System.out.println(
+				"  max " + format.decode(format.encode(format.getMaximum())) +
+					", overflow " + format.decode(format.encode(format.getMaximum() * 2)) +
+					", NaN " + format.decode(format.encode(Double.NaN)) +
+					", -0 " + format.decode(format.encode(-0.0)));
+
+			/* Drift of a sigmoid network with 16 bit weights against double weights. */
+			for (int layers : new int[] { 1, 4, 16 }) {
+				Network network = network(256, layers);
+				double[] input = new double[256];
+				for (int i = 0; i < input.length; i++) input[i] = random.nextGaussian();
+				double[] dense = network.forward(input)[0].clone();
+				CompactWeightsNode.compact(network, format);
+				double[] compact = network.forward(input)[0];
+				double drift = 0;
+				for (int i = 0; i < dense.length; i++) {
+					drift = Math.max(drift, Math.abs(compact[i] - dense[i]));
+				}
+				System.out.println("  layers " + layers + ": max output drift " + drift);
+			}
+		}
+	}
+
+	private static Network network(int size, int layers) {
+		Network network = new Network();
+		Edge previous = new Edge(size);
+		for (int i = 0; i < layers; i++) {
+			WeightsNode weights = new WeightsNode(size, size);
+			ActivationNode activation = new ActivationNode(size, new ActivationSigmoid());
+			Edge middle = new Edge(size);
+			Edge next = new Edge(size);
+			weights.addInputEdge(previous);
+			weights.addOutputEdge(middle);
+			activation.addInputEdge(middle);
+			activation.addOutputEdge(next);
+			network.addNodes(weights, activation);
+			previous = next;
+		}
+		network.initialize();
+		return network;
+	}
+}
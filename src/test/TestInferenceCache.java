@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.graph.CachedPredictor;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.InferenceCache;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.SnapshotPredictor;
+import com.mlt.ml.graph.SnapshotStore;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestInferenceCache {
+
+	static int size = 8;
+	static int keys = 20;
+
+	public static void main(String[] args) throws Exception {
+		bounded();
+		clock();
+		counters();
+		serialSwap();
+		concurrentSwap();
+	}
+
+	private static void bounded() {
+		InferenceCache cache = new InferenceCache(64, 4);
+		Random random = new Random(1);
+		int bad = 0;
+		int max = 0;
+		for (int i = 0; i < 100000; i++) {
+			double key = random.nextInt(500);
+			double[][] result = get(cache, 0, key);
+			if (result[0][0] != 2 * key) bad++;
+			max = Math.max(max, cache.size());
+		}
+		System.out.println("Bounded: max size " + max + ", wrong results " + bad + ", " + cache);
+		System.out.println("  evictions = misses - size: "
+			+ (cache.getEvictions() == cache.getMisses() - cache.size()));
+	}
+
+	private static void clock() {
+		InferenceCache cache = new InferenceCache(4, 1);
+		for (double key : new double[] { 1, 2, 3, 4 }) get(cache, 0, key);
+		/* Reference 1 and 2, inserting 5 evicts 3, the first one not referenced. */
+		get(cache, 0, 1);
+		get(cache, 0, 2);
+		get(cache, 0, 5);
+		long misses = cache.getMisses();
+		for (double key : new double[] { 1, 2, 4, 5 }) get(cache, 0, key);
+		boolean kept = cache.getMisses() == misses;
+		get(cache, 0, 3);
+		boolean evicted = cache.getMisses() == misses + 1;
+		System.out.println("CLOCK: referenced kept " + kept + ", unreferenced evicted " + evicted
+			+ ", " + cache);
+	}
+
+	private static void counters() {
+		InferenceCache cache = new InferenceCache(16, 1);
+		get(cache, 0, 1);
+		get(cache, 0, 1);
+		get(cache, 1, 1);
+		get(cache, 1, 1);
+		get(cache, 0, 1);
+		boolean ok = cache.getHits() == 2 && cache.getMisses() == 3 && cache.getStale() == 2;
+		System.out.println("Counters: hits 2, misses 3, stale 2 " + ok + ", " + cache);
+		cache.invalidate();
+		System.out.println("  invalidated size " + cache.size());
+	}
+
+	private static void serialSwap() {
+		Network master = build();
+		SnapshotStore store = new SnapshotStore(master);
+		InferenceCache cache = new InferenceCache(1000, 8);
+		CachedPredictor cached = new CachedPredictor(new SnapshotPredictor(build(), store), cache);
+		SnapshotPredictor direct = new SnapshotPredictor(build(), store);
+		Random random = new Random(2);
+		int bad = 0;
+		for (int version = 0; version < 100; version++) {
+			for (int i = 0; i < 50; i++) {
+				double[] x = input(random.nextInt(keys))[0];
+				if (!Arrays.equals(cached.predict(x)[0], direct.predict(x)[0])) bad++;
+			}
+			for (double[] array : master.getParameters()) {
+				for (int j = 0; j < array.length; j++) array[j] += 0.01;
+			}
+			store.publish(master);
+		}
+		System.out.println("Serial swap: stale results " + bad + ", " + cache);
+	}
+
+	private static void concurrentSwap() throws Exception {
+		Network master = build();
+		for (double[] array : master.getParameters()) Arrays.fill(array, 0);
+		SnapshotStore store = new SnapshotStore(master);
+		InferenceCache cache = new InferenceCache(256, 8);
+		AtomicLong bad = new AtomicLong();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				SnapshotPredictor predictor = new SnapshotPredictor(build(), store);
+				CachedPredictor cached = new CachedPredictor(predictor, cache);
+				Random random = new Random();
+				for (int i = 0; i < 200000; i++) {
+					int key = random.nextInt(keys);
+					double output = cached.predict(input(key)[0])[0][0];
+					if (output != expected(key, predictor.getSnapshot().getVersion())) {
+						bad.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		long published = 0;
+		while (isAlive(threads)) {
+			published++;
+			double[] first = new double[size * size];
+			double[] second = new double[size * size];
+			Arrays.fill(first, published / 1024.0);
+			Arrays.fill(second, published / 1024.0);
+			store.publish(first, second);
+			Thread.sleep(1);
+		}
+		System.out.println("Concurrent swap: versions " + published + ", stale results " + bad.get()
+			+ ", " + cache);
+	}
+
+	/* Two layers with all weights equal to version / 1024 and an input of keys. */
+	private static double expected(int key, long version) {
+		double value = version / 1024.0;
+		return size * (size * key * value) * value;
+	}
+
+	private static double[][] get(InferenceCache cache, long version, double key) {
+		return cache.get(version, input(key), TestInferenceCache::twice);
+	}
+
+	private static double[][] input(double key) {
+		double[] x = new double[size];
+		Arrays.fill(x, key);
+		return new double[][] { x };
+	}
+
+	private static double[][] twice(double[][] inputs) {
+		return new double[][] { { 2 * inputs[0][0] } };
+	}
+
+	private static boolean isAlive(Thread[] threads) {
+		for (Thread thread : threads) if (thread.isAlive()) return true;
+		return false;
+	}
+
+	private static Network build() {
+		WeightsNode first = new WeightsNode(size, size);
+		WeightsNode second = new WeightsNode(size, size);
+		Edge middle = new Edge(size);
+		first.addInputEdge(new Edge(size));
+		first.addOutputEdge(middle);
+		second.addInputEdge(middle);
+		second.addOutputEdge(new Edge(size));
+		Network network = new Network();
+		network.addNodes(first, second);
+		network.initialize();
+		return network;
+	}
+}
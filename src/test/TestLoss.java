@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.Loss;
+import com.mlt.ml.function.loss.LossCrossEntropy;
+import com.mlt.ml.function.loss.LossHuber;
+import com.mlt.ml.function.loss.LossMeanSquared;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.LossNode;
+import com.mlt.ml.graph.nodes.SoftMaxCrossEntropyNode;
+
+import java.util.Random;
+
+public class TestLoss {
+
+	static int size = 10;
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		Loss[] losses = { new LossMeanSquared(), new LossHuber(), new LossCrossEntropy() };
+		for (Loss loss : losses) {
+			double[] x = new double[size];
+			double[] targets = new double[size];
+			for (int i = 0; i < size; i++) {
+				if (loss instanceof LossCrossEntropy) {
+					x[i] = 0.1 + 0.8 * random.nextDouble();
+					targets[i] = random.nextDouble();
+				} else {
+					/* Errors within and beyond the Huber delta. */
+					x[i] = random.nextGaussian();
+					targets[i] = 3 * random.nextGaussian();
+				}
+			}
+			LossNode node = new LossNode(size, loss);
+			System.out.println(loss.getName() + " max diff: " + check(node, x, targets));
+		}
+
+		double[] x = new double[size];
+		double[] targets = new double[size];
+		for (int i = 0; i < size; i++) x[i] = 3 * random.nextGaussian();
+		targets[random.nextInt(size)] = 1;
+		System.out.println("soft-max one hot max diff: " + check(softMax(), x, targets));
+		for (int i = 0; i < size; i++) targets[i] = random.nextDouble();
+		double sum = 0;
+		for (double target : targets) sum += target;
+		for (int i = 0; i < size; i++) targets[i] /= sum;
+		System.out.println("soft-max distribution max diff: " + check(softMax(), x, targets));
+
+		/* A pass after extreme triggers equals a pass of a fresh node. */
+		double[] extreme = new double[size];
+		for (int i = 0; i < size; i++) extreme[i] = i % 2 == 0 ? 800 : -800;
+		SoftMaxCrossEntropyNode reused = softMax();
+		Network network = network(reused);
+		network.forward(extreme);
+		network.backward(targets);
+		boolean finite = Double.isFinite(reused.getLastLoss());
+		double[] first = network.getOutputEdges()[0].getForwardData();
+		double[] probabilities = network.forward(x)[0].clone();
+		network.backward(targets);
+		double[] deltas = network.getInputEdges()[0].getBackwardData().clone();
+		double loss = reused.getLastLoss();
+		SoftMaxCrossEntropyNode fresh = softMax();
+		Network reference = network(fresh);
+		double diff = diff(probabilities, reference.forward(x)[0]);
+		reference.backward(targets);
+		diff = Math.max(diff, diff(deltas, reference.getInputEdges()[0].getBackwardData()));
+		diff = Math.max(diff, Math.abs(loss - fresh.getLastLoss()));
+		System.out.println("soft-max extreme triggers finite loss: " + finite);
+		System.out.println("soft-max reused vs fresh diff: " + diff);
+		System.out.println("soft-max same buffer each pass: " + (first == network.forward(x)[0]));
+	}
+
+	private static SoftMaxCrossEntropyNode softMax() {
+		return new SoftMaxCrossEntropyNode(size);
+	}
+
+	private static Network network(LossNode node) {
+		node.addInputEdge(new Edge(size));
+		node.addOutputEdge(new Edge(size));
+		Network network = new Network();
+		network.addNode(node);
+		network.initialize();
+		return network;
+	}
+
+	/* Deltas are the negative gradient of the loss, compared with central differences. */
+	private static double check(LossNode node, double[] x, double[] targets) {
+		Network network = network(node);
+		network.forward(x);
+		network.backward(targets);
+		double[] deltas = network.getInputEdges()[0].getBackwardData().clone();
+		double eps = 1e-6;
+		double diff = 0;
+		for (int i = 0; i < size; i++) {
+			double value = x[i];
+			x[i] = value + eps;
+			double plus = loss(network, node, x, targets);
+			x[i] = value - eps;
+			double minus = loss(network, node, x, targets);
+			x[i] = value;
+			diff = Math.max(diff, Math.abs(-(plus - minus) / (2 * eps) - deltas[i]));
+		}
+		return diff;
+	}
+
+	private static double loss(Network network, LossNode node, double[] x, double[] targets) {
+		network.forward(x);
+		network.backward(targets);
+		return node.getLastLoss();
+	}
+
+	private static double diff(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+}
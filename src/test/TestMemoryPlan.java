@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.MemoryPlan;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestMemoryPlan {
+
+	static int width = 32;
+	static int layers = 6;
+	static int samples = 200;
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		double[][] inputs = new double[samples][width];
+		double[][] targets = new double[samples][width];
+		for (int s = 0; s < samples; s++) {
+			for (int i = 0; i < width; i++) {
+				inputs[s][i] = random.nextGaussian();
+				targets[s][i] = random.nextDouble();
+			}
+		}
+		Network reference = build();
+		List<double[]> parameters = copy(reference.getParameters());
+		for (MemoryPlan.Mode mode : MemoryPlan.Mode.values()) {
+			boolean training = mode == MemoryPlan.Mode.TRAINING;
+			Network unplanned = build();
+			unplanned.setParameters(copy(parameters));
+			Network planned = build();
+			planned.setParameters(copy(parameters));
+			MemoryPlan plan = new MemoryPlan(planned, mode);
+			plan.apply();
+			double outputDiff = 0;
+			for (int s = 0; s < samples; s++) {
+				double[] a = unplanned.forward(inputs[s])[0].clone();
+				double[] b = planned.forward(inputs[s])[0].clone();
+				outputDiff = Math.max(outputDiff, diff(a, b));
+				if (training) {
+					unplanned.backward(deltas(targets[s], a));
+					planned.backward(deltas(targets[s], b));
+				}
+			}
+			double weightsDiff = 0;
+			List<double[]> a = unplanned.getParameters();
+			List<double[]> b = planned.getParameters();
+			for (int i = 0; i < a.size(); i++) {
+				weightsDiff = Math.max(weightsDiff, diff(a.get(i), b.get(i)));
+			}
+			System.out.println(plan);
+			System.out.println("  Planned bytes:   " + plan.getPlannedBytes());
+			System.out.println("  Unplanned bytes: " + plan.getUnplannedBytes());
+			System.out.println("  Output diff:     " + outputDiff);
+			System.out.println("  Weights diff:    " + weightsDiff);
+			System.out.println("  Weights changed: " + (diff(a.get(0), parameters.get(0)) > 0));
+		}
+	}
+
+	private static Network build() {
+		List<Node> nodes = new ArrayList<>();
+		Edge edge = new Edge(width);
+		for (int i = 0; i < layers; i++) {
+			WeightsNode weights = new WeightsNode(width, width);
+			weights.addInputEdge(edge);
+			edge = new Edge(width);
+			weights.addOutputEdge(edge);
+			nodes.add(weights);
+			ActivationNode node = new ActivationNode(width, new ActivationSigmoid());
+			node.addInputEdge(edge);
+			edge = new Edge(width);
+			node.addOutputEdge(edge);
+			nodes.add(node);
+		}
+		Network network = new Network();
+		network.addNodes(nodes.toArray(new Node[nodes.size()]));
+		network.initialize();
+		return network;
+	}
+
+	private static List<double[]> copy(List<double[]> arrays) {
+		List<double[]> copy = new ArrayList<>();
+		for (double[] array : arrays) copy.add(array.clone());
+		return copy;
+	}
+
+	private static double[] deltas(double[] targets, double[] outputs) {
+		double[] deltas = new double[targets.length];
+		for (int i = 0; i < deltas.length; i++) deltas[i] = targets[i] - outputs[i];
+		return deltas;
+	}
+
+	private static double diff(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+}
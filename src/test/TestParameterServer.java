@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package test;
+
+import com.mlt.ml.data.Pattern;
+import com.mlt.ml.function.loss.LossMeanSquared;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.LossNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+import com.mlt.ml.train.ParameterClient;
+import com.mlt.ml.train.ParameterServer;
+import com.mlt.ml.train.Trainer;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TestParameterServer {
+	static final double[] TRUE_WEIGHTS = new double[] { 0.5, -1.5, 2.0, 0.25 };
+
+	static Network network() {
+		WeightsNode weights = new WeightsNode(TRUE_WEIGHTS.length, 1);
+		weights.setLearningRate(0.01);
+		LossNode loss = new LossNode(1, new LossMeanSquared());
+		weights.addInputEdge(new Edge(TRUE_WEIGHTS.length));
+		Edge weightsLoss = new Edge(1);
+		weights.addOutputEdge(weightsLoss);
+		loss.addInputEdge(weightsLoss);
+		loss.addOutputEdge(new Edge(1));
+		Network network = new Network();
+		network.addNodes(weights, loss);
+		network.initialize();
+		return network;
+	}
+
+	static List<Pattern> patterns(long seed, int count) {
+		Random random = new Random(seed);
+		List<Pattern> patterns = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			double[] input = new double[TRUE_WEIGHTS.length];
+			double output = 0;
+			for (int j = 0; j < input.length; j++) {
+				input[j] = random.nextGaussian();
+				output += TRUE_WEIGHTS[j] * input[j];
+			}
+			patterns.add(new Pattern(input, new double[] { output }));
+		}
+		return patterns;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			worker(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+			return;
+		}
+		int replicas = 3;
+		Network network = network();
+		ParameterServer server = new ParameterServer(network);
+		server.setStaleness(1);
+		server.setScale(1.0 / replicas);
+		server.start(InetAddress.getLoopbackAddress(), 0);
+		System.out.println("Server on port " + server.getPort());
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+		List<Process> processes = new ArrayList<>();
+		for (int i = 0; i < replicas; i++) {
+			ProcessBuilder builder = new ProcessBuilder(
+				java, "-cp", classPath, TestParameterServer.class.getName(),
+				String.valueOf(server.getPort()), String.valueOf(i));
+			builder.inheritIO();
+			processes.add(builder.start());
+		}
+		for (Process process : processes) System.out.println("Worker exit " + process.waitFor());
+
+		server.copyTo(network);
+		Trainer trainer = new Trainer(network);
+		List<Pattern> test = patterns(99, 1000);
+		double loss = 0;
+		for (Pattern pattern : test) loss += trainer.evaluate(pattern);
+		System.out.println("Version " + server.getVersion() + ", test loss " + loss / test.size());
+		System.out.println("Received KB " + server.getBytesReceived() / 1024 + ", sent KB " + server.getBytesSent() / 1024);
+		server.close();
+	}
+
+	static void worker(int port, int index) throws Exception {
+		Network network = network();
+		Trainer trainer = new Trainer(network);
+		List<Pattern> patterns = patterns(index, 2000);
+		try (ParameterClient client = new ParameterClient(network)) {
+			client.setThreshold(1e-4);
+			client.connect(InetAddress.getLoopbackAddress().getHostAddress(), port);
+			double loss = 0;
+			for (int epoch = 0; epoch < 5; epoch++) {
+				loss = client.train(trainer, patterns.iterator(), 20);
+			}
+			System.out.println("Worker " + index + " id " + client.getId() + " loss " + loss + " version " + client.getVersion());
+		}
+	}
+}
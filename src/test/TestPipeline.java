@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.Activation;
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Node;
+import com.mlt.ml.graph.Pipeline;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TestPipeline {
+
+	static int width = 64;
+	static int layers = 24;
+	static int samples = 3000;
+
+	public static void main(String[] args) throws Exception {
+		Network network = build();
+		Random random = new Random(1);
+		double[][] inputs = new double[samples][width];
+		for (double[] x : inputs) for (int i = 0; i < width; i++) x[i] = random.nextGaussian();
+		double[][] serial = new double[samples][];
+		long start = System.nanoTime();
+		for (int i = 0; i < samples; i++) serial[i] = network.forward(inputs[i])[0].clone();
+		System.out.println("Serial ms:      " + (System.nanoTime() - start) / 1000000);
+
+		Pipeline pipeline = new Pipeline(network, 4);
+		pipeline.calibrate(200, inputs[0]);
+		pipeline.start();
+		start = System.nanoTime();
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < samples; i++) pipeline.submit(inputs[i]);
+		});
+		producer.start();
+		double diff = 0;
+		for (int i = 0; i < samples; i++) {
+			diff = Math.max(diff, diff(pipeline.take()[0], serial[i]));
+		}
+		producer.join();
+		System.out.println("Pipeline ms:    " + (System.nanoTime() - start) / 1000000);
+		System.out.println("Running diff:   " + diff);
+		System.out.print(pipeline.getReport());
+
+		double[] poison = new double[width];
+		Arrays.fill(poison, Double.NaN);
+		pipeline.submit(inputs[0]);
+		pipeline.submit(poison);
+		pipeline.submit(inputs[1]);
+		diff = diff(pipeline.take()[0], serial[0]);
+		try {
+			pipeline.take();
+			System.out.println("Failure not thrown");
+		} catch (IllegalStateException exc) {
+			System.out.println("Failure thrown: " + exc.getCause().getMessage());
+		}
+		diff = Math.max(diff, diff(pipeline.take()[0], serial[1]));
+		System.out.println("After failure:  " + diff);
+
+		pipeline.submit(inputs[2]);
+		pipeline.submit(inputs[3]);
+		pipeline.shutdown();
+		diff = 0;
+		for (int i = 0; i < samples; i++) {
+			diff = Math.max(diff, diff(network.forward(inputs[i])[0], serial[i]));
+		}
+		System.out.println("Shutdown diff:  " + diff);
+	}
+
+	private static Network build() {
+		List<Node> nodes = new ArrayList<>();
+		Edge edge = new Edge(width);
+		for (int i = 0; i < layers; i++) {
+			WeightsNode weights = new WeightsNode(width, width);
+			weights.addInputEdge(edge);
+			edge = new Edge(width);
+			weights.addOutputEdge(edge);
+			nodes.add(weights);
+			Activation activation = i == layers / 2 ? new Failing() : new ActivationSigmoid();
+			ActivationNode node = new ActivationNode(width, activation);
+			node.addInputEdge(edge);
+			edge = new Edge(width);
+			node.addOutputEdge(edge);
+			nodes.add(node);
+		}
+		Network network = new Network();
+		network.addNodes(nodes.toArray(new Node[nodes.size()]));
+		network.initialize();
+		return network;
+	}
+
+	private static double diff(double[] a, double[] b) {
+		double max = 0;
+		for (int i = 0; i < a.length; i++) max = Math.max(max, Math.abs(a[i] - b[i]));
+		return max;
+	}
+
+	private static class Failing extends ActivationSigmoid {
+		@Override
+		public void activations(double[] triggers, double[] outputs) {
+			if (Double.isNaN(triggers[0])) throw new ArithmeticException("NaN trigger");
+			super.activations(triggers, outputs);
+		}
+	}
+}
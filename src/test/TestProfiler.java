@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.function.activation.ActivationSigmoid;
+import com.mlt.ml.function.loss.LossMeanSquared;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Profiler;
+import com.mlt.ml.graph.nodes.ActivationNode;
+import com.mlt.ml.graph.nodes.Convolution1DNode;
+import com.mlt.ml.graph.nodes.LossNode;
+
+import java.util.Random;
+
+public class TestProfiler {
+	public static void main(String[] args) {
+		Convolution1DNode conv = new Convolution1DNode(4, 512, 8, 16);
+		ActivationNode activation = new ActivationNode(conv.getOutputSize(), new ActivationSigmoid());
+		LossNode loss = new LossNode(conv.getOutputSize(), new LossMeanSquared());
+
+		Edge input = new Edge(conv.getInputSize());
+		conv.addInputEdge(input);
+		Edge convActivation = new Edge(conv.getOutputSize());
+		conv.addOutputEdge(convActivation);
+		activation.addInputEdge(convActivation);
+		Edge activationLoss = new Edge(conv.getOutputSize());
+		activation.addOutputEdge(activationLoss);
+		loss.addInputEdge(activationLoss);
+		loss.addOutputEdge(new Edge(conv.getOutputSize()));
+
+		Network network = new Network();
+		network.addNodes(loss, activation, conv);
+		network.initialize();
+
+		Profiler profiler = new Profiler();
+		network.setProfiler(profiler);
+
+		Random random = new Random(1);
+		double[] values = new double[conv.getInputSize()];
+		double[] targets = new double[conv.getOutputSize()];
+		for (int i = 0; i < 200; i++) {
+			for (int j = 0; j < values.length; j++) values[j] = random.nextGaussian();
+			for (int j = 0; j < targets.length; j++) targets[j] = random.nextDouble();
+			network.forward(values);
+			network.backward(targets);
+		}
+		System.out.println(profiler.getReport());
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.Pruning;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.List;
+import java.util.Random;
+
+public class TestPruning {
+	public static void main(String[] args) {
+		int[] sizes = new int[] { 512, 1024, 1024, 64 };
+		Network network = new Network();
+		WeightsNode[] layers = new WeightsNode[sizes.length - 1];
+		Edge previous = new Edge(sizes[0]);
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = new WeightsNode(sizes[i], sizes[i + 1]);
+			Edge next = new Edge(sizes[i + 1]);
+			layers[i].addInputEdge(previous);
+			layers[i].addOutputEdge(next);
+			previous = next;
+		}
+		network.addNodes(layers);
+		network.initialize();
+
+		Random random = new Random(1);
+		double[] input = new double[sizes[0]];
+		for (int i = 0; i < input.length; i++) input[i] = random.nextGaussian();
+
+		Pruning pruning = new Pruning();
+		pruning.setFraction(0.9);
+		double[] thresholds = new double[layers.length];
+		for (int i = 0; i < layers.length; i++) {
+			thresholds[i] = Pruning.getThreshold(layers[i].getWeights(), 0.9);
+			for (int j = 0; j < layers[i].getWeights().length; j++) {
+				if (Math.abs(layers[i].getWeights()[j]) <= thresholds[i]) layers[i].getWeights()[j] = 0;
+			}
+		}
+		double[] dense = network.forward(input)[0].clone();
+
+		List<Pruning.Result> results = pruning.prune(network);
+		System.out.print(Pruning.getReport(results));
+		double[] sparse = network.forward(input)[0];
+		double error = 0;
+		for (int i = 0; i < dense.length; i++) error = Math.max(error, Math.abs(dense[i] - sparse[i]));
+		System.out.println("Nodes: " + network.getNodes()[0].getName() + ", max error " + error);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.nodes.GRUNode;
+import com.mlt.ml.graph.nodes.LSTMNode;
+import com.mlt.ml.graph.nodes.RecurrentNode;
+
+import java.util.Random;
+
+public class TestRecurrent {
+
+	static int inputSize = 3;
+	static int hiddenSize = 4;
+	static int length = 5;
+
+	public static void main(String[] args) {
+		System.out.println("LSTM max diff: " + check(new LSTMNode(inputSize, hiddenSize, length)));
+		System.out.println("GRU max diff:  " + check(new GRUNode(inputSize, hiddenSize, length)));
+	}
+
+	private static double check(RecurrentNode node) {
+		Edge input = new Edge(inputSize);
+		Edge output = new Edge(hiddenSize);
+		node.addInputEdge(input);
+		node.addOutputEdge(output);
+		node.initialize();
+		node.validate();
+
+		Random random = new Random(7);
+		double[][] sequence = new double[length][inputSize];
+		for (double[] x : sequence) for (int i = 0; i < inputSize; i++) x[i] = random.nextGaussian();
+		double[] target = new double[hiddenSize];
+		for (int i = 0; i < hiddenSize; i++) target[i] = random.nextDouble();
+
+		double[] weights = node.getWeights();
+		double[] numeric = new double[weights.length];
+		double eps = 1e-6;
+		for (int w = 0; w < weights.length; w++) {
+			double save = weights[w];
+			weights[w] = save + eps;
+			double plus = error(node, input, output, sequence, target);
+			weights[w] = save - eps;
+			double minus = error(node, input, output, sequence, target);
+			weights[w] = save;
+			numeric[w] = -(plus - minus) / (2 * eps);
+		}
+
+		double learningRate = 1e-3;
+		node.setLearningRate(learningRate);
+		double[] before = weights.clone();
+		double[] last = run(node, input, output, sequence);
+		double[] deltas = new double[hiddenSize];
+		for (int i = 0; i < hiddenSize; i++) deltas[i] = target[i] - last[i];
+		output.pushBackward(deltas);
+		node.backward();
+
+		double max = 0;
+		for (int w = 0; w < weights.length; w++) {
+			double analytic = (weights[w] - before[w]) / learningRate;
+			max = Math.max(max, Math.abs(analytic - numeric[w]));
+		}
+		return max;
+	}
+
+	private static double[] run(RecurrentNode node, Edge input, Edge output, double[][] sequence) {
+		node.resetState();
+		for (double[] x : sequence) {
+			input.pushForward(x);
+			node.forward();
+		}
+		return output.getForwardData();
+	}
+
+	private static double error(
+		RecurrentNode node, Edge input, Edge output, double[][] sequence, double[] target) {
+		double[] last = run(node, input, output, sequence);
+		double error = 0;
+		for (int i = 0; i < last.length; i++) error += 0.5 * (target[i] - last[i]) * (target[i] - last[i]);
+		return error;
+	}
+}
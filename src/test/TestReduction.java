@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.math.Reduction;
+
+import java.util.Random;
+
+public class TestReduction {
+	public static void main(String[] args) {
+		Random random = new Random(3);
+		double[] values = new double[4_000_000];
+		for (int i = 0; i < values.length; i++) values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(12));
+		double[][] vectors = new double[64][50_000];
+		for (double[] vector : vectors) {
+			for (int i = 0; i < vector.length; i++) vector[i] = random.nextGaussian() * Math.pow(10, random.nextInt(12));
+		}
+
+		for (Reduction.Mode mode : Reduction.Mode.values()) {
+			System.out.println(mode);
+			for (int parallelism : new int[] { 1, 2, 4, 8 }) {
+				Reduction reduction = new Reduction(mode, parallelism);
+				double sum = 0;
+				double[] result = new double[vectors[0].length];
+				long checksum = 0;
+				for (int i = 0; i < 20; i++) {
+					sum = reduction.sum(values);
+					reduction.sum(vectors, result);
+				}
+				long start = System.nanoTime();
+				int loops = 50;
+				for (int i = 0; i < loops; i++) {
+					sum = reduction.sum(values);
+					reduction.sum(vectors, result);
+				}
+				long micros = (System.nanoTime() - start) / 1000 / loops;
+				for (double r : result) checksum = 31 * checksum + Double.doubleToLongBits(r);
+				System.out.println(
+					"  threads " + parallelism + ": sum bits " + Long.toHexString(Double.doubleToLongBits(sum)) +
+						", vectors hash " + Long.toHexString(checksum) + ", " + micros + " us");
+				reduction.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.train.SearchScheduler;
+import com.mlt.ml.train.Trial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TestSearchScheduler {
+
+	static int trials = 16;
+	static int reduction = 2;
+	static int maxEpochs = 8;
+
+	/* Participants of each rung, by the epochs of the rung. */
+	static Map<Integer, List<Synthetic>> rungs = new TreeMap<>();
+
+	public static void main(String[] args) {
+		List<Synthetic> list = new ArrayList<>();
+		for (int i = 0; i < trials; i++) {
+			list.add(new Synthetic("trial-" + i, (i * 7) % trials, -1));
+		}
+		Synthetic failing = new Synthetic("failing", -1, 2);
+		list.add(failing);
+
+		SearchScheduler scheduler = new SearchScheduler();
+		scheduler.setMinEpochs(1);
+		scheduler.setMaxEpochs(maxEpochs);
+		scheduler.setReduction(reduction);
+		scheduler.setCores(4);
+		List<Trial> result = scheduler.search(list);
+
+		List<Synthetic> previous = null;
+		int previousEpochs = 0;
+		for (Map.Entry<Integer, List<Synthetic>> entry : rungs.entrySet()) {
+			List<Synthetic> participants = entry.getValue();
+			String check = "";
+			if (previous != null) {
+				List<Synthetic> alive = new ArrayList<>(previous);
+				int failedAt = previousEpochs;
+				alive.removeIf(t -> t.failAt == failedAt);
+				alive.sort(Comparator.comparingDouble(t -> t.quality));
+				int keep = Math.max(1, alive.size() / reduction);
+				List<Synthetic> best = alive.subList(0, keep);
+				boolean same = best.size() == participants.size() && participants.containsAll(best);
+				check = ", kept the best " + keep + " of " + alive.size() + ": " + same;
+			}
+			int epochs = entry.getKey();
+			System.out.println("Epochs " + epochs + ", trials " + participants.size() + check);
+			previous = participants;
+			previousEpochs = epochs;
+		}
+		System.out.println("Failing: score " + failing.getScore() + ", rung " + failing.getRung()
+			+ ", pruned " + !rungs.get(maxEpochs).contains(failing));
+		Trial winner = result.get(0);
+		System.out.println("Winner: " + winner + ", reached max epochs "
+			+ (winner.getEpochs() == maxEpochs));
+		boolean trained = true;
+		for (Synthetic trial : rungs.get(maxEpochs)) trained &= trial.trained == maxEpochs;
+		System.out.println("Survivors trained max epochs: " + trained);
+	}
+
+	private static class Synthetic extends Trial {
+		/* Lower is better, the score decreasing with the epochs. */
+		private double quality;
+		private int failAt;
+		private int trained;
+		private Synthetic(String name, double quality, int failAt) {
+			super(name);
+			this.quality = quality;
+			this.failAt = failAt;
+		}
+		@Override
+		protected void train(int epochs, int cores) throws Throwable {
+			trained += epochs;
+		}
+		@Override
+		protected double evaluate() throws Throwable {
+			synchronized (rungs) {
+				rungs.computeIfAbsent(trained, k -> new ArrayList<>()).add(this);
+			}
+			if (trained == failAt) throw new IllegalStateException("Trial failure");
+			return quality + 1.0 / trained;
+		}
+	}
+}
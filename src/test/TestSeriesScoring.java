@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.SeriesScoring;
+import com.mlt.ml.graph.nodes.GRUNode;
+import com.mlt.ml.graph.nodes.LSTMNode;
+import com.mlt.ml.graph.nodes.RecurrentNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class TestSeriesScoring {
+
+	static int inputSize = 3;
+	static int hiddenSize = 16;
+	static int length = 4;
+	static int steps = 40000;
+	static int chunkSize = 4000;
+
+	public static void main(String[] args) {
+		Random random = new Random(3);
+		double[][] series = new double[steps][inputSize];
+		for (double[] x : series) for (int i = 0; i < inputSize; i++) x[i] = random.nextGaussian();
+		check("GRU", factory(() -> new GRUNode(inputSize, hiddenSize, length)), series);
+		check("LSTM", factory(() -> new LSTMNode(inputSize, hiddenSize, length)), series);
+	}
+
+	private static void check(String name, Supplier<Network> factory, double[][] series) {
+		SeriesScoring scoring = new SeriesScoring(factory);
+		scoring.setChunkSize(chunkSize);
+		double[][] serial = scoring.scoreSerial(series);
+		double previous = Double.MAX_VALUE;
+		boolean shrinks = true;
+		for (int warmUp : new int[] { 0, 10, 50, 200 }) {
+			scoring.setWarmUp(warmUp);
+			long start = System.nanoTime();
+			double[][] chunked = scoring.score(series);
+			long millis = (System.nanoTime() - start) / 1000000;
+			SeriesScoring.Divergence divergence = scoring.getDivergence(serial, chunked);
+			System.out.println(
+				name + " warm-up " + warmUp + ": " + divergence + ", " + millis + " ms");
+			if (divergence.getMaximum() > previous) shrinks = false;
+			previous = divergence.getMaximum();
+		}
+		System.out.println(name + " divergence shrinks: " + shrinks);
+	}
+
+	private static Supplier<Network> factory(Supplier<RecurrentNode> nodes) {
+		List<List<double[]>> parameters = new ArrayList<>();
+		return () -> {
+			RecurrentNode node = nodes.get();
+			node.addInputEdge(new Edge(inputSize));
+			node.addOutputEdge(new Edge(hiddenSize));
+			Network network = new Network();
+			network.addNode(node);
+			network.initialize();
+			if (parameters.isEmpty()) parameters.add(network.getParameters());
+			else network.setParameters(parameters.get(0));
+			return network;
+		};
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.SnapshotPredictor;
+import com.mlt.ml.graph.SnapshotStore;
+import com.mlt.ml.graph.nodes.WeightsNode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestSnapshotStore {
+
+	static int size = 8;
+	static int readers = 4;
+	static int samples = 200000;
+
+	public static void main(String[] args) throws Exception {
+		Network master = build();
+		for (double[] array : master.getParameters()) Arrays.fill(array, 0);
+		SnapshotStore store = new SnapshotStore(master);
+
+		try {
+			store.publish(new double[size * size], new double[size]);
+			System.out.println("Invalid size accepted");
+		} catch (IllegalArgumentException exc) {
+			System.out.println("Invalid size rejected: " + exc.getMessage());
+		}
+
+		AtomicLong mixed = new AtomicLong();
+		long[][] nanos = new long[readers][samples];
+		long[] versions = new long[readers];
+		Thread[] threads = new Thread[readers];
+		for (int r = 0; r < readers; r++) {
+			int reader = r;
+			threads[r] = new Thread(() -> {
+				SnapshotPredictor predictor = new SnapshotPredictor(build(), store);
+				double[] input = new double[size];
+				Arrays.fill(input, 1);
+				long last = -1;
+				for (int i = 0; i < samples; i++) {
+					long start = System.nanoTime();
+					double output = predictor.predict(input)[0][0];
+					nanos[reader][i] = System.nanoTime() - start;
+					long version = predictor.getSnapshot().getVersion();
+					if (output != expected(version)) mixed.incrementAndGet();
+					if (version != last) versions[reader]++;
+					last = version;
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		long published = 0;
+		while (isAlive(threads)) {
+			published++;
+			double value = published / 1024.0;
+			double[] first = new double[size * size];
+			double[] second = new double[size * size];
+			Arrays.fill(first, value);
+			Arrays.fill(second, value);
+			store.publish(first, second);
+			Thread.sleep(0, 200000);
+		}
+
+		long[] all = new long[readers * samples];
+		for (int r = 0; r < readers; r++) System.arraycopy(nanos[r], 0, all, r * samples, samples);
+		Arrays.sort(all);
+		System.out.println("Published versions:   " + published);
+		System.out.println("Versions per reader:  " + Arrays.toString(versions));
+		System.out.println("Mixed predictions:    " + mixed.get());
+		System.out.println("Predict p50 us:       " + all[all.length / 2] / 1000.0);
+		System.out.println("Predict p99 us:       " + all[(int) (all.length * 0.99)] / 1000.0);
+		System.out.println("Predict max us:       " + all[all.length - 1] / 1000.0);
+	}
+
+	/* Two layers with all weights equal to the value of the version and an input of ones. */
+	private static double expected(long version) {
+		double value = version / 1024.0;
+		return size * (size * value) * value;
+	}
+
+	private static boolean isAlive(Thread[] threads) {
+		for (Thread thread : threads) if (thread.isAlive()) return true;
+		return false;
+	}
+
+	private static Network build() {
+		WeightsNode first = new WeightsNode(size, size);
+		WeightsNode second = new WeightsNode(size, size);
+		Edge middle = new Edge(size);
+		first.addInputEdge(new Edge(size));
+		first.addOutputEdge(middle);
+		second.addInputEdge(middle);
+		second.addOutputEdge(new Edge(size));
+		Network network = new Network();
+		network.addNodes(first, second);
+		network.initialize();
+		return network;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.ml.data.Pattern;
+import com.mlt.ml.data.PatternSource;
+import com.mlt.ml.data.QuantileSketch;
+import com.mlt.ml.data.Statistics;
+import com.mlt.ml.graph.Edge;
+import com.mlt.ml.graph.Network;
+import com.mlt.ml.graph.nodes.NormalizationNode;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TestStatistics {
+
+	static int size = 3;
+	static int samples = 100_000;
+	static int capacity = 256;
+
+	public static void main(String[] args) {
+		Random random = new Random(5);
+		Pattern[] patterns = new Pattern[samples];
+		for (int i = 0; i < samples; i++) {
+			double[] input = new double[size];
+			input[0] = 1000 + random.nextGaussian() * 0.01;
+			input[1] = Math.exp(random.nextGaussian());
+			input[2] = 7.0;
+			patterns[i] = new Pattern(input, new double[0]);
+		}
+		PatternSource source = new PatternSource() {
+			@Override
+			public int size() { return patterns.length; }
+			@Override
+			public Pattern get(int index) { return patterns[index]; }
+		};
+
+		Statistics single = new Statistics(size);
+		for (Pattern pattern : patterns) single.add(pattern.getInput());
+		Statistics merged = Statistics.compute(source, 4, capacity);
+		double meanDiff = 0;
+		double varianceDiff = 0;
+		boolean extremes = merged.getCount() == single.getCount();
+		for (int c = 0; c < size; c++) {
+			meanDiff = Math.max(meanDiff, relative(single.getMean(c), merged.getMean(c)));
+			double variance = relative(single.getVariance(c), merged.getVariance(c));
+			varianceDiff = Math.max(varianceDiff, variance);
+			extremes &= single.getMinimum(c) == merged.getMinimum(c);
+			extremes &= single.getMaximum(c) == merged.getMaximum(c);
+		}
+		System.out.println("Merged vs single mean diff:     " + meanDiff);
+		System.out.println("Merged vs single variance diff: " + varianceDiff);
+		System.out.println("Merged count, min and max:      " + extremes);
+
+		double[] sorted = new double[samples];
+		for (int i = 0; i < samples; i++) sorted[i] = patterns[i].getInput()[1];
+		Arrays.sort(sorted);
+		QuantileSketch sketch = new QuantileSketch(capacity);
+		for (int i = 0; i < samples / 2; i++) sketch.add(patterns[i].getInput()[1]);
+		QuantileSketch other = new QuantileSketch(capacity);
+		for (int i = samples / 2; i < samples; i++) other.add(patterns[i].getInput()[1]);
+		sketch.merge(other);
+		/* Rank error bound of the sketch, one level of compaction error per level. */
+		int levels = 64 - Long.numberOfLeadingZeros(samples / capacity);
+		double bound = (double) levels / capacity;
+		double sketchError = 0;
+		double statisticsError = 0;
+		for (double q = 0.01; q < 1; q += 0.01) {
+			sketchError = Math.max(sketchError, rankError(sorted, sketch.getQuantile(q), q));
+			double error = rankError(sorted, merged.getQuantile(1, q), q);
+			statisticsError = Math.max(statisticsError, error);
+		}
+		System.out.println("Sketch rank error:              " + sketchError);
+		System.out.println("Statistics rank error:          " + statisticsError);
+		System.out.println("Within bound " + bound + ":      "
+			+ (sketchError <= bound && statisticsError <= bound));
+
+		Edge input = new Edge(size);
+		Edge output = new Edge(size);
+		NormalizationNode node = new NormalizationNode(merged, NormalizationNode.Method.STANDARD);
+		node.addInputEdge(input);
+		node.addOutputEdge(output);
+		Network network = new Network();
+		network.addNodes(node);
+		network.initialize();
+		Statistics normalized = new Statistics(size);
+		for (Pattern pattern : patterns) normalized.add(network.forward(pattern.getInput())[0]);
+		System.out.println("Standard mean 0, std 1, constant shifted:");
+		for (int c = 0; c < size; c++) {
+			System.out.println("  " + normalized.getMean(c) + ", " + normalized.getStdDev(c));
+		}
+		node = new NormalizationNode(merged, NormalizationNode.Method.RANGE);
+		System.out.println("Range of the first pattern, min 0 and max 1:");
+		for (int c = 0; c < size; c++) {
+			double value = patterns[0].getInput()[c];
+			double min = (merged.getMinimum(c) - node.getShift()[c]) * node.getScale()[c];
+			double max = (merged.getMaximum(c) - node.getShift()[c]) * node.getScale()[c];
+			double scaled = (value - node.getShift()[c]) * node.getScale()[c];
+			System.out.println("  " + min + ", " + max + ", " + scaled);
+		}
+
+		PatternSource failing = new PatternSource() {
+			@Override
+			public int size() { return patterns.length; }
+			@Override
+			public Pattern get(int index) {
+				if (index == samples / 2) throw new IllegalArgumentException("Bad pattern");
+				return patterns[index];
+			}
+		};
+		try {
+			Statistics.compute(failing, 4, 0);
+			System.out.println("Failure not thrown");
+		} catch (IllegalStateException exc) {
+			System.out.println("Failure thrown: " + exc.getMessage() + ", cause: "
+				+ (exc.getCause() == null ? null : exc.getCause().getMessage()));
+		}
+	}
+
+	private static double relative(double a, double b) {
+		return a == b ? 0 : Math.abs(a - b) / Math.max(Math.abs(a), Math.abs(b));
+	}
+
+	private static double rankError(double[] sorted, double value, double q) {
+		int low = Arrays.binarySearch(sorted, value);
+		if (low < 0) low = -low - 1;
+		return Math.abs((double) low / sorted.length - q);
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020. Miquel Sas
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package test;
+
+import com.mlt.db.Document;
+import com.mlt.db.Field;
+import com.mlt.db.Index;
+import com.mlt.db.Schema;
+import com.mlt.db.Table;
+import com.mlt.db.Type;
+import com.mlt.db.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+
+public class TestTable {
+	public static void main(String[] args) {
+		Schema schema = new Schema("bars", null);
+		Field time = new Field("time", Type.TIMESTAMP);
+		Field instrument = new Field("instrument", Type.STRING);
+		Field close = new Field("close", Type.DOUBLE);
+		Field sequence = new Field("sequence", Type.LONG);
+		schema.fields().putField(time);
+		schema.fields().putField(instrument);
+		schema.fields().putField(close);
+		schema.fields().putField(sequence);
+		Index primary = new Index("primary", true);
+		primary.add(time);
+		primary.add(instrument);
+		schema.indexes().add(primary);
+		Index bySequence = new Index("sequence", true);
+		bySequence.add(sequence);
+		schema.indexes().add(bySequence);
+		Index byClose = new Index("close", false);
+		byClose.add(instrument);
+		byClose.add(close, false);
+		schema.indexes().add(byClose);
+
+		Table table = new Table(schema);
+		String[] instruments = { "EURUSD", "GBPUSD", "USDJPY", "XAUUSD" };
+		LocalDateTime start = LocalDateTime.of(2015, 1, 1, 0, 0);
+		Random random = new Random(9);
+		int minutes = 100_000;
+		long nanos = System.nanoTime();
+		for (int m = 0; m < minutes; m++) {
+			for (int i = 0; i < instruments.length; i++) {
+				Value[] values = new Value[] {
+					new Value(start.plusMinutes(m)),
+					new Value(instruments[i]),
+					new Value(random.nextDouble()),
+					new Value((long) m * instruments.length + i) };
+				table.insert(new Document(schema, values));
+			}
+		}
+		nanos = System.nanoTime() - nanos;
+		System.out.println("inserted " + table.size() + " rows in " + nanos / 1_000_000 + " ms");
+
+		/* One day of bars, all instruments. */
+		Value[] from = new Value[] { new Value(start.plusDays(10)) };
+		Value[] to = new Value[] { new Value(start.plusDays(11)) };
+		List<Document> day = table.scan(primary, from, true, to, false);
+		System.out.println("day range " + day.size() + " rows (expected " + 1440 * 4 + ")");
+
+		/* One minute, prefix scan. */
+		List<Document> minute = table.scan(primary, new Value(start.plusMinutes(5)));
+		System.out.println("minute prefix " + minute.size() + " rows, first " + minute.get(0).getValue("instrument"));
+
+		/* Descending close of one instrument. */
+		List<Document> closes = table.scan(byClose, new Value("XAUUSD"));
+		boolean sorted = true;
+		for (int i = 1; i < closes.size(); i++) {
+			double previous = closes.get(i - 1).getValue("close").getDouble();
+			if (previous < closes.get(i).getValue("close").getDouble()) sorted = false;
+		}
+		System.out.println("close desc " + closes.size() + " rows, sorted " + sorted);
+
+		/* Unique enforcement of a secondary index. */
+		try {
+			Value[] values = new Value[] {
+				new Value(start.minusMinutes(1)), new Value("EURUSD"), new Value(1.0), new Value(7L) };
+			table.insert(new Document(schema, values));
+			System.out.println("duplicate accepted");
+		} catch (IllegalArgumentException exc) {
+			System.out.println("duplicate rejected: " + exc.getMessage());
+		}
+
+		/* Delete half of the first day and scan again. */
+		for (int m = 0; m < 1440; m += 2) {
+			for (String name : instruments) table.delete(new Value(start.plusMinutes(m)), new Value(name));
+		}
+		from = new Value[] { new Value(start) };
+		to = new Value[] { new Value(start.plusDays(1)) };
+		System.out.println("after delete " + table.scan(primary, from, true, to, false).size() + " rows (expected " + 720 * 4 + ")");
+
+		nanos = System.nanoTime();
+		int rows = 0;
+		for (int d = 0; d < 60; d++) {
+			from = new Value[] { new Value(start.plusDays(d)), new Value("GBPUSD") };
+			to = new Value[] { new Value(start.plusDays(d + 1)) };
+			rows += table.scan(primary, from, true, to, false).size();
+		}
+		nanos = System.nanoTime() - nanos;
+		System.out.println("60 day scans " + rows + " rows in " + nanos / 1000 + " us");
+
+		largeLongs();
+		extremeTimestamps();
+		fractionalProbes();
+	}
+
+	/* Fractional numbers probing integer keys, not found and rounded as bounds. */
+	private static void fractionalProbes() {
+		Schema schema = new Schema("codes", null);
+		Field id = new Field("id", Type.LONG);
+		Field code = new Field("code", Type.INTEGER);
+		schema.fields().putField(id);
+		schema.fields().putField(code);
+		Index primary = new Index("primary", true);
+		primary.add(id);
+		schema.indexes().add(primary);
+		Index byCode = new Index("code", true);
+		byCode.add(code);
+		schema.indexes().add(byCode);
+		Index byCodeDesc = new Index("code-desc", true);
+		byCodeDesc.add(code, false);
+		schema.indexes().add(byCodeDesc);
+		Table table = new Table(schema);
+		for (int i = 0; i < 100; i++) {
+			table.insert(new Document(schema, new Value[] { new Value((long) i), new Value(i) }));
+		}
+		boolean found = table.get(byCode, new Value(70.5)) != null;
+		found |= table.get(byCode, new Value(new BigDecimal("70.5"))) != null;
+		boolean exact = table.get(byCode, new Value(70.0)) != null;
+		Value[] low = new Value[] { new Value(20.5) };
+		Value[] high = new Value[] { new Value(29.5) };
+		List<Document> documents = table.scan(byCode, low, true, high, true);
+		int ascending = documents.size();
+		int first = documents.get(0).getValue("code").getInteger();
+		documents = table.scan(byCodeDesc, high, false, low, false);
+		int descending = documents.size();
+		int top = documents.get(0).getValue("code").getInteger();
+		Value[] negative = new Value[] { new Value(-0.5) };
+		int below = table.scan(byCode, null, true, negative, true).size();
+		System.out.println("fractional probes: found " + found + " (expected false), exact " + exact
+			+ ", ascending " + ascending + " from " + first + " (expected 9 from 21), descending "
+			+ descending + " from " + top + " (expected 9 from 29), below zero " + below
+			+ " (expected 0)");
+	}
+
+	/* Timestamps over the whole range, ordered by epoch second and nano. */
+	private static void extremeTimestamps() {
+		Schema schema = new Schema("times", null);
+		Field id = new Field("id", Type.LONG);
+		Field time = new Field("time", Type.TIMESTAMP);
+		schema.fields().putField(id);
+		schema.fields().putField(time);
+		Index primary = new Index("primary", true);
+		primary.add(id);
+		schema.indexes().add(primary);
+		Index byTime = new Index("time", false);
+		byTime.add(time);
+		schema.indexes().add(byTime);
+		Table table = new Table(schema);
+		LocalDateTime[] times = {
+			LocalDateTime.MAX,
+			LocalDateTime.of(9999, 12, 31, 23, 59),
+			LocalDateTime.of(2020, 1, 1, 0, 0, 0, 5),
+			LocalDateTime.of(2020, 1, 1, 0, 0, 0, 4),
+			LocalDateTime.of(1500, 1, 1, 0, 0),
+			LocalDateTime.MIN };
+		for (int i = 0; i < times.length; i++) {
+			Value[] values = new Value[] { new Value((long) i), new Value(times[i]) };
+			table.insert(new Document(schema, values));
+		}
+		StringBuilder order = new StringBuilder();
+		for (Document document : table.scan(byTime, (Value[]) null, true, null, true)) {
+			order.append(document.getValue("id")).append(" ");
+		}
+		Value[] from = new Value[] { new Value(times[3]) };
+		Value[] to = new Value[] { new Value(times[1]) };
+		int range = table.scan(byTime, from, false, to, true).size();
+		System.out.println("timestamps: size " + table.size() + ", order " + order.toString().trim()
+			+ " (expected 5 4 3 2 1 0), range " + range + " (expected 2)");
+	}
+
+	/* Long keys beyond 2^53, that doubles can not tell apart. */
+	private static void largeLongs() {
+		Schema schema = new Schema("ids", null);
+		Field id = new Field("id", Type.LONG);
+		schema.fields().putField(id);
+		Index primary = new Index("primary", true);
+		primary.add(id);
+		schema.indexes().add(primary);
+		Table table = new Table(schema);
+		long big = 1L << 53;
+		for (long i = big; i < big + 4; i++) {
+			table.insert(new Document(schema, new Value[] { new Value(i) }));
+		}
+		boolean found = true;
+		for (long i = big; i < big + 4; i++) {
+			Document document = table.get(new Value(i));
+			if (document == null || document.getValue("id").getLong() != i) found = false;
+		}
+		int scanned = table.scan(primary, new Value[] { new Value(big) }, true, null, false).size();
+		table.insert(new Document(schema, new Value[] { new Value(7L) }));
+		boolean mixed = table.get(new Value(7)) != null && table.get(new Value(7.0)) != null;
+		mixed &= table.get(new Value(new BigDecimal("7.00"))) != null;
+		System.out.println("longs over 2^53: size " + table.size() + ", found " + found
+			+ ", scanned " + scanned + ", mixed number types " + mixed);
+	}
+}